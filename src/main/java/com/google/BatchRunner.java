@@ -0,0 +1,59 @@
+package com.google;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+/**
+ * Replays a script of commands, one per line, without prompting. All player
+ * output goes to a single stream, and the time taken by each command is
+ * recorded so a summary can be printed at the end.
+ *
+ * <p>When a search asks which video to play, the next line of the script is
+ * taken as the answer.
+ */
+class BatchRunner {
+
+  private final BufferedReader input;
+  private final PrintStream out;
+  private final CommandParser parser;
+  private final CommandStats stats;
+
+  BatchRunner(BufferedReader input, PrintStream out) {
+    this(new VideoPlayer(out, input, null), input, out);
+  }
+
+  /** Creates a runner whose commands work on the given library. */
+  BatchRunner(VideoLibrary videoLibrary, BufferedReader input, PrintStream out) {
+    this(new VideoPlayer(new PlayerSession(videoLibrary,
+        PlaylistManager.fromSystemProperty(videoLibrary), null), out, input), input, out);
+  }
+
+  private BatchRunner(VideoPlayer videoPlayer, BufferedReader input, PrintStream out) {
+    this.input = input;
+    this.out = out;
+    this.parser = new CommandParser(videoPlayer, out);
+    this.stats = new CommandStats();
+  }
+
+  /**
+   * Runs commands until the input ends or an EXIT command, and returns the
+   * per-command timings.
+   */
+  CommandStats run() throws IOException {
+    String line;
+    while ((line = input.readLine()) != null) {
+      List<String> command = CommandParser.tokenize(line);
+      if (!command.isEmpty() && command.get(0).equalsIgnoreCase("exit")) {
+        break;
+      }
+      long start = System.nanoTime();
+      parser.executeCommand(command);
+      stats.record(command.isEmpty() ? "<EMPTY>" : command.get(0).toUpperCase(),
+          System.nanoTime() - start);
+    }
+    out.flush();
+    return stats;
+  }
+}
@@ -0,0 +1,427 @@
+package com.google;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Writes synthetic catalogs in the videos.txt format, and command traces to
+ * replay against them in batch mode, for benchmarks and load tests.
+ *
+ * <p>Title words and tags are drawn from Zipf distributions, so a few are
+ * very common and most are rare. Every video is generated from its own
+ * seeded generator, which lets a trace refer to the titles and tags of
+ * videos that really exist without holding the catalog in memory. Catalogs
+ * and traces are written as they are generated, so files of any size can be
+ * produced, and the same settings always give the same files.
+ *
+ * <p>The videos.txt format has no flags, so a share of the videos given by
+ * the flag rate is flagged by FLAG_VIDEO commands at the start of the trace.
+ *
+ * <p>Usage:
+ * <pre>
+ * CatalogGenerator catalog &lt;file&gt; &lt;videos&gt; [options]
+ * CatalogGenerator trace &lt;file&gt; &lt;videos&gt; &lt;commands&gt; [options]
+ * </pre>
+ * with options {@code --seed=N}, {@code --vocabulary=FILE} (one word per
+ * line), {@code --word-skew=S}, {@code --tags=N}, {@code --tag-skew=S},
+ * {@code --flag-rate=R} and {@code --mix=COMMAND:WEIGHT,...}. The catalog
+ * and trace options must match for the trace to fit the catalog.
+ */
+class CatalogGenerator {
+
+  static final long DEFAULT_SEED = 42;
+  static final int DEFAULT_TAG_COUNT = 1000;
+  static final double DEFAULT_SKEW = 1.0;
+  static final double DEFAULT_FLAG_RATE = 0.01;
+
+  /**
+   * A handful of common words followed by made-up ones, 20,000 in all, so
+   * that like real titles most words are rare and a search for one finds
+   * few videos.
+   */
+  static final List<String> DEFAULT_VOCABULARY = defaultVocabulary(20_000);
+
+  /**
+   * Relative weights of the commands in a trace, loosely modelled on a
+   * viewing session: mostly playing and searching, some playlist editing and
+   * a little moderation. SHOW_ALL_VIDEOS is left out as its output grows with
+   * the catalog.
+   */
+  static final Map<String, Integer> DEFAULT_MIX = defaultMix();
+
+  private static final int MAX_TITLE_WORDS = 6;
+  private static final int MAX_TAGS_PER_VIDEO = 4;
+  private static final int PLAYLIST_NAMES = 100;
+  private static final int MAX_SEARCH_TRIES = 100;
+  private static final String[] FLAG_REASONS =
+      {"spam", "copyright", "inappropriate", "dont_like_cats"};
+  /** Spreads popularity ranks over the catalog; a prime larger than any catalog. */
+  private static final long RANK_STRIDE = 1_000_000_007L;
+
+  private final long seed;
+  private final List<String> vocabulary;
+  private final Map<String, Integer> wordRanks;
+  private final ZipfDistribution words;
+  private final ZipfDistribution tags;
+  private final double flagRate;
+
+  /** Creates a generator with the default vocabulary, tags and flag rate. */
+  CatalogGenerator(long seed) {
+    this(seed, DEFAULT_VOCABULARY, DEFAULT_SKEW, DEFAULT_TAG_COUNT, DEFAULT_SKEW,
+        DEFAULT_FLAG_RATE);
+  }
+
+  /**
+   * Creates a generator whose titles use words from {@code vocabulary}, the
+   * first being the most common, with Zipf exponent {@code wordSkew}; whose
+   * tags are {@code #tag0} to {@code #tag<tagCount - 1>} with exponent
+   * {@code tagSkew}; and which flags about {@code flagRate} of the videos.
+   */
+  CatalogGenerator(long seed, List<String> vocabulary, double wordSkew, int tagCount,
+      double tagSkew, double flagRate) {
+    if (vocabulary.isEmpty()) {
+      throw new IllegalArgumentException("The vocabulary is empty");
+    }
+    if (flagRate < 0 || flagRate > 1) {
+      throw new IllegalArgumentException("The flag rate must be between 0 and 1: " + flagRate);
+    }
+    this.seed = seed;
+    this.vocabulary = List.copyOf(vocabulary);
+    this.wordRanks = new HashMap<>();
+    for (int rank = 0; rank < vocabulary.size(); rank++) {
+      wordRanks.putIfAbsent(vocabulary.get(rank).toLowerCase(), rank);
+    }
+    this.words = new ZipfDistribution(vocabulary.size(), wordSkew);
+    this.tags = new ZipfDistribution(tagCount, tagSkew);
+    this.flagRate = flagRate;
+  }
+
+  private static List<String> defaultVocabulary(int size) {
+    List<String> vocabulary = new ArrayList<>(List.of(
+        "funny", "amazing", "cats", "dogs", "life", "at", "google", "video", "about",
+        "nothing", "best", "of", "the", "world", "music", "live", "tutorial", "how", "to",
+        "cook", "travel", "vlog", "review", "unboxing", "game", "highlights", "news", "today",
+        "learn", "java", "in", "minutes", "epic", "fails", "compilation", "relaxing", "sounds"));
+    String[] syllables = {"ba", "ko", "ri", "tu", "me", "sa", "lo", "vi", "ne", "da", "zu",
+        "pe", "mi", "ga", "fo", "ha", "ju", "ki", "ro", "xe"};
+    for (int word = syllables.length; vocabulary.size() < size; word++) {
+      StringBuilder made = new StringBuilder();
+      for (int rest = word; rest > 0; rest /= syllables.length) {
+        made.append(syllables[rest % syllables.length]);
+      }
+      vocabulary.add(made.toString());
+    }
+    return Collections.unmodifiableList(vocabulary);
+  }
+
+  private static Map<String, Integer> defaultMix() {
+    Map<String, Integer> mix = new LinkedHashMap<>();
+    mix.put("PLAY", 300);
+    mix.put("SEARCH_VIDEOS", 150);
+    mix.put("ADD_TO_PLAYLIST", 120);
+    mix.put("SEARCH_VIDEOS_WITH_TAG", 80);
+    mix.put("SHOW_PLAYING", 60);
+    mix.put("PAUSE", 50);
+    mix.put("CONTINUE", 50);
+    mix.put("STOP", 40);
+    mix.put("PLAY_RANDOM", 40);
+    mix.put("SHOW_PLAYLIST", 40);
+    mix.put("CREATE_PLAYLIST", 20);
+    mix.put("REMOVE_FROM_PLAYLIST", 20);
+    mix.put("SHOW_ALL_PLAYLISTS", 10);
+    mix.put("NUMBER_OF_VIDEOS", 5);
+    mix.put("CLEAR_PLAYLIST", 5);
+    mix.put("FLAG_VIDEO", 4);
+    mix.put("ALLOW_VIDEO", 3);
+    mix.put("DELETE_PLAYLIST", 3);
+    return Collections.unmodifiableMap(mix);
+  }
+
+  /** Returns the id the generator gives the video on the given line. */
+  static String videoId(int line) {
+    return "video_" + line + "_id";
+  }
+
+  /** Returns the video the generator writes on the given line. */
+  Video video(int line) {
+    SplittableRandom random = videoRandom(line);
+    StringBuilder title = new StringBuilder();
+    int wordCount = 2 + random.nextInt(MAX_TITLE_WORDS - 1);
+    for (int w = 0; w < wordCount; w++) {
+      String word = vocabulary.get(words.sample(random) - 1);
+      if (w == 0) {
+        title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+      } else {
+        title.append(' ').append(word);
+      }
+    }
+    title.append(' ').append(line);
+    int tagCount = random.nextInt(MAX_TAGS_PER_VIDEO + 1);
+    List<String> videoTags = new ArrayList<>(tagCount);
+    for (int t = 0; t < tagCount; t++) {
+      String tag = "#tag" + (tags.sample(random) - 1);
+      if (!videoTags.contains(tag)) {
+        videoTags.add(tag);
+      }
+    }
+    return new Video(title.toString(), videoId(line), videoTags);
+  }
+
+  /** Returns whether the trace flags the video on the given line before any other command. */
+  boolean isFlagged(int line) {
+    return flagRate > 0 && videoRandom(~line).nextDouble() < flagRate;
+  }
+
+  private SplittableRandom videoRandom(int line) {
+    return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + line);
+  }
+
+  /** Writes a catalog of {@code videos} videos to the file. */
+  void writeCatalog(Path file, int videos) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      StringBuilder line = new StringBuilder();
+      for (int i = 0; i < videos; i++) {
+        Video video = video(i);
+        line.setLength(0);
+        line.append(video.getTitle()).append(" | ").append(video.getVideoId()).append(" |");
+        List<String> videoTags = video.getTags();
+        for (int t = 0; t < videoTags.size(); t++) {
+          line.append(t == 0 ? " " : " , ").append(videoTags.get(t));
+        }
+        line.append('\n');
+        writer.append(line);
+      }
+    }
+  }
+
+  /**
+   * Writes a trace of {@code commands} commands, drawn with the weights in
+   * {@code mix}, for a catalog of {@code videos} videos from this generator.
+   * The videos the commands refer to follow a Zipf distribution over a
+   * shuffled catalog, and search queries are the rarest word or tag of
+   * unflagged videos, so each search finds something and is followed by an answer to
+   * its prompt.
+   */
+  void writeTrace(Path file, int videos, int commands, Map<String, Integer> mix)
+      throws IOException {
+    String[] names = mix.keySet().toArray(new String[0]);
+    int[] cumulativeWeights = new int[names.length];
+    int totalWeight = 0;
+    for (int i = 0; i < names.length; i++) {
+      totalWeight += mix.get(names[i]);
+      cumulativeWeights[i] = totalWeight;
+    }
+    if (totalWeight <= 0) {
+      throw new IllegalArgumentException("The command mix has no weight: " + mix);
+    }
+    ZipfDistribution popularity = new ZipfDistribution(videos, DEFAULT_SKEW);
+    ZipfDistribution playlists = new ZipfDistribution(PLAYLIST_NAMES, DEFAULT_SKEW);
+    SplittableRandom random = new SplittableRandom(seed);
+    Map<Integer, Boolean> flagChanges = new HashMap<>();
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      for (int i = 0; i < videos; i++) {
+        if (isFlagged(i)) {
+          writer.append("FLAG_VIDEO ").append(videoId(i)).append(' ')
+              .append(FLAG_REASONS[i % FLAG_REASONS.length]).append('\n');
+        }
+      }
+      StringBuilder command = new StringBuilder();
+      for (int c = 0; c < commands; c++) {
+        int pick = random.nextInt(totalWeight);
+        int index = 0;
+        while (cumulativeWeights[index] <= pick) {
+          index++;
+        }
+        int line = (int) ((popularity.sample(random) - 1) * RANK_STRIDE % videos);
+        String playlist = "playlist" + playlists.sample(random);
+        command.setLength(0);
+        command.append(names[index]);
+        switch (names[index]) {
+          case "PLAY":
+            command.append(' ').append(videoId(line));
+            break;
+          case "FLAG_VIDEO":
+            command.append(' ').append(videoId(line)).append(' ')
+                .append(FLAG_REASONS[random.nextInt(FLAG_REASONS.length)]);
+            flagChanges.put(line, true);
+            break;
+          case "ALLOW_VIDEO":
+            command.append(' ').append(videoId(line));
+            flagChanges.put(line, false);
+            break;
+          case "ADD_TO_PLAYLIST":
+          case "REMOVE_FROM_PLAYLIST":
+            command.append(' ').append(playlist).append(' ').append(videoId(line));
+            break;
+          case "CREATE_PLAYLIST":
+          case "SHOW_PLAYLIST":
+          case "CLEAR_PLAYLIST":
+          case "DELETE_PLAYLIST":
+            command.append(' ').append(playlist);
+            break;
+          case "SEARCH_VIDEOS":
+            Video video = searchableVideo(line, videos, popularity, random, flagChanges, false);
+            command.append(' ').append(rarestWord(video.getTitle()))
+                .append('\n').append(searchAnswer(random));
+            break;
+          case "SEARCH_VIDEOS_WITH_TAG":
+            List<String> videoTags =
+                searchableVideo(line, videos, popularity, random, flagChanges, true).getTags();
+            command.append(' ').append(videoTags.isEmpty()
+                ? "#tag" + (tags.sample(random) - 1)
+                : rarestTag(videoTags))
+                .append('\n').append(searchAnswer(random));
+            break;
+          default:
+            break;
+        }
+        command.append('\n');
+        writer.append(command);
+      }
+    }
+  }
+
+  /**
+   * Returns the video on the given line, or another popular one if it is
+   * flagged at this point of the trace or, when {@code needsTags}, has no
+   * tags. A search for one of its words or tags then finds something, so the
+   * answer that follows the search is not run as a command. Gives up after a
+   * few tries, for catalogs where hardly any video qualifies.
+   */
+  private Video searchableVideo(int line, int videos, ZipfDistribution popularity,
+      SplittableRandom random, Map<Integer, Boolean> flagChanges, boolean needsTags) {
+    Video video = video(line);
+    for (int tries = 0; tries < MAX_SEARCH_TRIES; tries++) {
+      if (!flagChanges.getOrDefault(line, isFlagged(line))
+          && (!needsTags || !video.getTags().isEmpty())) {
+        break;
+      }
+      line = (int) ((popularity.sample(random) - 1) * RANK_STRIDE % videos);
+      video = video(line);
+    }
+    return video;
+  }
+
+  /**
+   * Returns the title word that is least common in the vocabulary, leaving
+   * out the line number at the end, as people search for the distinctive
+   * words of a title.
+   */
+  private String rarestWord(String title) {
+    String[] titleWords = title.split(" ");
+    String rarest = titleWords[0];
+    int rarestRank = -1;
+    for (int w = 0; w < titleWords.length - 1; w++) {
+      String word = titleWords[w].toLowerCase();
+      int rank = wordRanks.getOrDefault(word, -1);
+      if (rank > rarestRank) {
+        rarest = word;
+        rarestRank = rank;
+      }
+    }
+    return rarest;
+  }
+
+  /** Returns the tag that is least common, the one with the highest number. */
+  private static String rarestTag(List<String> videoTags) {
+    return videoTags.stream()
+        .max(Comparator.comparingInt(tag -> Integer.parseInt(tag.substring("#tag".length()))))
+        .orElseThrow();
+  }
+
+  /** Declines half the time, and otherwise picks one of the first few results. */
+  private static String searchAnswer(SplittableRandom random) {
+    return random.nextBoolean() ? "No" : String.valueOf(1 + random.nextInt(3));
+  }
+
+  /**
+   * Returns a catalog of the given size from the default generator in the
+   * temporary directory, generating it on first use and reusing it afterwards.
+   */
+  static Path cachedCatalog(int videos) throws IOException {
+    Path file = Path.of(System.getProperty("java.io.tmpdir"),
+        "catalog-" + videos + "-" + DEFAULT_SEED + ".txt");
+    if (!Files.exists(file)) {
+      Path partial = Files.createTempFile(file.getParent(), "catalog-", ".partial");
+      new CatalogGenerator(DEFAULT_SEED).writeCatalog(partial, videos);
+      try {
+        Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        Files.delete(partial);
+      }
+    }
+    return file;
+  }
+
+  /** Parses a mix such as {@code PLAY:10,SEARCH_VIDEOS:5}. */
+  static Map<String, Integer> parseMix(String mix) {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String entry : mix.split(",")) {
+      int colon = entry.indexOf(':');
+      if (colon < 0) {
+        throw new IllegalArgumentException("Expected COMMAND:WEIGHT but got " + entry);
+      }
+      weights.put(entry.substring(0, colon).strip().toUpperCase(),
+          Integer.parseInt(entry.substring(colon + 1).strip()));
+    }
+    return weights;
+  }
+
+  public static void main(String[] args) throws IOException {
+    boolean trace = args.length >= 4 && args[0].equals("trace");
+    if (!trace && !(args.length >= 3 && args[0].equals("catalog"))) {
+      System.out.println("Usage: CatalogGenerator catalog <file> <videos> [options]");
+      System.out.println("       CatalogGenerator trace <file> <videos> <commands> [options]");
+      System.out.println("Options: --seed=N --vocabulary=FILE --word-skew=S --tags=N"
+          + " --tag-skew=S --flag-rate=R --mix=COMMAND:WEIGHT,...");
+      return;
+    }
+    Map<String, String> options = new LinkedHashMap<>();
+    for (int i = trace ? 4 : 3; i < args.length; i++) {
+      int equals = args[i].indexOf('=');
+      if (!args[i].startsWith("--") || equals < 0) {
+        throw new IllegalArgumentException("Expected --option=value but got " + args[i]);
+      }
+      options.put(args[i].substring(2, equals), args[i].substring(equals + 1));
+    }
+    List<String> vocabulary = options.containsKey("vocabulary")
+        ? Files.readAllLines(Path.of(options.get("vocabulary")), StandardCharsets.UTF_8).stream()
+            .map(String::strip).filter(word -> !word.isEmpty()).collect(Collectors.toList())
+        : DEFAULT_VOCABULARY;
+    CatalogGenerator generator = new CatalogGenerator(
+        Long.parseLong(options.getOrDefault("seed", String.valueOf(DEFAULT_SEED))),
+        vocabulary,
+        Double.parseDouble(options.getOrDefault("word-skew", String.valueOf(DEFAULT_SKEW))),
+        Integer.parseInt(options.getOrDefault("tags", String.valueOf(DEFAULT_TAG_COUNT))),
+        Double.parseDouble(options.getOrDefault("tag-skew", String.valueOf(DEFAULT_SKEW))),
+        Double.parseDouble(options.getOrDefault("flag-rate", String.valueOf(DEFAULT_FLAG_RATE))));
+    Path file = Path.of(args[1]);
+    int videos = Integer.parseInt(args[2]);
+    long start = System.nanoTime();
+    if (trace) {
+      int commands = Integer.parseInt(args[3]);
+      generator.writeTrace(file, videos, commands,
+          options.containsKey("mix") ? parseMix(options.get("mix")) : DEFAULT_MIX);
+      System.out.printf("Wrote %d commands for %d videos to %s in %.1f s%n", commands, videos,
+          file, (System.nanoTime() - start) / 1e9);
+    } else {
+      generator.writeCatalog(file, videos);
+      System.out.printf("Wrote %d videos to %s in %.1f s%n", videos, file,
+          (System.nanoTime() - start) / 1e9);
+    }
+  }
+}
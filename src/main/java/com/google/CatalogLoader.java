@@ -0,0 +1,264 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads a videos.txt-format catalog. The file is memory-mapped, cut into
+ * chunks at line boundaries, and the chunks are parsed in parallel on a
+ * fork-join pool. Lines are split by hand rather than with regular
+ * expressions, but follow the same rules as the {@code String.split} calls
+ * the library used to make, so the same videos come out.
+ */
+class CatalogLoader {
+
+  static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+  private final ForkJoinPool pool;
+  private final int chunkSize;
+
+  CatalogLoader() {
+    this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  CatalogLoader(ForkJoinPool pool, int chunkSize) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+    }
+    this.pool = pool;
+    this.chunkSize = chunkSize;
+  }
+
+  /** Loads every video in the file, in file order. */
+  Result load(Path path) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      List<long[]> chunks = chunkBounds(channel);
+      Chunk parsed;
+      if (chunks.isEmpty()) {
+        parsed = new Chunk(new ArrayList<>(), 0);
+      } else {
+        try {
+          parsed = pool.invoke(new ParseTask(channel, chunks, 0, chunks.size()));
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+      }
+      return new Result(parsed.videos, parsed.lines, System.nanoTime() - start);
+    }
+  }
+
+  /** Splits the file into [start, end) ranges that each end after a newline. */
+  private List<long[]> chunkBounds(FileChannel channel) throws IOException {
+    List<long[]> bounds = new ArrayList<>();
+    long size = channel.size();
+    ByteBuffer probe = ByteBuffer.allocate(4096);
+    long start = 0;
+    while (start < size) {
+      long end = Math.min(start + chunkSize, size);
+      while (end < size) {
+        probe.clear();
+        int read = channel.read(probe, end);
+        if (read <= 0) {
+          end = size;
+          break;
+        }
+        int newline = 0;
+        while (newline < read && probe.get(newline) != '\n') {
+          newline++;
+        }
+        end += newline < read ? newline + 1 : read;
+        if (newline < read) {
+          break;
+        }
+      }
+      if (end - start > Integer.MAX_VALUE) {
+        throw new IOException("Line too long to map at offset " + start);
+      }
+      bounds.add(new long[] {start, end});
+      start = end;
+    }
+    return bounds;
+  }
+
+  private static Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+    ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+    CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+    String text = chars.toString();
+    List<Video> videos = new ArrayList<>();
+    long lines = 0;
+    int lineStart = 0;
+    while (lineStart < text.length()) {
+      int lineEnd = text.indexOf('\n', lineStart);
+      int next = lineEnd < 0 ? text.length() : lineEnd + 1;
+      if (lineEnd < 0) {
+        lineEnd = text.length();
+      }
+      if (lineEnd > lineStart && text.charAt(lineEnd - 1) == '\r') {
+        lineEnd--;
+      }
+      lines++;
+      Video video = parseLine(text, lineStart, lineEnd);
+      if (video != null) {
+        videos.add(video);
+      }
+      lineStart = next;
+    }
+    return new Chunk(videos, lines);
+  }
+
+  /**
+   * Parses "title | id | tag1, tag2". Returns null for lines without an id,
+   * such as blank lines.
+   */
+  static Video parseLine(String text, int start, int end) {
+    List<String> fields = split(text, start, end, '|');
+    if (fields.size() < 2) {
+      return null;
+    }
+    String title = fields.get(0).strip();
+    String id = fields.get(1).strip();
+    List<String> tags;
+    if (fields.size() > 2) {
+      String tagField = fields.get(2);
+      tags = split(tagField, 0, tagField.length(), ',');
+      for (int i = 0; i < tags.size(); i++) {
+        tags.set(i, tags.get(i).strip());
+      }
+    } else {
+      tags = new ArrayList<>();
+    }
+    return new Video(title, id, tags);
+  }
+
+  /**
+   * Splits text[start, end) on the separator. Like {@code String.split},
+   * trailing empty fields are dropped.
+   */
+  private static List<String> split(String text, int start, int end, char separator) {
+    List<String> fields = new ArrayList<>();
+    int fieldStart = start;
+    for (int i = start; i < end; i++) {
+      if (text.charAt(i) == separator) {
+        fields.add(text.substring(fieldStart, i));
+        fieldStart = i + 1;
+      }
+    }
+    fields.add(text.substring(fieldStart, end));
+    if (fields.size() == 1) {
+      return fields;
+    }
+    int size = fields.size();
+    while (size > 0 && fields.get(size - 1).isEmpty()) {
+      fields.remove(--size);
+    }
+    return fields;
+  }
+
+  private static final class Chunk {
+    private final List<Video> videos;
+    private final long lines;
+
+    Chunk(List<Video> videos, long lines) {
+      this.videos = videos;
+      this.lines = lines;
+    }
+  }
+
+  private static final class ParseTask extends RecursiveTask<Chunk> {
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final List<long[]> chunks;
+    private final int from;
+    private final int to;
+
+    ParseTask(FileChannel channel, List<long[]> chunks, int from, int to) {
+      this.channel = channel;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Chunk compute() {
+      if (to - from == 1) {
+        long[] bounds = chunks.get(from);
+        try {
+          return parseChunk(channel, bounds[0], bounds[1]);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      int mid = (from + to) >>> 1;
+      ParseTask left = new ParseTask(channel, chunks, from, mid);
+      left.fork();
+      Chunk right = new ParseTask(channel, chunks, mid, to).compute();
+      Chunk first = left.join();
+      List<Video> videos = new ArrayList<>(first.videos.size() + right.videos.size());
+      videos.addAll(first.videos);
+      videos.addAll(right.videos);
+      return new Chunk(videos, first.lines + right.lines);
+    }
+  }
+
+  /** The videos read from a catalog, with timing for the load. */
+  static final class Result {
+    private final List<Video> videos;
+    private final int videoCount;
+    private final long lineCount;
+    private final long elapsedNanos;
+
+    Result(List<Video> videos, long lineCount, long elapsedNanos) {
+      this(videos, videos.size(), lineCount, elapsedNanos);
+    }
+
+    private Result(List<Video> videos, int videoCount, long lineCount, long elapsedNanos) {
+      this.videos = videos;
+      this.videoCount = videoCount;
+      this.lineCount = lineCount;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Returns the timing of this load without holding on to the videos. */
+    Result withoutVideos() {
+      return new Result(List.of(), videoCount, lineCount, elapsedNanos);
+    }
+
+    List<Video> getVideos() {
+      return videos;
+    }
+
+    int getVideoCount() {
+      return videoCount;
+    }
+
+    long getLineCount() {
+      return lineCount;
+    }
+
+    long getElapsedNanos() {
+      return elapsedNanos;
+    }
+
+    double getLinesPerSecond() {
+      return elapsedNanos == 0 ? 0 : lineCount * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Loaded %d videos from %d lines in %.1f ms (%.0f lines/s)",
+          videoCount, lineCount, elapsedNanos / 1e6, getLinesPerSecond());
+    }
+  }
+}
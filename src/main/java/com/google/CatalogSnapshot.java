@@ -0,0 +1,581 @@
+package com.google;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A binary snapshot of a library's catalog and indexes, which can be opened
+ * in milliseconds however large the catalog is.
+ *
+ * <p>The file starts with a header: a magic number, the format version, the
+ * video count and the section count, followed by the offset and length of
+ * each section. Every section is an array of big-endian ints, except the
+ * string bytes:
+ * <ul>
+ *   <li>a string table: the start of every string in the string bytes, plus
+ *       the end of the last, and the UTF-8 bytes of every distinct title, id,
+ *       tag and title trigram;
+ *   <li>per video, by ordinal: the string number of its title and id, and the
+ *       start of its tags in the tag list, plus the end of the last, and the
+ *       tag list itself as string numbers;
+ *   <li>the ordinals in title order, and in id order;
+ *   <li>the tag index and the trigram index, each as its keys in order, the
+ *       start of each key's postings, plus the end of the last, and the
+ *       postings: sorted ordinals of the videos with that key.
+ * </ul>
+ * Strings are ordered by their UTF-8 bytes, so lookups can binary search the
+ * mapped bytes without decoding them.
+ *
+ * <p>Opening a snapshot maps each section and reads nothing else. Videos are
+ * created from the mapped bytes the first time they are read, and index
+ * lookups read posting lists straight from the mapping.
+ *
+ * <p>Snapshots hold the catalog, not its state: flags are not saved.
+ */
+class CatalogSnapshot {
+
+  static final int MAGIC = 0x59544353;
+  static final int VERSION = 1;
+
+  private static final int STRING_STARTS = 0;
+  private static final int STRING_BYTES = 1;
+  private static final int VIDEO_TITLES = 2;
+  private static final int VIDEO_IDS = 3;
+  private static final int VIDEO_TAG_STARTS = 4;
+  private static final int VIDEO_TAGS = 5;
+  private static final int TITLE_ORDER = 6;
+  private static final int ID_ORDER = 7;
+  private static final int TAG_KEYS = 8;
+  private static final int TAG_STARTS = 9;
+  private static final int TAG_POSTINGS = 10;
+  private static final int GRAM_KEYS = 11;
+  private static final int GRAM_STARTS = 12;
+  private static final int GRAM_POSTINGS = 13;
+  private static final int SECTION_COUNT = 14;
+  private static final int HEADER_SIZE = 4 * Integer.BYTES + SECTION_COUNT * 2 * Long.BYTES;
+
+  /** Orders strings as their UTF-8 bytes compare, that is by code point. */
+  private static final Comparator<String> UTF8_ORDER = CatalogSnapshot::compareCodePoints;
+
+  private final int videoCount;
+  private final IntBuffer stringStarts;
+  private final ByteBuffer stringBytes;
+  private final IntBuffer videoTitles;
+  private final IntBuffer videoIds;
+  private final IntBuffer videoTagStarts;
+  private final IntBuffer videoTags;
+  private final IntBuffer titleOrder;
+  private final IntBuffer idOrder;
+  private final KeyedPostings tags;
+  private final KeyedPostings grams;
+
+  private CatalogSnapshot(int videoCount, ByteBuffer[] sections) {
+    this.videoCount = videoCount;
+    this.stringStarts = sections[STRING_STARTS].asIntBuffer();
+    this.stringBytes = sections[STRING_BYTES];
+    this.videoTitles = sections[VIDEO_TITLES].asIntBuffer();
+    this.videoIds = sections[VIDEO_IDS].asIntBuffer();
+    this.videoTagStarts = sections[VIDEO_TAG_STARTS].asIntBuffer();
+    this.videoTags = sections[VIDEO_TAGS].asIntBuffer();
+    this.titleOrder = sections[TITLE_ORDER].asIntBuffer();
+    this.idOrder = sections[ID_ORDER].asIntBuffer();
+    this.tags = new KeyedPostings(sections[TAG_KEYS].asIntBuffer(),
+        sections[TAG_STARTS].asIntBuffer(), sections[TAG_POSTINGS].asIntBuffer());
+    this.grams = new KeyedPostings(sections[GRAM_KEYS].asIntBuffer(),
+        sections[GRAM_STARTS].asIntBuffer(), sections[GRAM_POSTINGS].asIntBuffer());
+  }
+
+  /** Returns whether the file starts like a snapshot. */
+  static boolean isSnapshot(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+      while (magic.hasRemaining() && channel.read(magic) > 0) {
+        // Keep reading until the magic number is complete or the file ends.
+      }
+      return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+    }
+  }
+
+  /** Maps a snapshot file. Fails if it is not a snapshot of this version. */
+  static CatalogSnapshot open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) > 0) {
+        // Keep reading until the header is complete or the file ends.
+      }
+      header.flip();
+      if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+        throw new IOException(file + " is not a catalog snapshot");
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported snapshot version " + version + " in " + file);
+      }
+      int videoCount = header.getInt();
+      if (header.getInt() != SECTION_COUNT) {
+        throw new IOException("Unexpected section count in " + file);
+      }
+      ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+      for (int i = 0; i < SECTION_COUNT; i++) {
+        long offset = header.getLong();
+        long length = header.getLong();
+        if (offset < HEADER_SIZE || length < 0 || length > Integer.MAX_VALUE
+            || offset + length > channel.size()) {
+          throw new IOException("Section " + i + " of " + file + " is out of bounds");
+        }
+        sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+      }
+      return new CatalogSnapshot(videoCount, sections);
+    }
+  }
+
+  /** Returns the number of videos in the snapshot. */
+  int size() {
+    return videoCount;
+  }
+
+  /** Creates the video with the given ordinal from the mapped bytes. */
+  Video video(int ordinal) {
+    int tagStart = videoTagStarts.get(ordinal);
+    int tagEnd = videoTagStarts.get(ordinal + 1);
+    List<String> tagList = new ArrayList<>(tagEnd - tagStart);
+    for (int i = tagStart; i < tagEnd; i++) {
+      tagList.add(string(videoTags.get(i)));
+    }
+    return new Video(string(videoTitles.get(ordinal)), string(videoIds.get(ordinal)), tagList);
+  }
+
+  /** Returns the ordinal of the video with the given id, or -1 if there is none. */
+  int ordinalOf(String videoId) {
+    byte[] key = videoId.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = videoCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int ordinal = idOrder.get(mid);
+      int cmp = compareString(videoIds.get(ordinal), key);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return ordinal;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the ordinals in title order, as a read-only view of the mapping. */
+  IntBuffer titleOrder() {
+    return titleOrder.asReadOnlyBuffer();
+  }
+
+  /** Returns the videos by ordinal, each created on first read. */
+  VideoStore videos() {
+    return new LazyVideoStore();
+  }
+
+  /** Returns the trigram index. It can be read but not updated. */
+  TitleIndex titleIndex() {
+    return new TitleIndex() {
+      @Override
+      void add(int ordinal, String title) {
+        throw new UnsupportedOperationException("Snapshot indexes are read-only");
+      }
+
+      @Override
+      void remove(int ordinal, String title) {
+        throw new UnsupportedOperationException("Snapshot indexes are read-only");
+      }
+
+      @Override
+      Collection<String> keys() {
+        return grams.keys();
+      }
+
+      @Override
+      PostingList postings(String gram) {
+        return grams.get(gram);
+      }
+    };
+  }
+
+  /** Returns the tag index. It can be read but not updated. */
+  TagIndex tagIndex() {
+    return new TagIndex() {
+      @Override
+      void add(int ordinal, Video video) {
+        throw new UnsupportedOperationException("Snapshot indexes are read-only");
+      }
+
+      @Override
+      void remove(int ordinal, Video video) {
+        throw new UnsupportedOperationException("Snapshot indexes are read-only");
+      }
+
+      @Override
+      Collection<String> keys() {
+        return tags.keys();
+      }
+
+      @Override
+      PostingList postings(String tag) {
+        return tags.get(tag);
+      }
+    };
+  }
+
+  private String string(int number) {
+    int start = stringStarts.get(number);
+    byte[] bytes = new byte[stringStarts.get(number + 1) - start];
+    ByteBuffer source = stringBytes.duplicate();
+    source.position(start);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /** Compares string {@code number} with the key, byte by byte. */
+  private int compareString(int number, byte[] key) {
+    int start = stringStarts.get(number);
+    int length = stringStarts.get(number + 1) - start;
+    int common = Math.min(length, key.length);
+    for (int i = 0; i < common; i++) {
+      int cmp = Integer.compare(Byte.toUnsignedInt(stringBytes.get(start + i)),
+          Byte.toUnsignedInt(key[i]));
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return Integer.compare(length, key.length);
+  }
+
+  private static int compareCodePoints(String a, String b) {
+    int i = 0;
+    int j = 0;
+    while (i < a.length() && j < b.length()) {
+      int x = a.codePointAt(i);
+      int y = b.codePointAt(j);
+      if (x != y) {
+        return Integer.compare(x, y);
+      }
+      i += Character.charCount(x);
+      j += Character.charCount(y);
+    }
+    return Integer.compare(a.length() - i, b.length() - j);
+  }
+
+  /** Posting lists keyed by string, with the keys in UTF-8 order. */
+  private final class KeyedPostings {
+    private final IntBuffer keys;
+    private final IntBuffer starts;
+    private final IntBuffer postings;
+
+    KeyedPostings(IntBuffer keys, IntBuffer starts, IntBuffer postings) {
+      this.keys = keys;
+      this.starts = starts;
+      this.postings = postings;
+    }
+
+    /** Copies out the postings of the key, or returns null if it is absent. */
+    PostingList get(String key) {
+      byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+      int low = 0;
+      int high = keys.limit() - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = compareString(keys.get(mid), bytes);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          int start = starts.get(mid);
+          int[] ordinals = new int[starts.get(mid + 1) - start];
+          IntBuffer source = postings.duplicate();
+          source.position(start);
+          source.get(ordinals);
+          return new PostingList(ordinals);
+        }
+      }
+      return null;
+    }
+
+    List<String> keys() {
+      List<String> result = new ArrayList<>(keys.limit());
+      for (int i = 0; i < keys.limit(); i++) {
+        result.add(string(keys.get(i)));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The videos by ordinal. A slot holds null until the video is first read,
+   * and is then filled from the snapshot. Reads may run concurrently, and a
+   * video is created only once, so every read returns the same object. The
+   * store cannot be changed.
+   */
+  private final class LazyVideoStore implements VideoStore {
+    private final Video[] videos;
+
+    LazyVideoStore() {
+      this.videos = new Video[videoCount];
+    }
+
+    @Override
+    public int size() {
+      return videoCount;
+    }
+
+    @Override
+    public Video get(int ordinal) {
+      Objects.checkIndex(ordinal, videoCount);
+      Video video = videos[ordinal];
+      return video != null ? video : materialize(ordinal);
+    }
+
+    private synchronized Video materialize(int ordinal) {
+      Video video = videos[ordinal];
+      if (video == null) {
+        video = video(ordinal);
+        videos[ordinal] = video;
+      }
+      return video;
+    }
+
+    @Override
+    public int ordinalOf(String videoId) {
+      return CatalogSnapshot.this.ordinalOf(videoId);
+    }
+
+    @Override
+    public void add(Video video) {
+      throw new UnsupportedOperationException("Snapshot videos are read-only");
+    }
+
+    @Override
+    public void remove(int ordinal) {
+      throw new UnsupportedOperationException("Snapshot videos are read-only");
+    }
+  }
+
+  /**
+   * Writes a snapshot of the given videos and indexes. The title order must
+   * hold every ordinal of the list.
+   */
+  static void write(Path file, List<Video> videos, TitleOrder order, TitleIndex titleIndex,
+      TagIndex tagIndex) throws IOException {
+    int videoCount = videos.size();
+    Map<String, Integer> numbers = new HashMap<>();
+    List<String> strings = new ArrayList<>();
+    int[] titles = new int[videoCount];
+    int[] ids = new int[videoCount];
+    int[] tagStarts = new int[videoCount + 1];
+    int tagCount = 0;
+    for (int ordinal = 0; ordinal < videoCount; ordinal++) {
+      tagCount += videos.get(ordinal).getTags().size();
+    }
+    int[] videoTags = new int[tagCount];
+    tagCount = 0;
+    for (int ordinal = 0; ordinal < videoCount; ordinal++) {
+      Video video = videos.get(ordinal);
+      titles[ordinal] = intern(video.getTitle(), numbers, strings);
+      ids[ordinal] = intern(video.getVideoId(), numbers, strings);
+      tagStarts[ordinal] = tagCount;
+      for (String tag : video.getTags()) {
+        videoTags[tagCount++] = intern(tag, numbers, strings);
+      }
+    }
+    tagStarts[videoCount] = tagCount;
+    int[] titleOrder = new int[videoCount];
+    for (int position = 0; position < videoCount; position++) {
+      titleOrder[position] = order.ordinalAt(position);
+    }
+    int[] idOrder = sortedOrdinals(videos);
+    List<String> tagKeys = new ArrayList<>(tagIndex.keys());
+    List<String> gramKeys = new ArrayList<>(titleIndex.keys());
+    tagKeys.sort(UTF8_ORDER);
+    gramKeys.sort(UTF8_ORDER);
+    int[] tagKeyNumbers = internAll(tagKeys, numbers, strings);
+    int[] gramKeyNumbers = internAll(gramKeys, numbers, strings);
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      SectionWriter out = new SectionWriter(channel);
+      out.startSection(STRING_STARTS);
+      int start = 0;
+      List<byte[]> encoded = new ArrayList<>(strings.size());
+      for (String string : strings) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        encoded.add(bytes);
+        out.writeInt(start);
+        start = Math.addExact(start, bytes.length);
+      }
+      out.writeInt(start);
+      out.startSection(STRING_BYTES);
+      for (byte[] bytes : encoded) {
+        out.write(bytes);
+      }
+      out.writeSection(VIDEO_TITLES, titles);
+      out.writeSection(VIDEO_IDS, ids);
+      out.writeSection(VIDEO_TAG_STARTS, tagStarts);
+      out.writeSection(VIDEO_TAGS, videoTags);
+      out.writeSection(TITLE_ORDER, titleOrder);
+      out.writeSection(ID_ORDER, idOrder);
+      out.writeKeyedPostings(TAG_KEYS, TAG_STARTS, TAG_POSTINGS, tagKeys, tagKeyNumbers,
+          tagIndex::postings);
+      out.writeKeyedPostings(GRAM_KEYS, GRAM_STARTS, GRAM_POSTINGS, gramKeys, gramKeyNumbers,
+          titleIndex::postings);
+      out.finish(videoCount);
+    }
+  }
+
+  private static int intern(String string, Map<String, Integer> numbers, List<String> strings) {
+    Integer number = numbers.get(string);
+    if (number == null) {
+      number = strings.size();
+      numbers.put(string, number);
+      strings.add(string);
+    }
+    return number;
+  }
+
+  private static int[] internAll(List<String> keys, Map<String, Integer> numbers,
+      List<String> strings) {
+    int[] result = new int[keys.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = intern(keys.get(i), numbers, strings);
+    }
+    return result;
+  }
+
+  private static int[] sortedOrdinals(List<Video> videos) {
+    Integer[] sorted = new Integer[videos.size()];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = i;
+    }
+    Arrays.sort(sorted, (a, b) -> compareCodePoints(videos.get(a).getVideoId(),
+        videos.get(b).getVideoId()));
+    int[] result = new int[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      result[i] = sorted[i];
+    }
+    return result;
+  }
+
+  /** Writes sections one after another, then the header that locates them. */
+  private static final class SectionWriter {
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private final long[] offsets;
+    private final long[] lengths;
+    private int current;
+
+    SectionWriter(FileChannel channel) throws IOException {
+      this.channel = channel;
+      this.out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+      this.offsets = new long[SECTION_COUNT];
+      this.lengths = new long[SECTION_COUNT];
+      this.current = -1;
+      out.write(new byte[HEADER_SIZE]);
+    }
+
+    private long position() throws IOException {
+      out.flush();
+      return channel.position();
+    }
+
+    void startSection(int section) throws IOException {
+      long position = position();
+      if (current >= 0) {
+        lengths[current] = position - offsets[current];
+      }
+      offsets[section] = position;
+      current = section;
+    }
+
+    void writeInt(int value) throws IOException {
+      out.writeInt(value);
+    }
+
+    void write(byte[] bytes) throws IOException {
+      out.write(bytes);
+    }
+
+    void writeSection(int section, int[] values) throws IOException {
+      startSection(section);
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+
+    void writeKeyedPostings(int keySection, int startSection, int postingSection,
+        List<String> keys, int[] keyNumbers, Function<String, PostingList> lookup)
+        throws IOException {
+      writeSection(keySection, keyNumbers);
+      startSection(startSection);
+      int start = 0;
+      for (String key : keys) {
+        out.writeInt(start);
+        start += lookup.apply(key).size();
+      }
+      out.writeInt(start);
+      startSection(postingSection);
+      for (String key : keys) {
+        PostingList postings = lookup.apply(key);
+        for (int i = 0; i < postings.size(); i++) {
+          out.writeInt(postings.get(i));
+        }
+      }
+    }
+
+    void finish(int videoCount) throws IOException {
+      long end = position();
+      lengths[current] = end - offsets[current];
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putInt(VERSION).putInt(videoCount).putInt(SECTION_COUNT);
+      for (int i = 0; i < SECTION_COUNT; i++) {
+        header.putLong(offsets[i]).putLong(lengths[i]);
+      }
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+    }
+  }
+
+  /** Converts a videos.txt-format catalog into a snapshot. */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println("Usage: CatalogSnapshot <catalog> <snapshot>");
+      return;
+    }
+    long start = System.nanoTime();
+    VideoLibrary videoLibrary = new VideoLibrary(Path.of(args[0]));
+    long loaded = System.nanoTime();
+    videoLibrary.writeSnapshot(Path.of(args[1]));
+    long written = System.nanoTime();
+    VideoLibrary.open(Path.of(args[1]));
+    System.out.printf("Loaded %d videos in %.1f ms, wrote the snapshot in %.1f ms,"
+            + " opened it in %.1f ms%n", videoLibrary.size(), (loaded - start) / 1e6,
+        (written - loaded) / 1e6, (System.nanoTime() - written) / 1e6);
+  }
+}
@@ -0,0 +1,259 @@
+package com.google;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A store that keeps its videos in primitive columns rather than as one
+ * object graph per video, so a large catalog costs a few dozen bytes per
+ * video plus its text, instead of a {@link Video}, two strings and a tag
+ * array each.
+ *
+ * <p>Titles and ids are held as UTF-8 in two byte arenas and tags as
+ * dictionary ids in an int arena, each row recording where its values
+ * start and how long they are. Removing a row moves the last row's offsets
+ * into its place and leaves its bytes behind as garbage, and an arena is
+ * compacted once more than half of it is garbage. Ids are found through an
+ * open-addressing hash table of row numbers, probed linearly, which hashes
+ * the id bytes so that it never has to decode them.
+ *
+ * <p>{@link #get} creates a new {@link Video} on every call; see
+ * {@link RowVideoStore}.
+ */
+class ColumnarVideoStore extends RowVideoStore {
+
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+  private static final int MIN_COMPACT_SIZE = 1 << 16;
+
+  private int size;
+  private int[] titleStarts;
+  private int[] titleLengths;
+  private int[] idStarts;
+  private int[] idLengths;
+  private int[] tagStarts;
+  private int[] tagCounts;
+
+  private byte[] titleBytes;
+  private int titleBytesUsed;
+  private int titleGarbage;
+  private byte[] idBytes;
+  private int idBytesUsed;
+  private int idGarbage;
+  private int[] tagArena;
+  private int tagArenaUsed;
+  private int tagGarbage;
+
+  /** Row + 1 of the video whose id hashes to each slot, or 0 if the slot is empty. */
+  private int[] idTable;
+
+  ColumnarVideoStore() {
+    this.titleStarts = new int[16];
+    this.titleLengths = new int[16];
+    this.idStarts = new int[16];
+    this.idLengths = new int[16];
+    this.tagStarts = new int[16];
+    this.tagCounts = new int[16];
+    this.titleBytes = new byte[256];
+    this.idBytes = new byte[256];
+    this.tagArena = new int[32];
+    this.idTable = new int[32];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int ordinalOf(String videoId) {
+    byte[] key = videoId.getBytes(StandardCharsets.UTF_8);
+    int mask = idTable.length - 1;
+    for (int slot = hash(key, 0, key.length) & mask; ; slot = (slot + 1) & mask) {
+      int entry = idTable[slot];
+      if (entry == 0) {
+        return -1;
+      }
+      int row = entry - 1;
+      if (Arrays.equals(idBytes, idStarts[row], idStarts[row] + idLengths[row],
+          key, 0, key.length)) {
+        return row;
+      }
+    }
+  }
+
+  @Override
+  public void add(Video video) {
+    byte[] title = video.getTitle().getBytes(StandardCharsets.UTF_8);
+    byte[] id = video.getVideoId().getBytes(StandardCharsets.UTF_8);
+    int[] tagIds = video.getTagIds();
+    if (size == titleStarts.length) {
+      int capacity = grow(size, size + 1);
+      titleStarts = Arrays.copyOf(titleStarts, capacity);
+      titleLengths = Arrays.copyOf(titleLengths, capacity);
+      idStarts = Arrays.copyOf(idStarts, capacity);
+      idLengths = Arrays.copyOf(idLengths, capacity);
+      tagStarts = Arrays.copyOf(tagStarts, capacity);
+      tagCounts = Arrays.copyOf(tagCounts, capacity);
+    }
+    if (titleBytesUsed + (long) title.length > titleBytes.length) {
+      titleBytes = Arrays.copyOf(titleBytes,
+          grow(titleBytes.length, titleBytesUsed + title.length));
+    }
+    if (idBytesUsed + (long) id.length > idBytes.length) {
+      idBytes = Arrays.copyOf(idBytes, grow(idBytes.length, idBytesUsed + id.length));
+    }
+    if (tagArenaUsed + (long) tagIds.length > tagArena.length) {
+      tagArena = Arrays.copyOf(tagArena, grow(tagArena.length, tagArenaUsed + tagIds.length));
+    }
+    int row = size;
+    titleStarts[row] = titleBytesUsed;
+    titleLengths[row] = title.length;
+    System.arraycopy(title, 0, titleBytes, titleBytesUsed, title.length);
+    titleBytesUsed += title.length;
+    idStarts[row] = idBytesUsed;
+    idLengths[row] = id.length;
+    System.arraycopy(id, 0, idBytes, idBytesUsed, id.length);
+    idBytesUsed += id.length;
+    tagStarts[row] = tagArenaUsed;
+    tagCounts[row] = tagIds.length;
+    System.arraycopy(tagIds, 0, tagArena, tagArenaUsed, tagIds.length);
+    tagArenaUsed += tagIds.length;
+    size++;
+    if ((long) size * 4 > (long) idTable.length * 3) {
+      rehash(idTable.length * 2);
+    } else {
+      link(row);
+    }
+  }
+
+  @Override
+  public void remove(int ordinal) {
+    Objects.checkIndex(ordinal, size);
+    unlink(slotOf(ordinal));
+    titleGarbage += titleLengths[ordinal];
+    idGarbage += idLengths[ordinal];
+    tagGarbage += tagCounts[ordinal];
+    int last = size - 1;
+    if (ordinal != last) {
+      int slot = slotOf(last);
+      titleStarts[ordinal] = titleStarts[last];
+      titleLengths[ordinal] = titleLengths[last];
+      idStarts[ordinal] = idStarts[last];
+      idLengths[ordinal] = idLengths[last];
+      tagStarts[ordinal] = tagStarts[last];
+      tagCounts[ordinal] = tagCounts[last];
+      idTable[slot] = ordinal + 1;
+    }
+    size--;
+    compactIfMostlyGarbage();
+  }
+
+  @Override
+  public String titleOf(int row) {
+    return new String(titleBytes, titleStarts[row], titleLengths[row], StandardCharsets.UTF_8);
+  }
+
+  @Override
+  String videoId(int row) {
+    return new String(idBytes, idStarts[row], idLengths[row], StandardCharsets.UTF_8);
+  }
+
+  @Override
+  int[] tagIds(int row) {
+    return Arrays.copyOfRange(tagArena, tagStarts[row], tagStarts[row] + tagCounts[row]);
+  }
+
+  private static int hash(byte[] bytes, int start, int length) {
+    int h = 0;
+    for (int i = start; i < start + length; i++) {
+      h = 31 * h + bytes[i];
+    }
+    return mix(h);
+  }
+
+  private int home(int row) {
+    return hash(idBytes, idStarts[row], idLengths[row]) & (idTable.length - 1);
+  }
+
+  private void link(int row) {
+    int mask = idTable.length - 1;
+    int slot = home(row);
+    while (idTable[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    idTable[slot] = row + 1;
+  }
+
+  private int slotOf(int row) {
+    int mask = idTable.length - 1;
+    int slot = home(row);
+    while (idTable[slot] != row + 1) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Empties a slot, shifting back any later entry of the same probe run
+   * that would otherwise no longer be reachable from its home slot.
+   */
+  private void unlink(int slot) {
+    int mask = idTable.length - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; idTable[next] != 0; next = (next + 1) & mask) {
+      int home = home(idTable[next] - 1);
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        idTable[hole] = idTable[next];
+        hole = next;
+      }
+    }
+    idTable[hole] = 0;
+  }
+
+  private void rehash(int capacity) {
+    idTable = new int[capacity];
+    for (int row = 0; row < size; row++) {
+      link(row);
+    }
+  }
+
+  private void compactIfMostlyGarbage() {
+    if (titleGarbage > MIN_COMPACT_SIZE && titleGarbage > titleBytesUsed / 2) {
+      byte[] compacted = new byte[titleBytesUsed - titleGarbage];
+      titleBytesUsed = compact(titleBytes, compacted, titleStarts, titleLengths);
+      titleBytes = compacted;
+      titleGarbage = 0;
+    }
+    if (idGarbage > MIN_COMPACT_SIZE && idGarbage > idBytesUsed / 2) {
+      byte[] compacted = new byte[idBytesUsed - idGarbage];
+      idBytesUsed = compact(idBytes, compacted, idStarts, idLengths);
+      idBytes = compacted;
+      idGarbage = 0;
+    }
+    if (tagGarbage > MIN_COMPACT_SIZE && tagGarbage > tagArenaUsed / 2) {
+      int[] compacted = new int[tagArenaUsed - tagGarbage];
+      tagArenaUsed = compact(tagArena, compacted, tagStarts, tagCounts);
+      tagArena = compacted;
+      tagGarbage = 0;
+    }
+  }
+
+  /** Copies every row's values into a new arena in row order, returning its used length. */
+  private int compact(Object from, Object to, int[] starts, int[] lengths) {
+    int used = 0;
+    for (int row = 0; row < size; row++) {
+      System.arraycopy(from, starts[row], to, used, lengths[row]);
+      starts[row] = used;
+      used += lengths[row];
+    }
+    return used;
+  }
+
+  private static int grow(int current, long needed) {
+    if (needed > MAX_ARRAY_SIZE) {
+      throw new IllegalStateException("Columnar video store is full");
+    }
+    return (int) Math.max(needed, Math.min(MAX_ARRAY_SIZE, current + (current >> 1) + 16L));
+  }
+}
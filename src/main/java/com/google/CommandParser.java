@@ -1,5 +1,7 @@
 package com.google;
 
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -7,10 +9,44 @@ import java.util.List;
  */
 class CommandParser {
 
+  /** The number of videos on a page when a paged command gives no page size. */
+  static final int DEFAULT_PAGE_SIZE = 20;
+
+  private static final String PAGE_USAGE =
+      "PAGE, a page number and an optional page size.";
+
   private final VideoPlayer videoPlayer;
+  private final PrintStream out;
 
   CommandParser(VideoPlayer videoPlayer) {
+    this(videoPlayer, System.out);
+  }
+
+  CommandParser(VideoPlayer videoPlayer, PrintStream out) {
     this.videoPlayer = videoPlayer;
+    this.out = out;
+  }
+
+  /**
+   * Splits a line of input into words separated by whitespace.
+   */
+  static List<String> tokenize(String input) {
+    List<String> words = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i < input.length(); i++) {
+      if (Character.isWhitespace(input.charAt(i))) {
+        if (start >= 0) {
+          words.add(input.substring(start, i));
+          start = -1;
+        }
+      } else if (start < 0) {
+        start = i;
+      }
+    }
+    if (start >= 0) {
+      words.add(input.substring(start));
+    }
+    return words;
   }
 
   /**
@@ -18,7 +54,7 @@ class CommandParser {
    */
   public void executeCommand(List<String> command) {
     if (command.isEmpty()) {
-      System.out.println(
+      out.println(
           "Please enter a valid command, " +
               "type HELP for a list of available commands.");
       return;
@@ -29,13 +65,19 @@ class CommandParser {
         this.videoPlayer.numberOfVideos();
         break;
       case "SHOW_ALL_VIDEOS":
-        this.videoPlayer.showAllVideos();
+        if (command.size() == 1) {
+          this.videoPlayer.showAllVideos();
+        } else if (isPage(command, 1)) {
+          this.videoPlayer.showAllVideos(pageNumber(command, 1), pageSize(command, 1));
+        } else {
+          out.println("Please enter SHOW_ALL_VIDEOS command, optionally followed by " + PAGE_USAGE);
+        }
         break;
       case "PLAY":
         try {
           this.videoPlayer.playVideo(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter PLAY command followed by video_id.");
+        } catch (IndexOutOfBoundsException e) {
+          out.println("Please enter PLAY command followed by video_id.");
         }
         break;
       case "PLAY_RANDOM":
@@ -56,8 +98,8 @@ class CommandParser {
       case "CREATE_PLAYLIST":
         try {
           this.videoPlayer.createPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter CREATE_PLAYLIST command followed by a " +
                   "playlist name.");
         }
@@ -65,8 +107,8 @@ class CommandParser {
       case "ADD_TO_PLAYLIST":
         try {
           this.videoPlayer.addVideoToPlaylist(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter ADD_TO_PLAYLIST command followed by a "
                   + "playlist name and video_id to add.");
         }
@@ -74,8 +116,8 @@ class CommandParser {
       case "REMOVE_FROM_PLAYLIST":
         try {
           this.videoPlayer.removeFromPlaylist(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter REMOVE_FROM_PLAYLIST command followed by a "
                   + "playlist name and video_id to remove.");
         }
@@ -83,8 +125,8 @@ class CommandParser {
       case "CLEAR_PLAYLIST":
         try {
           this.videoPlayer.clearPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter CLEAR_PLAYLIST command followed by a "
                   + "playlist name.");
         }
@@ -92,8 +134,8 @@ class CommandParser {
       case "DELETE_PLAYLIST":
         try {
           this.videoPlayer.deletePlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter DELETE_PLAYLIST command followed by a " +
                   "playlist name.");
         }
@@ -101,8 +143,8 @@ class CommandParser {
       case "SHOW_PLAYLIST":
         try {
           this.videoPlayer.showPlaylist(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SHOW_PLAYLIST command followed by a " +
+        } catch (IndexOutOfBoundsException e) {
+          out.println("Please enter SHOW_PLAYLIST command followed by a " +
               "playlist name.");
         }
         break;
@@ -110,30 +152,73 @@ class CommandParser {
         this.videoPlayer.showAllPlaylists();
         break;
       case "SEARCH_VIDEOS":
+        if (isPage(command, 2)) {
+          this.videoPlayer.searchVideos(command.get(1), pageNumber(command, 2),
+              pageSize(command, 2));
+          break;
+        }
+        if (isLimit(command, 2)) {
+          this.videoPlayer.searchVideos(command.get(1), 1, Integer.parseInt(command.get(3)));
+          break;
+        }
         try {
           this.videoPlayer.searchVideos(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SEARCH_VIDEOS command followed by a " +
+        } catch (IndexOutOfBoundsException e) {
+          out.println("Please enter SEARCH_VIDEOS command followed by a " +
               "search term.");
         }
         break;
       case "SEARCH_VIDEOS_WITH_TAG":
+        if (isPage(command, 2)) {
+          this.videoPlayer.searchVideosWithTag(command.get(1), pageNumber(command, 2),
+              pageSize(command, 2));
+          break;
+        }
+        if (isLimit(command, 2)) {
+          this.videoPlayer.searchVideosWithTag(command.get(1), 1, Integer.parseInt(command.get(3)));
+          break;
+        }
         try {
           this.videoPlayer.searchVideosWithTag(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+        } catch (IndexOutOfBoundsException e) {
+          out.println(
               "Please enter SEARCH_VIDEOS_WITH_TAG command followed by a " +
                   "video tag.");
         }
         break;
+      case "COMPLETE_VIDEOS":
+      case "SEARCH_VIDEOS_FUZZY":
+      case "SEARCH_VIDEOS_RANKED": {
+        int end = command.size() > 3 && isLimit(command, command.size() - 2)
+            ? command.size() - 2 : command.size();
+        if (end < 2) {
+          out.println("Please enter " + command.get(0) + " command followed by one or more "
+              + "words to search for, and optionally LIMIT and a number of videos.");
+          break;
+        }
+        String query = String.join(" ", command.subList(1, end));
+        int limit = end < command.size() ? Integer.parseInt(command.get(end + 1))
+            : DEFAULT_PAGE_SIZE;
+        if (command.get(0).equalsIgnoreCase("COMPLETE_VIDEOS")) {
+          this.videoPlayer.completeVideos(query, limit);
+        } else if (command.get(0).equalsIgnoreCase("SEARCH_VIDEOS_FUZZY")) {
+          this.videoPlayer.searchVideosFuzzy(query, limit);
+        } else {
+          this.videoPlayer.searchVideosRanked(query, limit);
+        }
+        break;
+      }
+      case "NEXT_PAGE":
+        this.videoPlayer.nextPage();
+        break;
       case "FLAG_VIDEO":
         try {
           this.videoPlayer.flagVideo(command.get(1), command.get(2));
-        } catch (ArrayIndexOutOfBoundsException e) {
+        } catch (IndexOutOfBoundsException e) {
           try {
             this.videoPlayer.flagVideo(command.get(1));
-          } catch (ArrayIndexOutOfBoundsException f) {
-            System.out.println("Please enter FLAG_VIDEO command followed by a" +
+          } catch (IndexOutOfBoundsException f) {
+            out.println("Please enter FLAG_VIDEO command followed by a" +
                 "video_id and an optional flag reason.");
           }
         }
@@ -141,22 +226,81 @@ class CommandParser {
       case "ALLOW_VIDEO":
         try {
           this.videoPlayer.allowVideo(command.get(1));
-        } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter ALLOW_VIDEO command followed by a " +
+        } catch (IndexOutOfBoundsException e) {
+          out.println("Please enter ALLOW_VIDEO command followed by a " +
               "video_id.");
         }
         break;
+      case "FLAG_VIDEOS":
+        if (!isSelection(command)) {
+          out.println("Please enter FLAG_VIDEOS command followed by IDS <file>, "
+              + "TAG <video_tag> or TITLE <search_term>, and an optional flag reason.");
+        } else if (command.size() > 3) {
+          this.videoPlayer.flagVideos(command.get(1), command.get(2),
+              String.join(" ", command.subList(3, command.size())));
+        } else {
+          this.videoPlayer.flagVideos(command.get(1), command.get(2));
+        }
+        break;
+      case "ALLOW_VIDEOS":
+        if (!isSelection(command) || command.size() > 3) {
+          out.println("Please enter ALLOW_VIDEOS command followed by IDS <file>, "
+              + "TAG <video_tag> or TITLE <search_term>.");
+        } else {
+          this.videoPlayer.allowVideos(command.get(1), command.get(2));
+        }
+        break;
       case "HELP":
         this.getHelp();
         break;
       default:
-        System.out.println(
+        out.println(
             "Please enter a valid command, type HELP for a list of "
             + "available commands.");
         break;
     }
   }
 
+  /**
+   * Returns whether the command continues at index {@code at} with PAGE, a
+   * page number and an optional page size, each a positive number, and
+   * nothing else.
+   */
+  private static boolean isPage(List<String> command, int at) {
+    return command.size() > at + 1 && command.size() <= at + 3
+        && command.get(at).equalsIgnoreCase("PAGE")
+        && positive(command.get(at + 1))
+        && (command.size() == at + 2 || positive(command.get(at + 2)));
+  }
+
+  /** Returns whether the command ends at index {@code at} with LIMIT and a positive number. */
+  private static boolean isLimit(List<String> command, int at) {
+    return command.size() == at + 2 && command.get(at).equalsIgnoreCase("LIMIT")
+        && positive(command.get(at + 1));
+  }
+
+  private static boolean positive(String word) {
+    try {
+      return Integer.parseInt(word) > 0;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  private static int pageNumber(List<String> command, int at) {
+    return Integer.parseInt(command.get(at + 1));
+  }
+
+  private static int pageSize(List<String> command, int at) {
+    return command.size() > at + 2 ? Integer.parseInt(command.get(at + 2)) : DEFAULT_PAGE_SIZE;
+  }
+
+  /** Returns whether a bulk command names a way of selecting videos and what to select. */
+  private static boolean isSelection(List<String> command) {
+    return command.size() > 2
+        && List.of("IDS", "TAG", "TITLE").contains(command.get(1).toUpperCase());
+  }
+
   /**
    * Displays all available commands to the user.
    */
@@ -164,7 +308,7 @@ class CommandParser {
     String helpText =
         "Available commands:\n"
             + "    NUMBER_OF_VIDEOS - Shows how many videos are in the library.\n"
-            + "    SHOW_ALL_VIDEOS - Lists all videos from the library.\n"
+            + "    SHOW_ALL_VIDEOS [PAGE <page> [<page_size>]] - Lists all videos from the library, or one page of them.\n"
             + "    PLAY <video_id> - Plays specified video.\n"
             + "    PLAY_RANDOM - Plays a random video from the library.\n"
             + "    STOP - Stop the current video.\n"
@@ -180,10 +324,18 @@ class CommandParser {
             + "    SHOW_ALL_PLAYLISTS - Display all the available playlists.\n"
             + "    SEARCH_VIDEOS <search_term> - Display all the videos whose titles contain the search_term.\n"
             + "    SEARCH_VIDEOS_WITH_TAG <tag_name> -Display all videos whose tags contains the provided tag.\n"
+            + "    SEARCH_VIDEOS and SEARCH_VIDEOS_WITH_TAG can be followed by PAGE <page> [<page_size>] to show one page of the results.\n"
+            + "    SEARCH_VIDEOS and SEARCH_VIDEOS_WITH_TAG can be followed by LIMIT <count> to show only the first results, as PAGE 1 <count>.\n"
+            + "    COMPLETE_VIDEOS <words> [LIMIT <count>] - Display the first videos whose titles contain the words, the last one possibly unfinished.\n"
+            + "    SEARCH_VIDEOS_FUZZY <words> [LIMIT <count>] - Display the first videos whose titles contain the words, allowing for typos.\n"
+            + "    SEARCH_VIDEOS_RANKED <words> [LIMIT <count>] - Display the videos whose titles or tags best match the words, most relevant first. Quote words to match them as a phrase.\n"
+            + "    NEXT_PAGE - Shows the next page of the last listing or search shown a page at a time.\n"
             + "    FLAG_VIDEO <video_id> <flag_reason> - Mark a video as flagged.\n"
             + "    ALLOW_VIDEO <video_id> - Removes a flag from a video.\n"
+            + "    FLAG_VIDEOS <IDS|TAG|TITLE> <file|video_tag|search_term> <flag_reason> - Flags every video in the file of ids, with the tag, or matching the title search.\n"
+            + "    ALLOW_VIDEOS <IDS|TAG|TITLE> <file|video_tag|search_term> - Removes the flag from every such video.\n"
             + "    HELP - Displays help.\n"
             + "    EXIT - Terminates the program execution.\n";
-    System.out.println(helpText);
+    out.println(helpText);
   }
 }
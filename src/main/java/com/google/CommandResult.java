@@ -0,0 +1,372 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The typed outcome of a player command. A result holds the status and the
+ * objects the outcome refers to, never formatted text; {@link ResultRenderer}
+ * turns results into the messages the command line prints.
+ *
+ * <p>Which fields are set depends on the status: each {@link Status}
+ * constant lists the {@link Field}s it carries, and documents what they
+ * mean for it. A result cannot be created with a field its status does not
+ * carry, and reading such a field throws IllegalStateException, so a
+ * renderer cannot mistake an unset field for a value. A carried field may
+ * still be null where its status says so, as a stopped video is.
+ */
+final class CommandResult {
+
+    /** Every outcome of every command. */
+    /** The parts of a result that some statuses carry, one per accessor. */
+    enum Field {
+        VIDEO, STOPPED_VIDEO, NAME, REASON, VIDEOS, NAMES, COUNT, PAUSED, MATCHED, PAGE,
+        FIRST_NUMBER, MORE
+    }
+
+    public enum Status {
+        /** {@code count} videos are in the library. */
+        VIDEO_COUNT(Field.COUNT),
+        /** {@code videos} is every video, sorted by title. */
+        ALL_VIDEOS(Field.VIDEOS),
+        /**
+         * {@code videos} is page {@code page} of every video sorted by title; {@code more}
+         * tells whether another page follows.
+         */
+        VIDEOS_PAGE(Field.VIDEOS, Field.PAGE, Field.MORE),
+        /** {@code video} started playing, after {@code stoppedVideo} if non-null. */
+        PLAYING(Field.VIDEO, Field.STOPPED_VIDEO),
+        /** The video to play does not exist. */
+        PLAY_NOT_FOUND,
+        /** {@code video} cannot be played as it is flagged for {@code reason}. */
+        PLAY_FLAGGED(Field.VIDEO, Field.REASON),
+        /** Every video is flagged, so there is nothing to play at random. */
+        NO_VIDEOS_AVAILABLE,
+        /** {@code video} was stopped. */
+        STOPPED(Field.VIDEO),
+        /** Nothing is playing, so nothing can be stopped. */
+        STOP_NOTHING_PLAYING,
+        /** {@code video} was paused. */
+        PAUSED(Field.VIDEO),
+        /** {@code video} was already paused. */
+        ALREADY_PAUSED(Field.VIDEO),
+        /** Nothing is playing, so nothing can be paused. */
+        PAUSE_NOTHING_PLAYING,
+        /** {@code video} was continued. */
+        CONTINUED(Field.VIDEO),
+        /** {@code video} is playing and not paused. */
+        NOT_PAUSED(Field.VIDEO),
+        /** Nothing is playing, so nothing can be continued. */
+        CONTINUE_NOTHING_PLAYING,
+        /** {@code video} is playing; {@code paused} tells whether it is paused. */
+        NOW_PLAYING(Field.VIDEO, Field.PAUSED),
+        /** Nothing is playing. */
+        NOTHING_PLAYING,
+        /** Playlist {@code name} was created. */
+        PLAYLIST_CREATED(Field.NAME),
+        /** A playlist with the same name as {@code name} already exists. */
+        PLAYLIST_ALREADY_EXISTS(Field.NAME),
+        /** {@code video} was added to playlist {@code name}. */
+        ADDED_TO_PLAYLIST(Field.NAME, Field.VIDEO),
+        /** Cannot add to playlist {@code name} as it does not exist. */
+        ADD_NO_PLAYLIST(Field.NAME),
+        /** Cannot add to playlist {@code name} as the video does not exist. */
+        ADD_NOT_FOUND(Field.NAME),
+        /** Cannot add {@code video} to playlist {@code name} as it is flagged for {@code reason}. */
+        ADD_FLAGGED(Field.NAME, Field.VIDEO, Field.REASON),
+        /** {@code video} is already in playlist {@code name}. */
+        ALREADY_IN_PLAYLIST(Field.NAME, Field.VIDEO),
+        /** {@code names} is every playlist name, sorted. */
+        ALL_PLAYLISTS(Field.NAMES),
+        /** There are no playlists. */
+        NO_PLAYLISTS,
+        /** {@code videos} are the videos of playlist {@code name}, in the order added. */
+        PLAYLIST_CONTENTS(Field.NAME, Field.VIDEOS),
+        /** Cannot show playlist {@code name} as it does not exist. */
+        SHOW_NO_PLAYLIST(Field.NAME),
+        /** {@code video} was removed from playlist {@code name}. */
+        REMOVED_FROM_PLAYLIST(Field.NAME, Field.VIDEO),
+        /** Cannot remove from playlist {@code name} as it does not exist. */
+        REMOVE_NO_PLAYLIST(Field.NAME),
+        /** Cannot remove from playlist {@code name} as the video does not exist. */
+        REMOVE_NOT_FOUND(Field.NAME),
+        /** Cannot remove from playlist {@code name} as the video is not in it. */
+        NOT_IN_PLAYLIST(Field.NAME, Field.VIDEO),
+        /** Every video was removed from playlist {@code name}. */
+        PLAYLIST_CLEARED(Field.NAME),
+        /** Cannot clear playlist {@code name} as it does not exist. */
+        CLEAR_NO_PLAYLIST(Field.NAME),
+        /** Playlist {@code name} was deleted. */
+        PLAYLIST_DELETED(Field.NAME),
+        /** Cannot delete playlist {@code name} as it does not exist. */
+        DELETE_NO_PLAYLIST(Field.NAME),
+        /** {@code videos} are the unflagged matches for query {@code name}, sorted by title. */
+        SEARCH_RESULTS(Field.NAME, Field.VIDEOS),
+        /** Nothing matches query {@code name}. */
+        NO_SEARCH_RESULTS(Field.NAME),
+        /**
+         * {@code videos} is page {@code page} of the unflagged matches for query {@code name},
+         * sorted by title, the first being match number {@code firstNumber}; {@code more} tells
+         * whether another page follows.
+         */
+        SEARCH_RESULTS_PAGE(Field.NAME, Field.VIDEOS, Field.PAGE, Field.FIRST_NUMBER, Field.MORE),
+        /** Page {@code page} of the listing is past its end. */
+        PAGE_OUT_OF_RANGE(Field.PAGE),
+        /** No paged listing is in progress, or its last page has been shown. */
+        NO_NEXT_PAGE,
+        /** {@code video} was flagged for {@code reason}, after stopping {@code stoppedVideo} if non-null. */
+        FLAGGED(Field.VIDEO, Field.REASON, Field.STOPPED_VIDEO),
+        /** The video to flag does not exist. */
+        FLAG_NOT_FOUND,
+        /** {@code video} is already flagged. */
+        ALREADY_FLAGGED(Field.VIDEO),
+        /** The flag was removed from {@code video}. */
+        ALLOWED(Field.VIDEO),
+        /** The video to allow does not exist. */
+        ALLOW_NOT_FOUND,
+        /** {@code video} is not flagged. */
+        NOT_FLAGGED(Field.VIDEO),
+        /**
+         * {@code count} of the {@code matched} videos selected by {@code name} were flagged for
+         * {@code reason}, after stopping {@code stoppedVideo} if non-null; {@code names} are the
+         * selected ids that do not exist.
+         */
+        VIDEOS_FLAGGED(Field.NAME, Field.REASON, Field.COUNT, Field.MATCHED, Field.NAMES,
+                Field.STOPPED_VIDEO),
+        /**
+         * The flag was removed from {@code count} of the {@code matched} videos selected by
+         * {@code name}; {@code names} are the selected ids that do not exist.
+         */
+        VIDEOS_ALLOWED(Field.NAME, Field.COUNT, Field.MATCHED, Field.NAMES),
+        /** The file of video ids given as {@code name} cannot be read. */
+        VIDEO_IDS_UNREADABLE(Field.NAME),
+        /** The file of video ids given as {@code name} is not in a directory this session may read. */
+        VIDEO_IDS_NOT_ALLOWED(Field.NAME);
+
+        private final Set<Field> fields;
+
+        Status(Field... fields) {
+            this.fields = fields.length == 0 ? EnumSet.noneOf(Field.class)
+                    : EnumSet.copyOf(Arrays.asList(fields));
+        }
+
+        /** Returns whether results with this status carry the field. */
+        boolean has(Field field) {
+            return fields.contains(field);
+        }
+    }
+
+    private final Status status;
+    private final Video video;
+    private final Video stoppedVideo;
+    private final String name;
+    private final String reason;
+    private final List<Video> videos;
+    private final List<String> names;
+    private final int count;
+    private final boolean paused;
+    private final int matched;
+    private final int page;
+    private final int firstNumber;
+    private final boolean more;
+
+    private CommandResult(Status status, Video video, Video stoppedVideo, String name,
+                          String reason, List<Video> videos, List<String> names, int count,
+                          boolean paused, int matched, int page, int firstNumber, boolean more) {
+        this.status = status;
+        this.video = video;
+        this.stoppedVideo = stoppedVideo;
+        this.name = name;
+        this.reason = reason;
+        this.videos = videos;
+        this.names = names;
+        this.count = count;
+        this.paused = paused;
+        this.matched = matched;
+        this.page = page;
+        this.firstNumber = firstNumber;
+        this.more = more;
+        check(Field.VIDEO, video != null);
+        check(Field.STOPPED_VIDEO, stoppedVideo != null);
+        check(Field.NAME, name != null);
+        check(Field.REASON, reason != null);
+        check(Field.VIDEOS, videos != null);
+        check(Field.NAMES, names != null);
+        check(Field.COUNT, count != 0);
+        check(Field.PAUSED, paused);
+        check(Field.MATCHED, matched != 0);
+        check(Field.PAGE, page != 0);
+        check(Field.FIRST_NUMBER, firstNumber != 0);
+        check(Field.MORE, more);
+    }
+
+    private void check(Field field, boolean set) {
+        if (set && !status.has(field)) {
+            throw new IllegalArgumentException(status + " has no " + field);
+        }
+    }
+
+    private void require(Field field) {
+        if (!status.has(field)) {
+            throw new IllegalStateException(status + " has no " + field);
+        }
+    }
+
+    private CommandResult(Status status, Video video, Video stoppedVideo, String name,
+                          String reason, List<Video> videos, List<String> names, int count,
+                          boolean paused) {
+        this(status, video, stoppedVideo, name, reason, videos, names, count, paused, 0, 0, 0,
+                false);
+    }
+
+    static CommandResult of(Status status) {
+        return new CommandResult(status, null, null, null, null, null, null, 0, false);
+    }
+
+    static CommandResult ofVideo(Status status, Video video) {
+        return new CommandResult(status, video, null, null, null, null, null, 0, false);
+    }
+
+    static CommandResult ofFlaggedVideo(Status status, Video video, String reason) {
+        return new CommandResult(status, video, null, null, reason, null, null, 0, false);
+    }
+
+    static CommandResult ofName(Status status, String name) {
+        return new CommandResult(status, null, null, name, null, null, null, 0, false);
+    }
+
+    static CommandResult ofPlaylistVideo(Status status, String name, Video video) {
+        return new CommandResult(status, video, null, name, null, null, null, 0, false);
+    }
+
+    static CommandResult ofPlaylistFlaggedVideo(Status status, String name, Video video,
+                                                String reason) {
+        return new CommandResult(status, video, null, name, reason, null, null, 0, false);
+    }
+
+    static CommandResult ofVideos(Status status, String name, List<Video> videos) {
+        return new CommandResult(status, null, null, name, null, videos, null, 0, false);
+    }
+
+    static CommandResult ofNames(Status status, List<String> names) {
+        return new CommandResult(status, null, null, null, null, null, names, 0, false);
+    }
+
+    static CommandResult ofCount(Status status, int count) {
+        return new CommandResult(status, null, null, null, null, null, null, count, false);
+    }
+
+    static CommandResult playing(Video video, Video stoppedVideo) {
+        return new CommandResult(Status.PLAYING, video, stoppedVideo, null, null, null, null, 0,
+                false);
+    }
+
+    static CommandResult nowPlaying(Video video, boolean paused) {
+        return new CommandResult(Status.NOW_PLAYING, video, null, null, null, null, null, 0,
+                paused);
+    }
+
+    static CommandResult flagged(Video video, String reason, Video stoppedVideo) {
+        return new CommandResult(Status.FLAGGED, video, stoppedVideo, null, reason, null, null, 0,
+                false);
+    }
+
+    static CommandResult moderated(Status status, String selection, String reason, int changed,
+                                   int matched, List<String> missing, Video stoppedVideo) {
+        return new CommandResult(status, null, stoppedVideo, selection, reason, null, missing,
+                changed, false, matched, 0, 0, false);
+    }
+
+    /**
+     * Returns page {@code page} of a listing, whose first video is number
+     * {@code firstNumber} of the listing.
+     */
+    static CommandResult page(Status status, String name, List<Video> videos, int page,
+                              int firstNumber, boolean more) {
+        return new CommandResult(status, null, null, name, null, videos, null, 0, false, 0, page,
+                firstNumber, more);
+    }
+
+    /** Returns the result of asking for page {@code page} of a listing that ends before it. */
+    static CommandResult pageOutOfRange(int page) {
+        return new CommandResult(Status.PAGE_OUT_OF_RANGE, null, null, null, null, null, null, 0,
+                false, 0, page, 0, false);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /** Returns the video the outcome is about. */
+    public Video getVideo() {
+        require(Field.VIDEO);
+        return video;
+    }
+
+    /** Returns the video that was stopped as a side effect of the command. */
+    public Video getStoppedVideo() {
+        require(Field.STOPPED_VIDEO);
+        return stoppedVideo;
+    }
+
+    /** Returns the playlist name or search query, as the user gave it. */
+    public String getName() {
+        require(Field.NAME);
+        return name;
+    }
+
+    /** Returns the flag reason. */
+    public String getReason() {
+        require(Field.REASON);
+        return reason;
+    }
+
+    public List<Video> getVideos() {
+        require(Field.VIDEOS);
+        return videos;
+    }
+
+    public List<String> getNames() {
+        require(Field.NAMES);
+        return names;
+    }
+
+    public int getCount() {
+        require(Field.COUNT);
+        return count;
+    }
+
+    public boolean isPaused() {
+        require(Field.PAUSED);
+        return paused;
+    }
+
+    /** Returns how many of the videos a bulk command selected exist. */
+    public int getMatched() {
+        require(Field.MATCHED);
+        return matched;
+    }
+
+    /** Returns the number of a page of videos, counting from 1. */
+    public int getPage() {
+        require(Field.PAGE);
+        return page;
+    }
+
+    /**
+     * Returns the number a page of search results gives its first video, so
+     * that numbers go on from earlier pages.
+     */
+    public int getFirstNumber() {
+        require(Field.FIRST_NUMBER);
+        return firstNumber;
+    }
+
+    /** Returns whether another page follows a page of videos. */
+    public boolean hasMore() {
+        require(Field.MORE);
+        return more;
+    }
+}
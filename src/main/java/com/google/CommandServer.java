@@ -0,0 +1,229 @@
+package com.google;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the command line protocol over TCP. Each connection gets its own
+ * {@link PlayerSession} over a shared library and playlist manager, and is
+ * handled on its own thread: a virtual thread when the JDK has them, a
+ * platform thread otherwise.
+ *
+ * <p>The conversation is the same as on the terminal: a greeting, then a
+ * "YT> " prompt after each command, and search prompts are answered by the
+ * next line the client sends. At most {@code maxInFlight} commands run at
+ * once across all connections; others wait their turn. A command waiting
+ * for the answer to a search prompt gives up its turn until the answer
+ * arrives, so an idle client cannot hold one. When a connection closes, its
+ * command count and latency percentiles are written to the log; the time
+ * spent waiting for answers is not counted as latency.
+ *
+ * <p>Clients may only flag or allow videos listed in files under the
+ * directory named by {@value #VIDEO_IDS_DIRECTORY_PROPERTY}, and in none if
+ * it is not set.
+ */
+class CommandServer implements Closeable {
+
+  static final String PROMPT = "YT> ";
+
+  /**
+   * The directory that FLAG_VIDEOS IDS and ALLOW_VIDEOS IDS may read files
+   * of video ids from. Clients cannot read files of ids when it is not set.
+   */
+  static final String VIDEO_IDS_DIRECTORY_PROPERTY = "server.video.ids.dir";
+
+  private final VideoLibrary videoLibrary;
+  private final PlaylistManager playlistManager;
+  private final Path videoIdsDirectory;
+  private final ServerSocket serverSocket;
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+  private final PrintStream log;
+  private final Set<Socket> connections;
+  private final Thread acceptThread;
+
+  /**
+   * Starts listening on the given port of the loopback address. Port 0 picks
+   * a free port, see {@link #getPort()}.
+   */
+  CommandServer(VideoLibrary videoLibrary, int port, int maxInFlight, PrintStream log)
+      throws IOException {
+    this.videoLibrary = videoLibrary;
+    this.playlistManager = PlaylistManager.fromSystemProperty(videoLibrary);
+    String videoIdsDirectory = System.getProperty(VIDEO_IDS_DIRECTORY_PROPERTY);
+    this.videoIdsDirectory = videoIdsDirectory == null ? null : Path.of(videoIdsDirectory);
+    this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    this.executor = newConnectionExecutor();
+    this.inFlight = new Semaphore(maxInFlight);
+    this.log = log;
+    this.connections = ConcurrentHashMap.newKeySet();
+    this.acceptThread = new Thread(this::acceptLoop, "command-server-accept");
+    this.acceptThread.start();
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Uses a virtual thread per connection on JDKs that have them. Looked up
+   * reflectively because the project is compiled for Java 11.
+   */
+  private static ExecutorService newConnectionExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "command-server-connection");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  private void acceptLoop() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connections.add(socket);
+        executor.execute(() -> serve(socket));
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.println("Failed to accept connection: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void serve(Socket socket) {
+    String client = String.valueOf(socket.getRemoteSocketAddress());
+    CommandStats stats = new CommandStats();
+    long start = System.nanoTime();
+    try (socket;
+         BufferedReader input = new BufferedReader(
+             new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+         PrintStream out = new PrintStream(new BufferedOutputStream(socket.getOutputStream()),
+             false, StandardCharsets.UTF_8)) {
+      PlayerSession session =
+          new PlayerSession(videoLibrary, playlistManager, null, videoIdsDirectory);
+      Turn turn = new Turn(inFlight);
+      CommandParser parser = new CommandParser(new VideoPlayer(session, out, input, turn), out);
+      out.println("Hello and welcome to YouTube, what would you like to do? "
+          + "Enter HELP for list of available commands or EXIT to terminate.");
+      out.print(PROMPT);
+      out.flush();
+      String line;
+      while ((line = input.readLine()) != null) {
+        List<String> command = CommandParser.tokenize(line);
+        if (!command.isEmpty() && command.get(0).equalsIgnoreCase("exit")) {
+          out.println("YouTube has now terminated its execution. Thank you and goodbye!");
+          out.flush();
+          break;
+        }
+        turn.begin();
+        try {
+          parser.executeCommand(command);
+        } finally {
+          turn.end();
+        }
+        stats.record(command.isEmpty() ? "<EMPTY>" : command.get(0).toUpperCase(),
+            turn.getElapsedNanos());
+        out.print(PROMPT);
+        out.flush();
+      }
+    } catch (SocketException e) {
+      // The client went away; report what it did below.
+    } catch (IOException e) {
+      log.println("Connection " + client + " failed: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      log.println("Connection " + client + " failed: " + e);
+    } finally {
+      connections.remove(socket);
+    }
+    log.printf("Connection %s closed after %d commands in %.1f ms: p50 %.1f us, p99 %.1f us%n",
+        client, stats.getCommandCount(), (System.nanoTime() - start) / 1e6,
+        stats.overallPercentile(50) / 1e3, stats.overallPercentile(99) / 1e3);
+  }
+
+  /**
+   * A connection's turn to run a command: holds one of the in-flight permits
+   * and times the command, except while it waits for the client to answer a
+   * search prompt.
+   */
+  private static final class Turn implements VideoPlayer.InputListener {
+    private final Semaphore inFlight;
+    private long startedAt;
+    private long elapsed;
+
+    Turn(Semaphore inFlight) {
+      this.inFlight = inFlight;
+    }
+
+    void begin() throws InterruptedException {
+      inFlight.acquire();
+      elapsed = 0;
+      startedAt = System.nanoTime();
+    }
+
+    void end() {
+      elapsed += System.nanoTime() - startedAt;
+      inFlight.release();
+    }
+
+    long getElapsedNanos() {
+      return elapsed;
+    }
+
+    @Override
+    public void awaitingInput() {
+      end();
+    }
+
+    @Override
+    public void inputReceived() {
+      inFlight.acquireUninterruptibly();
+      startedAt = System.nanoTime();
+    }
+  }
+
+  /**
+   * Stops accepting connections, closes the open ones and then the playlist
+   * manager.
+   */
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    for (Socket socket : connections) {
+      socket.close();
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+      acceptThread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    playlistManager.close();
+  }
+}
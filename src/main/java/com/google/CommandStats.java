@@ -0,0 +1,87 @@
+package com.google;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records how long each command took, grouped by command type, and reports
+ * throughput and latency percentiles.
+ */
+class CommandStats {
+
+  private final Map<String, Samples> samplesByType;
+  private final Samples allSamples;
+  private long commands;
+  private long totalNanos;
+
+  CommandStats() {
+    this.samplesByType = new TreeMap<>();
+    this.allSamples = new Samples();
+  }
+
+  void record(String type, long nanos) {
+    samplesByType.computeIfAbsent(type, t -> new Samples()).add(nanos);
+    allSamples.add(nanos);
+    commands++;
+    totalNanos += nanos;
+  }
+
+  long getCommandCount() {
+    return commands;
+  }
+
+  /**
+   * Returns the latency at the given percentile, between 0 and 100, for the
+   * command type, or -1 if no command of that type was recorded.
+   */
+  long percentile(String type, double percentile) {
+    Samples samples = samplesByType.get(type);
+    return samples == null ? -1 : samples.percentile(percentile);
+  }
+
+  /**
+   * Returns the latency at the given percentile across all commands, or 0
+   * if none were recorded.
+   */
+  long overallPercentile(double percentile) {
+    return allSamples.size == 0 ? 0 : allSamples.percentile(percentile);
+  }
+
+  /** Prints the overall throughput, then p50/p99 latency for each command type. */
+  void report(PrintStream out, long wallNanos) {
+    out.printf("%d commands in %.1f ms (%.0f commands/s, %.1f ms in commands)%n",
+        commands, wallNanos / 1e6, wallNanos == 0 ? 0 : commands * 1e9 / wallNanos,
+        totalNanos / 1e6);
+    out.printf("%-24s %10s %12s %12s%n", "COMMAND", "COUNT", "P50 (us)", "P99 (us)");
+    for (Map.Entry<String, Samples> entry : samplesByType.entrySet()) {
+      Samples samples = entry.getValue();
+      out.printf("%-24s %10d %12.1f %12.1f%n", entry.getKey(), samples.size,
+          samples.percentile(50) / 1e3, samples.percentile(99) / 1e3);
+    }
+  }
+
+  private static final class Samples {
+    private long[] nanos = new long[16];
+    private int size;
+    private boolean sorted = true;
+
+    void add(long value) {
+      if (size == nanos.length) {
+        nanos = Arrays.copyOf(nanos, size * 2);
+      }
+      nanos[size++] = value;
+      sorted = false;
+    }
+
+    long percentile(double percentile) {
+      if (!sorted) {
+        Arrays.sort(nanos, 0, size);
+        sorted = true;
+      }
+      int index = (int) Math.ceil(percentile / 100 * size) - 1;
+      return nanos[Math.max(0, Math.min(size - 1, index))];
+    }
+  }
+}
@@ -0,0 +1,338 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable set of flagged video ordinals, each with its reason. Changes
+ * return a new set that shares everything but the changed path with the
+ * old one, so a library can publish a new version of its flags with a
+ * single write while readers keep using the version they started with.
+ *
+ * <p>The set is a trie of fixed depth over the bits of the ordinal. Each
+ * leaf covers 64 ordinals with a bitmask and the reasons of its members in
+ * ordinal order; each branch covers 32 children and counts the members
+ * below it, which lets {@link #unflaggedAt} find the k-th ordinal that is
+ * not flagged in one walk down the trie. A change copies one leaf and the
+ * five branches above it; an {@link Editor} makes many changes copying each
+ * node at most once.
+ */
+final class FlagSet {
+
+  static final FlagSet EMPTY = new FlagSet(null);
+
+  private static final int LEAF_BITS = 6;
+  private static final int BRANCH_BITS = 5;
+  private static final int BRANCH_WIDTH = 1 << BRANCH_BITS;
+  private static final int TOP_SHIFT = LEAF_BITS + 4 * BRANCH_BITS;
+
+  private final Branch root;
+
+  private FlagSet(Branch root) {
+    this.root = root;
+  }
+
+  /** Returns the number of flagged ordinals. */
+  int size() {
+    return root == null ? 0 : root.count;
+  }
+
+  boolean contains(int ordinal) {
+    return reason(ordinal) != null;
+  }
+
+  /** Returns the reason the ordinal is flagged, or null if it is not flagged. */
+  String reason(int ordinal) {
+    Object node = root;
+    for (int shift = TOP_SHIFT; node != null; shift -= BRANCH_BITS) {
+      if (shift < LEAF_BITS) {
+        return ((Leaf) node).reason(ordinal & 63);
+      }
+      node = ((Branch) node).children[(ordinal >>> shift) & (BRANCH_WIDTH - 1)];
+    }
+    return null;
+  }
+
+  /** Returns a set with the ordinal flagged for the reason, replacing any earlier reason. */
+  FlagSet with(int ordinal, String reason) {
+    Objects.requireNonNull(reason);
+    checkOrdinal(ordinal);
+    if (reason.equals(reason(ordinal))) {
+      return this;
+    }
+    return new FlagSet((Branch) update(root, TOP_SHIFT, ordinal, reason, null));
+  }
+
+  /** Returns a set without the ordinal. */
+  FlagSet without(int ordinal) {
+    if (ordinal < 0 || !contains(ordinal)) {
+      return this;
+    }
+    return new FlagSet((Branch) update(root, TOP_SHIFT, ordinal, null, null));
+  }
+
+  /** Returns an editor that starts from this set. */
+  Editor edit() {
+    return new Editor(this);
+  }
+
+  /**
+   * Returns the set with the flag of ordinal {@code from}, if it has one,
+   * moved to ordinal {@code to}, replacing the flag there, as when a store
+   * moves its last video into a freed ordinal.
+   */
+  FlagSet moved(int from, int to) {
+    String reason = reason(from);
+    FlagSet result = without(from).without(to);
+    return reason == null ? result : result.with(to, reason);
+  }
+
+  /**
+   * Returns the k-th smallest ordinal that is not in the set, counting from
+   * zero. For a library of {@code n} videos, k below
+   * {@code n - size()} gives an unflagged ordinal below {@code n}.
+   */
+  int unflaggedAt(int k) {
+    if (k < 0) {
+      throw new IndexOutOfBoundsException("Negative index " + k);
+    }
+    int base = 0;
+    Object node = root;
+    for (int shift = TOP_SHIFT; node != null && shift >= LEAF_BITS; shift -= BRANCH_BITS) {
+      Branch branch = (Branch) node;
+      int span = 1 << shift;
+      node = null;
+      for (int i = 0; i < BRANCH_WIDTH; i++) {
+        Object child = branch.children[i];
+        int unflagged = span - count(child);
+        if (k < unflagged) {
+          node = child;
+          break;
+        }
+        k -= unflagged;
+        base += span;
+      }
+    }
+    if (node == null) {
+      return base + k;
+    }
+    long free = ~((Leaf) node).bits;
+    for (int i = 0; i < k; i++) {
+      free &= free - 1;
+    }
+    return base + Long.numberOfTrailingZeros(free);
+  }
+
+  /**
+   * Returns whether any of the given ordinals, sorted ascending, is flagged
+   * differently here than in the other set, or for a different reason.
+   * Subtrees the two sets share are skipped, so this takes time in the
+   * number of changes between them rather than in the size of either.
+   */
+  boolean differsWithin(FlagSet other, int[] ordinals) {
+    return differs(root, other.root, TOP_SHIFT, 0, ordinals, 0, ordinals.length);
+  }
+
+  private static boolean differs(Object node, Object other, int shift, long base, int[] ordinals,
+      int from, int to) {
+    if (node == other || from == to) {
+      return false;
+    }
+    if (shift < LEAF_BITS) {
+      for (int i = from; i < to; i++) {
+        int slot = ordinals[i] & 63;
+        if (!Objects.equals(reason(node, slot), reason(other, slot))) {
+          return true;
+        }
+      }
+      return false;
+    }
+    long span = 1L << shift;
+    int start = from;
+    for (int i = 0; i < BRANCH_WIDTH && start < to; i++) {
+      long limit = base + (i + 1) * span;
+      int end = start;
+      while (end < to && ordinals[end] < limit) {
+        end++;
+      }
+      if (differs(child(node, i), child(other, i), shift - BRANCH_BITS, limit - span, ordinals,
+          start, end)) {
+        return true;
+      }
+      start = end;
+    }
+    return false;
+  }
+
+  private static Object child(Object branch, int index) {
+    return branch == null ? null : ((Branch) branch).children[index];
+  }
+
+  private static String reason(Object leaf, int slot) {
+    return leaf == null ? null : ((Leaf) leaf).reason(slot);
+  }
+
+  private static int count(Object node) {
+    if (node == null) {
+      return 0;
+    }
+    return node instanceof Branch ? ((Branch) node).count : Long.bitCount(((Leaf) node).bits);
+  }
+
+  private static void checkOrdinal(int ordinal) {
+    if (ordinal < 0) {
+      throw new IndexOutOfBoundsException("Negative ordinal " + ordinal);
+    }
+  }
+
+  /**
+   * Returns the node below which the ordinal is flagged for the reason, or
+   * unflagged if it is null, or null if it would be empty. Nodes owned by
+   * the given editor are changed in place; others are copied, and the
+   * copies owned by the editor, or by no one if it is null.
+   */
+  private static Object update(Object node, int shift, int ordinal, String reason,
+      Object owner) {
+    if (shift < LEAF_BITS) {
+      Leaf leaf = node == null ? Leaf.EMPTY : (Leaf) node;
+      Leaf updated = reason == null ? leaf.without(ordinal & 63, owner)
+          : leaf.with(ordinal & 63, reason, owner);
+      return updated.bits == 0 ? null : updated;
+    }
+    Branch branch = (Branch) node;
+    if (branch == null || owner == null || branch.owner != owner) {
+      branch = branch == null ? new Branch(new Object[BRANCH_WIDTH], 0, owner)
+          : new Branch(branch.children.clone(), branch.count, owner);
+    }
+    int index = (ordinal >>> shift) & (BRANCH_WIDTH - 1);
+    Object child = branch.children[index];
+    int before = count(child);
+    child = update(child, shift - BRANCH_BITS, ordinal, reason, owner);
+    branch.children[index] = child;
+    branch.count += count(child) - before;
+    return branch.count == 0 ? null : branch;
+  }
+
+  /**
+   * Makes a series of changes to a set, copying each node at most once
+   * however many changes fall below it, and returns them as a new set.
+   * The set it started from is unchanged. An editor is for one thread, and
+   * must not be used after {@link #build}.
+   */
+  static final class Editor {
+    private Object owner = new Object();
+    private Branch root;
+
+    private Editor(FlagSet start) {
+      this.root = start.root;
+    }
+
+    String reason(int ordinal) {
+      return new FlagSet(root).reason(ordinal);
+    }
+
+    /**
+     * Flags the ordinal for the reason, replacing any earlier reason.
+     * Returns false if it was already flagged for the reason.
+     */
+    boolean put(int ordinal, String reason) {
+      checkOrdinal(ordinal);
+      if (reason.equals(reason(ordinal))) {
+        return false;
+      }
+      root = (Branch) update(root, TOP_SHIFT, ordinal, reason, owner);
+      return true;
+    }
+
+    /** Unflags the ordinal. Returns false if it was not flagged. */
+    boolean remove(int ordinal) {
+      if (ordinal < 0 || reason(ordinal) == null) {
+        return false;
+      }
+      root = (Branch) update(root, TOP_SHIFT, ordinal, null, owner);
+      return true;
+    }
+
+    FlagSet build() {
+      owner = null;
+      return new FlagSet(root);
+    }
+  }
+
+  /**
+   * A node owned by an editor may be changed in place by it until it
+   * builds; once published, no node changes again.
+   */
+  private static final class Branch {
+    final Object[] children;
+    int count;
+    final Object owner;
+
+    Branch(Object[] children, int count, Object owner) {
+      this.children = children;
+      this.count = count;
+      this.owner = owner;
+    }
+  }
+
+  private static final class Leaf {
+    static final Leaf EMPTY = new Leaf(0, new String[0], null);
+
+    long bits;
+    String[] reasons;
+    final Object owner;
+
+    Leaf(long bits, String[] reasons, Object owner) {
+      this.bits = bits;
+      this.reasons = reasons;
+      this.owner = owner;
+    }
+
+    String reason(int slot) {
+      long bit = 1L << slot;
+      return (bits & bit) == 0 ? null : reasons[Long.bitCount(bits & (bit - 1))];
+    }
+
+    Leaf with(int slot, String reason, Object owner) {
+      long bit = 1L << slot;
+      int index = Long.bitCount(bits & (bit - 1));
+      if ((bits & bit) != 0) {
+        if (reason.equals(reasons[index])) {
+          return this;
+        }
+        Leaf leaf = owned(owner) ? this : new Leaf(bits, reasons.clone(), owner);
+        leaf.reasons[index] = reason;
+        return leaf;
+      }
+      String[] grown = Arrays.copyOf(reasons, reasons.length + 1);
+      System.arraycopy(reasons, index, grown, index + 1, reasons.length - index);
+      grown[index] = reason;
+      return changed(bits | bit, grown, owner);
+    }
+
+    Leaf without(int slot, Object owner) {
+      long bit = 1L << slot;
+      if ((bits & bit) == 0) {
+        return this;
+      }
+      int index = Long.bitCount(bits & (bit - 1));
+      String[] shrunk = new String[reasons.length - 1];
+      System.arraycopy(reasons, 0, shrunk, 0, index);
+      System.arraycopy(reasons, index + 1, shrunk, index, shrunk.length - index);
+      return changed(bits & ~bit, shrunk, owner);
+    }
+
+    private boolean owned(Object owner) {
+      return owner != null && this.owner == owner;
+    }
+
+    private Leaf changed(long bits, String[] reasons, Object owner) {
+      if (!owned(owner)) {
+        return new Leaf(bits, reasons, owner);
+      }
+      this.bits = bits;
+      this.reasons = reasons;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A store that keeps one {@link Video} object per video, indexed by a hash map. */
+class HeapVideoStore implements VideoStore {
+
+  private final List<Video> videos;
+  private final Map<String, Integer> ordinalsById;
+
+  HeapVideoStore() {
+    this.videos = new ArrayList<>();
+    this.ordinalsById = new HashMap<>();
+  }
+
+  @Override
+  public int size() {
+    return videos.size();
+  }
+
+  @Override
+  public Video get(int ordinal) {
+    return videos.get(ordinal);
+  }
+
+  @Override
+  public int ordinalOf(String videoId) {
+    Integer ordinal = ordinalsById.get(videoId);
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  @Override
+  public void add(Video video) {
+    ordinalsById.put(video.getVideoId(), videos.size());
+    videos.add(video);
+  }
+
+  @Override
+  public void remove(int ordinal) {
+    ordinalsById.remove(videos.get(ordinal).getVideoId());
+    int last = videos.size() - 1;
+    if (ordinal != last) {
+      Video moved = videos.get(last);
+      videos.set(ordinal, moved);
+      ordinalsById.put(moved.getVideoId(), ordinal);
+    }
+    videos.remove(last);
+  }
+}
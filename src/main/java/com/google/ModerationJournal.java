@@ -0,0 +1,351 @@
+package com.google;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of moderation decisions, flagging a video with a
+ * reason or allowing it again, that lets a {@link VideoLibrary} keep its
+ * flags across restarts.
+ *
+ * <p>The journal is a single file of records, each its payload length, a
+ * CRC-32 of the payload, then the payload: the decision, the video id and,
+ * for a flag, the reason. Appends only copy the record into a buffer; a
+ * flusher thread writes out whatever has been buffered and forces it to
+ * disk with one fsync, so decisions made together, by concurrent sessions
+ * or by a bulk import, share fsyncs. A decision is durable once
+ * {@link #awaitDurable} returns for the number {@link #append} gave it.
+ *
+ * <p>The journal also keeps the decisions in effect: the reason for every
+ * flagged video. Once the file holds more than twice as many records as
+ * there are flagged videos, and at least {@value #MIN_GARBAGE} more, it is
+ * compacted: the flagged videos are written to a temporary file, one record
+ * each, which is renamed over the journal.
+ *
+ * <p>Opening the journal replays it. Records cut short by a crash can only
+ * be among the last batch written, which was never acknowledged, so the
+ * journal is truncated at the first damaged record.
+ */
+class ModerationJournal implements Closeable {
+
+  /** The system property naming the directory the journal is kept in. */
+  static final String DIRECTORY_PROPERTY = "moderation.dir";
+
+  private static final String JOURNAL = "moderation.journal";
+  private static final int FLAG = 1;
+  private static final int ALLOW = 2;
+  private static final int MIN_GARBAGE = 10_000;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private final Path directory;
+  private final Path file;
+  private final Map<String, String> flagged;
+  private final Thread flusher;
+  private final ByteArrayOutputStream pending;
+  private final DataOutputStream pendingOut;
+  private FileChannel channel;
+  private long records;
+  private long appended;
+  private long durable;
+  private boolean flushing;
+  private boolean closed;
+  private IOException failure;
+
+  private ModerationJournal(Path directory, Map<String, String> flagged, long records)
+      throws IOException {
+    this.directory = directory;
+    this.file = directory.resolve(JOURNAL);
+    this.flagged = flagged;
+    this.records = records;
+    this.pending = new ByteArrayOutputStream();
+    this.pendingOut = new DataOutputStream(pending);
+    this.channel = openJournal();
+    this.flusher = new Thread(this::flushLoop, "moderation-journal-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /** Opens the journal in the directory, creating it if needed, and replays it. */
+  static ModerationJournal open(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    Map<String, String> flagged = new LinkedHashMap<>();
+    long records = replay(directory.resolve(JOURNAL), flagged);
+    return new ModerationJournal(directory, flagged, records);
+  }
+
+  /**
+   * Opens the journal in the directory named by the
+   * {@value #DIRECTORY_PROPERTY} system property, or returns null if it is
+   * not set.
+   */
+  static ModerationJournal fromSystemProperty() {
+    String directory = System.getProperty(DIRECTORY_PROPERTY);
+    if (directory == null) {
+      return null;
+    }
+    try {
+      return open(Path.of(directory));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't open the moderation journal in " + directory, e);
+    }
+  }
+
+  /**
+   * Returns the reason for every flagged video, by id, in the order they
+   * were first flagged. The map is read-only and must not be used while
+   * decisions are being appended.
+   */
+  Map<String, String> flagged() {
+    return Collections.unmodifiableMap(flagged);
+  }
+
+  /**
+   * Appends a decision: flagging the video with the given reason, or
+   * allowing it if the reason is null. Returns the decision's number, to
+   * pass to {@link #awaitDurable}. Decisions about a video must be appended
+   * in the order they were made.
+   */
+  synchronized long append(String videoId, String reason) {
+    if (closed) {
+      throw new IllegalStateException("Moderation journal is closed");
+    }
+    try {
+      writeRecord(pendingOut, videoId, reason);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (reason == null) {
+      flagged.remove(videoId);
+    } else {
+      flagged.put(videoId, reason);
+    }
+    records++;
+    notifyAll();
+    return ++appended;
+  }
+
+  /** Waits until the decision with the given number is on disk. */
+  synchronized void awaitDurable(long decision) {
+    boolean interrupted = false;
+    while (durable < decision && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (durable < decision) {
+      throw new UncheckedIOException("Moderation journal write failed", failure);
+    }
+  }
+
+  /** Compacts the journal if it holds enough superseded records to be worth it. */
+  synchronized void compactIfDue() throws IOException {
+    if (records - flagged.size() >= Math.max(flagged.size(), MIN_GARBAGE)) {
+      compact();
+    }
+  }
+
+  /**
+   * Rewrites the journal with one record per flagged video, once everything
+   * appended so far is on disk. Appends wait while this runs.
+   */
+  synchronized void compact() throws IOException {
+    while ((durable < appended || flushing) && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for the moderation journal");
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    Path temporary = directory.resolve(JOURNAL + ".tmp");
+    try (FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          Channels.newOutputStream(compacted), 1 << 16));
+      for (Map.Entry<String, String> entry : flagged.entrySet()) {
+        writeRecord(out, entry.getKey(), entry.getValue());
+      }
+      out.flush();
+      compacted.force(true);
+    }
+    channel.close();
+    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    channel = openJournal();
+    records = flagged.size();
+  }
+
+  /** Writes out everything appended so far and stops the flusher. */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      channel.close();
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private void flushLoop() {
+    while (true) {
+      byte[] batch;
+      long last;
+      FileChannel target;
+      synchronized (this) {
+        while (pending.size() == 0 && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pending.size() == 0) {
+          return;
+        }
+        batch = pending.toByteArray();
+        pending.reset();
+        last = appended;
+        target = channel;
+        flushing = true;
+      }
+      try {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+          target.write(buffer);
+        }
+        target.force(false);
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          flushing = false;
+          notifyAll();
+        }
+        return;
+      }
+      synchronized (this) {
+        durable = last;
+        flushing = false;
+        notifyAll();
+      }
+    }
+  }
+
+  private static void writeRecord(DataOutputStream out, String videoId, String reason)
+      throws IOException {
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+    DataOutputStream record = new DataOutputStream(payload);
+    record.writeByte(reason == null ? ALLOW : FLAG);
+    record.writeUTF(videoId);
+    if (reason != null) {
+      record.writeUTF(reason);
+    }
+    CRC32 crc = new CRC32();
+    crc.update(payload.toByteArray());
+    out.writeInt(payload.size());
+    out.writeInt((int) crc.getValue());
+    payload.writeTo(out);
+  }
+
+  /** Opens the journal for appending and makes sure its directory entry is on disk. */
+  private FileChannel openJournal() throws IOException {
+    FileChannel opened = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+      dir.force(true);
+    } catch (IOException e) {
+      // Some platforms cannot open or sync a directory; the rename is still atomic.
+    }
+    return opened;
+  }
+
+  /**
+   * Applies the journal's records to the map of flagged videos and returns
+   * how many there were. The first damaged record ends the journal, which
+   * is truncated there.
+   */
+  private static long replay(Path file, Map<String, String> flagged) throws IOException {
+    long records = 0;
+    long valid = 0;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          return records;
+        }
+        byte[] payload;
+        try {
+          int checksum = in.readInt();
+          if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new EOFException();
+          }
+          payload = in.readNBytes(length);
+          CRC32 crc = new CRC32();
+          crc.update(payload);
+          if (payload.length < length || (int) crc.getValue() != checksum) {
+            throw new EOFException();
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        int decision = record.readByte();
+        String videoId = record.readUTF();
+        if (decision == FLAG) {
+          flagged.put(videoId, record.readUTF());
+        } else {
+          flagged.remove(videoId);
+        }
+        records++;
+        valid += 2 * Integer.BYTES + length;
+      }
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+    try (FileChannel truncated = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      truncated.truncate(valid);
+      truncated.force(true);
+    }
+    return records;
+  }
+}
@@ -0,0 +1,331 @@
+package com.google;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A store that keeps its videos outside the Java heap, in direct buffers,
+ * so that however large the catalog is the garbage collector only ever
+ * sees a handful of buffer objects rather than several objects per video.
+ *
+ * <p>Each video is one record in an arena of fixed-size direct segments:
+ * its title length, id length and tag count as ints, then its title and id
+ * as UTF-8, then its tag dictionary ids. A record never spans two segments,
+ * so a segment's unused tail is skipped. A direct buffer of longs holds the
+ * offset of each row's record, and ids are found through a direct
+ * open-addressing table of row numbers, probed linearly, which hashes the
+ * id bytes in place.
+ *
+ * <p>Removing a row moves the last row's offset into its place and leaves
+ * its record behind as garbage; the arena is copied into fresh segments
+ * once more than half of it is garbage.
+ *
+ * <p>{@link #get} creates a new {@link Video} on every call; see
+ * {@link RowVideoStore}.
+ */
+class OffHeapVideoStore extends RowVideoStore {
+
+  static final int DEFAULT_SEGMENT_SIZE = 1 << 26;
+
+  private static final int HEADER_SIZE = 3 * Integer.BYTES;
+  private static final long MIN_COMPACT_SIZE = 1 << 20;
+
+  private final int segmentSize;
+  private final int segmentShift;
+  private List<ByteBuffer> segments;
+  private long used;
+  private long garbage;
+
+  private int size;
+  private ByteBuffer rows;
+  /** Row + 1 of the video whose id hashes to each slot, or 0 if the slot is empty. */
+  private ByteBuffer idTable;
+  private int tableMask;
+
+  OffHeapVideoStore() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  /** Creates a store whose arena grows by segments of the given size, a power of two. */
+  OffHeapVideoStore(int segmentSize) {
+    if (Integer.bitCount(segmentSize) != 1 || segmentSize < HEADER_SIZE) {
+      throw new IllegalArgumentException("Segment size must be a power of two: " + segmentSize);
+    }
+    this.segmentSize = segmentSize;
+    this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+    this.segments = new ArrayList<>();
+    this.rows = ByteBuffer.allocateDirect(16 * Long.BYTES);
+    this.idTable = ByteBuffer.allocateDirect(32 * Integer.BYTES);
+    this.tableMask = 31;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public int ordinalOf(String videoId) {
+    byte[] key = videoId.getBytes(StandardCharsets.UTF_8);
+    int h = 0;
+    for (byte b : key) {
+      h = 31 * h + b;
+    }
+    for (int slot = mix(h) & tableMask; ; slot = (slot + 1) & tableMask) {
+      int entry = idTable.getInt(slot * Integer.BYTES);
+      if (entry == 0) {
+        return -1;
+      }
+      if (idMatches(entry - 1, key)) {
+        return entry - 1;
+      }
+    }
+  }
+
+  @Override
+  public void add(Video video) {
+    byte[] title = video.getTitle().getBytes(StandardCharsets.UTF_8);
+    byte[] id = video.getVideoId().getBytes(StandardCharsets.UTF_8);
+    int[] tagIds = video.getTagIds();
+    long recordSize = HEADER_SIZE + (long) title.length + id.length
+        + (long) tagIds.length * Integer.BYTES;
+    if (recordSize > segmentSize) {
+      throw new IllegalArgumentException("Video " + video.getVideoId() + " is too large");
+    }
+    long offset = allocate((int) recordSize);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    segment.putInt(position, title.length);
+    segment.putInt(position + Integer.BYTES, id.length);
+    segment.putInt(position + 2 * Integer.BYTES, tagIds.length);
+    ByteBuffer target = segment.duplicate();
+    target.position(position + HEADER_SIZE);
+    target.put(title);
+    target.put(id);
+    for (int tagId : tagIds) {
+      target.putInt(tagId);
+    }
+
+    if ((size + 1) * Long.BYTES > rows.capacity()) {
+      rows = copyOf(rows, size * Long.BYTES, grow(rows.capacity()));
+    }
+    int row = size;
+    rows.putLong(row * Long.BYTES, offset);
+    size++;
+    if ((long) size * 4 > (long) (tableMask + 1) * 3) {
+      rehash((tableMask + 1) * 2);
+    } else {
+      link(row);
+    }
+  }
+
+  @Override
+  public void remove(int ordinal) {
+    Objects.checkIndex(ordinal, size);
+    unlink(slotOf(ordinal));
+    garbage += recordSize(ordinal);
+    int last = size - 1;
+    if (ordinal != last) {
+      int slot = slotOf(last);
+      rows.putLong(ordinal * Long.BYTES, rows.getLong(last * Long.BYTES));
+      idTable.putInt(slot * Integer.BYTES, ordinal + 1);
+    }
+    size--;
+    if (garbage > MIN_COMPACT_SIZE && garbage > used / 2) {
+      compact();
+    }
+  }
+
+  @Override
+  public String titleOf(int row) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    return decode(segment, position + HEADER_SIZE, segment.getInt(position));
+  }
+
+  @Override
+  String videoId(int row) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    return decode(segment, position + HEADER_SIZE + segment.getInt(position),
+        segment.getInt(position + Integer.BYTES));
+  }
+
+  @Override
+  int[] tagIds(int row) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    int start = position + HEADER_SIZE + segment.getInt(position)
+        + segment.getInt(position + Integer.BYTES);
+    int[] tagIds = new int[segment.getInt(position + 2 * Integer.BYTES)];
+    for (int i = 0; i < tagIds.length; i++) {
+      tagIds[i] = segment.getInt(start + i * Integer.BYTES);
+    }
+    return tagIds;
+  }
+
+  private boolean idMatches(int row, byte[] key) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    if (segment.getInt(position + Integer.BYTES) != key.length) {
+      return false;
+    }
+    int start = position + HEADER_SIZE + segment.getInt(position);
+    for (int i = 0; i < key.length; i++) {
+      if (segment.get(start + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int home(int row) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    int start = position + HEADER_SIZE + segment.getInt(position);
+    int end = start + segment.getInt(position + Integer.BYTES);
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + segment.get(i);
+    }
+    return mix(h) & tableMask;
+  }
+
+  private void link(int row) {
+    int slot = home(row);
+    while (idTable.getInt(slot * Integer.BYTES) != 0) {
+      slot = (slot + 1) & tableMask;
+    }
+    idTable.putInt(slot * Integer.BYTES, row + 1);
+  }
+
+  private int slotOf(int row) {
+    int slot = home(row);
+    while (idTable.getInt(slot * Integer.BYTES) != row + 1) {
+      slot = (slot + 1) & tableMask;
+    }
+    return slot;
+  }
+
+  /**
+   * Empties a slot, shifting back any later entry of the same probe run
+   * that would otherwise no longer be reachable from its home slot.
+   */
+  private void unlink(int slot) {
+    int hole = slot;
+    for (int next = (hole + 1) & tableMask; ; next = (next + 1) & tableMask) {
+      int entry = idTable.getInt(next * Integer.BYTES);
+      if (entry == 0) {
+        break;
+      }
+      int home = home(entry - 1);
+      if (((next - home) & tableMask) >= ((next - hole) & tableMask)) {
+        idTable.putInt(hole * Integer.BYTES, entry);
+        hole = next;
+      }
+    }
+    idTable.putInt(hole * Integer.BYTES, 0);
+  }
+
+  private void rehash(int capacity) {
+    idTable = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, Integer.BYTES));
+    tableMask = capacity - 1;
+    for (int row = 0; row < size; row++) {
+      link(row);
+    }
+  }
+
+  /**
+   * Reserves room for a record at the end of the arena and returns its
+   * offset, starting a new segment if the current one is too full.
+   */
+  private long allocate(int recordSize) {
+    int position = positionOf(used);
+    if (segmentOf(used) < segments.size() && position + recordSize > segmentSize) {
+      garbage += segmentSize - position;
+      used += segmentSize - position;
+    }
+    if (segmentOf(used) == segments.size()) {
+      segments.add(ByteBuffer.allocateDirect(segmentSize));
+    }
+    long offset = used;
+    used += recordSize;
+    return offset;
+  }
+
+  private int recordSize(int row) {
+    long offset = rows.getLong(row * Long.BYTES);
+    ByteBuffer segment = segments.get(segmentOf(offset));
+    int position = positionOf(offset);
+    return HEADER_SIZE + segment.getInt(position) + segment.getInt(position + Integer.BYTES)
+        + segment.getInt(position + 2 * Integer.BYTES) * Integer.BYTES;
+  }
+
+  /** Copies every row's record into fresh segments, in row order. */
+  private void compact() {
+    List<ByteBuffer> old = segments;
+    long[] offsets = new long[size];
+    for (int row = 0; row < size; row++) {
+      offsets[row] = rows.getLong(row * Long.BYTES);
+    }
+    int[] sizes = new int[size];
+    for (int row = 0; row < size; row++) {
+      sizes[row] = recordSize(row);
+    }
+    segments = new ArrayList<>();
+    used = 0;
+    garbage = 0;
+    for (int row = 0; row < size; row++) {
+      long offset = allocate(sizes[row]);
+      ByteBuffer source = old.get(segmentOf(offsets[row])).duplicate();
+      source.position(positionOf(offsets[row]));
+      source.limit(positionOf(offsets[row]) + sizes[row]);
+      ByteBuffer target = segments.get(segmentOf(offset)).duplicate();
+      target.position(positionOf(offset));
+      target.put(source);
+      rows.putLong(row * Long.BYTES, offset);
+    }
+  }
+
+  private int segmentOf(long offset) {
+    return (int) (offset >>> segmentShift);
+  }
+
+  private int positionOf(long offset) {
+    return (int) offset & (segmentSize - 1);
+  }
+
+  private static String decode(ByteBuffer segment, int start, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = segment.get(start + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int grow(int capacity) {
+    long grown = capacity + (capacity >> 1);
+    if (grown > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Off-heap video store is full");
+    }
+    return (int) grown;
+  }
+
+  private static ByteBuffer copyOf(ByteBuffer buffer, int length, int capacity) {
+    ByteBuffer copy = ByteBuffer.allocateDirect(capacity);
+    ByteBuffer source = buffer.duplicate();
+    source.position(0);
+    source.limit(length);
+    copy.put(source);
+    copy.clear();
+    return copy;
+  }
+}
@@ -0,0 +1,483 @@
+package com.google;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * The player's state and command logic, with every command returning a
+ * {@link CommandResult} instead of printing. {@link VideoPlayer} renders
+ * these results as text for the command line.
+ *
+ * <p>A session holds one user's playback state and is meant to be used by
+ * one thread at a time. The library and playlist manager it is given may be
+ * shared by many sessions; each change to them is a single atomic call, so
+ * concurrent sessions cannot lose each other's updates.
+ */
+class PlayerSession {
+
+    private final VideoLibrary videoLibrary;
+    private final PlaylistManager playlistManager;
+    private final Random random;
+    private final boolean anyVideoIdsFile;
+    private final Path videoIdsDirectory;
+    private Video currentVideo;
+    private boolean videoPaused;
+    private Listing listing;
+
+    /**
+     * Creates a session whose PLAY_RANDOM draws from the given generator, or
+     * from {@link ThreadLocalRandom} when it is null.
+     */
+    PlayerSession(VideoLibrary videoLibrary, PlaylistManager playlistManager, Random random) {
+        this(videoLibrary, playlistManager, random, true, null);
+    }
+
+    /**
+     * Creates a session that reads the files of video ids given to
+     * FLAG_VIDEOS and ALLOW_VIDEOS only from within {@code videoIdsDirectory},
+     * resolving relative names against it, or reads none if it is null. This
+     * is for sessions whose user should not see the local file system.
+     */
+    PlayerSession(VideoLibrary videoLibrary, PlaylistManager playlistManager, Random random,
+            Path videoIdsDirectory) {
+        this(videoLibrary, playlistManager, random, false, videoIdsDirectory);
+    }
+
+    private PlayerSession(VideoLibrary videoLibrary, PlaylistManager playlistManager,
+            Random random, boolean anyVideoIdsFile, Path videoIdsDirectory) {
+        this.videoLibrary = videoLibrary;
+        this.playlistManager = playlistManager;
+        this.random = random;
+        this.anyVideoIdsFile = anyVideoIdsFile;
+        this.videoIdsDirectory = videoIdsDirectory;
+        this.currentVideo = null;
+    }
+
+    /** Returns the library this session plays from. */
+    VideoLibrary getVideoLibrary() {
+        return videoLibrary;
+    }
+
+    CommandResult numberOfVideos() {
+        return CommandResult.ofCount(CommandResult.Status.VIDEO_COUNT, videoLibrary.size());
+    }
+
+    CommandResult showAllVideos() {
+        return CommandResult.ofVideos(CommandResult.Status.ALL_VIDEOS, null,
+                videoLibrary.getSortedVideos());
+    }
+
+    /**
+     * Shows one page of every video, and makes it the listing that
+     * {@link #nextPage} continues.
+     */
+    CommandResult showAllVideos(int page, int pageSize) {
+        return showPage(new Listing(Listing.Kind.ALL, null, pageSize), page);
+    }
+
+    /** Shows one page of the results of {@link #searchVideos}. */
+    CommandResult searchVideos(String searchTerm, int page, int pageSize) {
+        return showPage(new Listing(Listing.Kind.TITLE, searchTerm, pageSize), page);
+    }
+
+    /** Shows one page of the results of {@link #searchVideosWithTag}. */
+    CommandResult searchVideosWithTag(String videoTag, int page, int pageSize) {
+        return showPage(new Listing(Listing.Kind.TAG, videoTag, pageSize), page);
+    }
+
+    /** Shows the page after the last one shown of the current listing. */
+    CommandResult nextPage() {
+        if (listing == null || listing.next < 0) {
+            return CommandResult.of(CommandResult.Status.NO_NEXT_PAGE);
+        }
+        return show(listing, listing.page + 1, listing.next, 0);
+    }
+
+    private CommandResult showPage(Listing listing, int page) {
+        long skip = (long) (page - 1) * listing.pageSize;
+        return show(listing, page, 0, (int) Math.min(skip, Integer.MAX_VALUE));
+    }
+
+    private CommandResult show(Listing listing, int page, int from, int skip) {
+        VideoLibrary.Page videos;
+        switch (listing.kind) {
+            case TITLE:
+                videos = videoLibrary.pageOfTitles(listing.query, from, skip, listing.pageSize);
+                break;
+            case TAG:
+                videos = videoLibrary.pageOfTag(listing.query.toLowerCase(), from, skip,
+                        listing.pageSize);
+                break;
+            default:
+                videos = videoLibrary.pageOfAll(from, skip, listing.pageSize);
+                break;
+        }
+        if (videos.videos.isEmpty()) {
+            this.listing = null;
+            return page == 1 && listing.query != null
+                    ? CommandResult.ofName(CommandResult.Status.NO_SEARCH_RESULTS, listing.query)
+                    : CommandResult.pageOutOfRange(page);
+        }
+        listing.page = page;
+        listing.next = videos.next;
+        this.listing = listing;
+        boolean more = videos.next >= 0;
+        if (listing.kind == Listing.Kind.ALL) {
+            return CommandResult.page(CommandResult.Status.VIDEOS_PAGE, null, videos.videos, page,
+                    0, more);
+        }
+        int first = (page - 1) * listing.pageSize + 1;
+        return CommandResult.page(CommandResult.Status.SEARCH_RESULTS_PAGE, listing.query,
+                videos.videos, page, first, more);
+    }
+
+    CommandResult playVideo(String videoId) {
+        Video video = videoLibrary.getVideo(videoId);
+        if (video == null) {
+            return CommandResult.of(CommandResult.Status.PLAY_NOT_FOUND);
+        }
+        return playVideo(video);
+    }
+
+    CommandResult playVideo(Video video) {
+        String flagReason = video.getFlagReason();
+        if (flagReason != null) {
+            return CommandResult.ofFlaggedVideo(CommandResult.Status.PLAY_FLAGGED, video,
+                    flagReason);
+        }
+        Video stopped = currentVideo;
+        currentVideo = video;
+        videoPaused = false;
+        return CommandResult.playing(video, stopped);
+    }
+
+    CommandResult stopVideo() {
+        if (currentVideo == null) {
+            return CommandResult.of(CommandResult.Status.STOP_NOTHING_PLAYING);
+        }
+        Video stopped = currentVideo;
+        currentVideo = null;
+        return CommandResult.ofVideo(CommandResult.Status.STOPPED, stopped);
+    }
+
+    CommandResult playRandomVideo() {
+        Video video = videoLibrary.getRandomPlayableVideo(
+                random != null ? random : ThreadLocalRandom.current());
+        if (video == null) {
+            return CommandResult.of(CommandResult.Status.NO_VIDEOS_AVAILABLE);
+        }
+        return playVideo(video);
+    }
+
+    CommandResult pauseVideo() {
+        if (currentVideo == null) {
+            return CommandResult.of(CommandResult.Status.PAUSE_NOTHING_PLAYING);
+        }
+        if (videoPaused) {
+            return CommandResult.ofVideo(CommandResult.Status.ALREADY_PAUSED, currentVideo);
+        }
+        videoPaused = true;
+        return CommandResult.ofVideo(CommandResult.Status.PAUSED, currentVideo);
+    }
+
+    CommandResult continueVideo() {
+        if (currentVideo == null) {
+            return CommandResult.of(CommandResult.Status.CONTINUE_NOTHING_PLAYING);
+        }
+        if (!videoPaused) {
+            return CommandResult.ofVideo(CommandResult.Status.NOT_PAUSED, currentVideo);
+        }
+        videoPaused = false;
+        return CommandResult.ofVideo(CommandResult.Status.CONTINUED, currentVideo);
+    }
+
+    CommandResult showPlaying() {
+        if (currentVideo == null) {
+            return CommandResult.of(CommandResult.Status.NOTHING_PLAYING);
+        }
+        return CommandResult.nowPlaying(currentVideo, videoPaused);
+    }
+
+    CommandResult createPlaylist(String playlistName) {
+        if (!playlistManager.createPlaylist(playlistName)) {
+            return CommandResult.ofName(CommandResult.Status.PLAYLIST_ALREADY_EXISTS, playlistName);
+        }
+        return CommandResult.ofName(CommandResult.Status.PLAYLIST_CREATED, playlistName);
+    }
+
+    CommandResult addVideoToPlaylist(String playlistName, String videoId) {
+        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
+        if (videoPlaylist == null) {
+            return CommandResult.ofName(CommandResult.Status.ADD_NO_PLAYLIST, playlistName);
+        }
+        Video video = videoLibrary.getVideo(videoId);
+        if (video == null) {
+            return CommandResult.ofName(CommandResult.Status.ADD_NOT_FOUND, playlistName);
+        }
+        String flagReason = video.getFlagReason();
+        if (flagReason != null) {
+            return CommandResult.ofPlaylistFlaggedVideo(CommandResult.Status.ADD_FLAGGED,
+                    playlistName, video, flagReason);
+        }
+        if (!playlistManager.addVideo(videoPlaylist, videoId)) {
+            return CommandResult.ofPlaylistVideo(CommandResult.Status.ALREADY_IN_PLAYLIST,
+                    playlistName, video);
+        }
+        return CommandResult.ofPlaylistVideo(CommandResult.Status.ADDED_TO_PLAYLIST, playlistName,
+                video);
+    }
+
+    CommandResult showAllPlaylists() {
+        List<String> playlistNames = playlistManager.playListNames();
+        if (playlistNames.isEmpty()) {
+            return CommandResult.of(CommandResult.Status.NO_PLAYLISTS);
+        }
+        return CommandResult.ofNames(CommandResult.Status.ALL_PLAYLISTS, playlistNames);
+    }
+
+    CommandResult showPlaylist(String playlistName) {
+        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
+        if (videoPlaylist == null) {
+            return CommandResult.ofName(CommandResult.Status.SHOW_NO_PLAYLIST, playlistName);
+        }
+        List<Video> videos = videoPlaylist.getVideosIds().stream()
+                .map(videoLibrary::getVideo)
+                .collect(Collectors.toList());
+        return CommandResult.ofVideos(CommandResult.Status.PLAYLIST_CONTENTS, playlistName, videos);
+    }
+
+    CommandResult removeFromPlaylist(String playlistName, String videoId) {
+        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
+        if (videoPlaylist == null) {
+            return CommandResult.ofName(CommandResult.Status.REMOVE_NO_PLAYLIST, playlistName);
+        }
+        Video video = videoLibrary.getVideo(videoId);
+        if (video == null) {
+            return CommandResult.ofName(CommandResult.Status.REMOVE_NOT_FOUND, playlistName);
+        }
+        if (!playlistManager.removeVideo(videoPlaylist, videoId)) {
+            return CommandResult.ofPlaylistVideo(CommandResult.Status.NOT_IN_PLAYLIST,
+                    playlistName, video);
+        }
+        return CommandResult.ofPlaylistVideo(CommandResult.Status.REMOVED_FROM_PLAYLIST,
+                playlistName, video);
+    }
+
+    CommandResult clearPlaylist(String playlistName) {
+        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
+        if (videoPlaylist == null) {
+            return CommandResult.ofName(CommandResult.Status.CLEAR_NO_PLAYLIST, playlistName);
+        }
+        playlistManager.clearPlaylist(videoPlaylist);
+        return CommandResult.ofName(CommandResult.Status.PLAYLIST_CLEARED, playlistName);
+    }
+
+    CommandResult deletePlaylist(String playlistName) {
+        if (!playlistManager.deletePlaylist(playlistName)) {
+            return CommandResult.ofName(CommandResult.Status.DELETE_NO_PLAYLIST, playlistName);
+        }
+        return CommandResult.ofName(CommandResult.Status.PLAYLIST_DELETED, playlistName);
+    }
+
+    CommandResult searchVideos(String searchTerm) {
+        return searchResults(searchTerm, videoLibrary.searchPlayableTitles(searchTerm));
+    }
+
+    CommandResult searchVideosWithTag(String videoTag) {
+        return searchResults(videoTag, videoLibrary.searchPlayableTag(videoTag.toLowerCase()));
+    }
+
+    /**
+     * Shows the first {@code limit} videos whose titles complete the query,
+     * its last word possibly unfinished.
+     */
+    CommandResult completeVideos(String query, int limit) {
+        return searchResults(query, videoLibrary.completeTitles(query, limit));
+    }
+
+    /** Shows the first {@code limit} videos whose titles match the query despite typos. */
+    CommandResult searchVideosFuzzy(String query, int limit) {
+        return searchResults(query, videoLibrary.searchTitlesFuzzy(query, limit));
+    }
+
+    /** Shows the first {@code limit} videos matching the query, most relevant first. */
+    CommandResult searchVideosRanked(String query, int limit) {
+        return searchResults(query, videoLibrary.searchRanked(query, limit));
+    }
+
+    private static CommandResult searchResults(String query, List<Video> videos) {
+        if (videos.isEmpty()) {
+            return CommandResult.ofName(CommandResult.Status.NO_SEARCH_RESULTS, query);
+        }
+        return CommandResult.ofVideos(CommandResult.Status.SEARCH_RESULTS, query, videos);
+    }
+
+    CommandResult flagVideo(String videoId, String reason) {
+        Video video = videoLibrary.getVideo(videoId);
+        if (video == null) {
+            return CommandResult.of(CommandResult.Status.FLAG_NOT_FOUND);
+        }
+        if (!videoLibrary.flagVideo(video, reason)) {
+            return CommandResult.ofVideo(CommandResult.Status.ALREADY_FLAGGED, video);
+        }
+        Video stopped = null;
+        if (currentVideo != null && currentVideo.getVideoId().equals(videoId)) {
+            stopped = currentVideo;
+            currentVideo = null;
+        }
+        return CommandResult.flagged(video, reason, stopped);
+    }
+
+    CommandResult allowVideo(String videoId) {
+        Video video = videoLibrary.getVideo(videoId);
+        if (video == null) {
+            return CommandResult.of(CommandResult.Status.ALLOW_NOT_FOUND);
+        }
+        if (!videoLibrary.allowVideo(video)) {
+            return CommandResult.ofVideo(CommandResult.Status.NOT_FLAGGED, video);
+        }
+        return CommandResult.ofVideo(CommandResult.Status.ALLOWED, video);
+    }
+
+    /**
+     * Flags every video selected by {@code by}, one of "IDS" (a file of
+     * video ids, one per line), "TAG" or "TITLE" (the videos found by the
+     * corresponding search, flagged or not), in one pass over the library.
+     */
+    CommandResult flagVideos(String by, String target, String reason) {
+        Set<String> videoIds;
+        try {
+            videoIds = select(by, target);
+        } catch (SecurityException e) {
+            return CommandResult.ofName(CommandResult.Status.VIDEO_IDS_NOT_ALLOWED, target);
+        } catch (IOException e) {
+            return CommandResult.ofName(CommandResult.Status.VIDEO_IDS_UNREADABLE, target);
+        }
+        return flagVideos(by.toUpperCase() + " " + target, videoIds, reason);
+    }
+
+    /** Removes the flag from every video selected as by {@link #flagVideos}. */
+    CommandResult allowVideos(String by, String target) {
+        Set<String> videoIds;
+        try {
+            videoIds = select(by, target);
+        } catch (SecurityException e) {
+            return CommandResult.ofName(CommandResult.Status.VIDEO_IDS_NOT_ALLOWED, target);
+        } catch (IOException e) {
+            return CommandResult.ofName(CommandResult.Status.VIDEO_IDS_UNREADABLE, target);
+        }
+        return allowVideos(by.toUpperCase() + " " + target, videoIds);
+    }
+
+    /**
+     * Flags the videos with the given ids, summarizing the outcome under the
+     * name of the selection, and stops the current video if it is one of
+     * them.
+     */
+    CommandResult flagVideos(String selection, Collection<String> videoIds, String reason) {
+        VideoLibrary.Moderation moderation = videoLibrary.moderateAll(videoIds, reason);
+        Video stopped = null;
+        if (currentVideo != null) {
+            Video current = videoLibrary.getVideo(currentVideo.getVideoId());
+            if (current != null && current.isFlagged()) {
+                stopped = currentVideo;
+                currentVideo = null;
+            }
+        }
+        return CommandResult.moderated(CommandResult.Status.VIDEOS_FLAGGED, selection, reason,
+                moderation.changed, moderation.matched, moderation.missing, stopped);
+    }
+
+    /** Removes the flag from the videos with the given ids. */
+    CommandResult allowVideos(String selection, Collection<String> videoIds) {
+        VideoLibrary.Moderation moderation = videoLibrary.moderateAll(videoIds, null);
+        return CommandResult.moderated(CommandResult.Status.VIDEOS_ALLOWED, selection, null,
+                moderation.changed, moderation.matched, moderation.missing, null);
+    }
+
+    private Set<String> select(String by, String target) throws IOException {
+        List<Video> videos;
+        switch (by.toUpperCase()) {
+            case "IDS":
+                Set<String> videoIds = new LinkedHashSet<>();
+                try (BufferedReader lines = Files.newBufferedReader(videoIdsFile(target),
+                        StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = lines.readLine()) != null) {
+                        if (!line.isBlank()) {
+                            videoIds.add(line.strip());
+                        }
+                    }
+                }
+                return videoIds;
+            case "TAG":
+                videos = videoLibrary.searchTag(target.toLowerCase());
+                break;
+            case "TITLE":
+                videos = videoLibrary.searchTitles(target);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown video selection: " + by);
+        }
+        return videos.stream().map(Video::getVideoId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Returns the file of video ids with the given name, or throws
+     * SecurityException if this session may not read it. The check is made
+     * on the real path, so neither ".." nor a symbolic link leads outside the
+     * directory.
+     */
+    private Path videoIdsFile(String name) throws IOException {
+        try {
+            if (anyVideoIdsFile) {
+                return Path.of(name);
+            }
+            if (videoIdsDirectory == null) {
+                throw new SecurityException("Files of video ids are disabled");
+            }
+            Path directory = videoIdsDirectory.toRealPath();
+            Path file = directory.resolve(name).toRealPath();
+            if (!file.startsWith(directory)) {
+                throw new SecurityException("Not in " + directory + ": " + name);
+            }
+            return file;
+        } catch (InvalidPathException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * A paged listing: what is listed, the page size, the last page shown
+     * and the position in title order the next page starts from, or -1 if
+     * that was the last page. Paging is by position, so a listing may repeat
+     * or skip a video when videos are added or removed between pages.
+     */
+    private static final class Listing {
+        enum Kind { ALL, TITLE, TAG }
+
+        final Kind kind;
+        final String query;
+        final int pageSize;
+        int page;
+        int next;
+
+        Listing(Kind kind, String query, int pageSize) {
+            this.kind = kind;
+            this.query = query;
+            this.pageSize = pageSize;
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.google;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A write-ahead log of playlist changes, with periodic snapshots, that
+ * lets a {@link PlaylistManager} survive a restart or a crash.
+ *
+ * <p>Every change is appended to the log with the next sequence number and
+ * is durable once {@link #awaitDurable} returns for it. Appends only copy
+ * the change into a buffer; a single flusher thread writes out whatever
+ * has been buffered and forces it to disk with one fsync, so concurrent
+ * changes share fsyncs (group commit).
+ *
+ * <p>The directory holds log segments named {@code playlists-<first
+ * sequence number>.wal} and a {@code playlists.snapshot} of every playlist
+ * as of some sequence number. Each record is its payload length, a CRC-32
+ * of the payload, then the payload: the sequence number, the operation, the
+ * playlist name and, for ADD and REMOVE, the video id. A snapshot is written
+ * to a temporary file and renamed over the old one, after which the
+ * segments it covers are deleted.
+ *
+ * <p>Opening the log loads the snapshot and replays every later record. A
+ * record cut short by a crash, which can only be the last one written, is
+ * truncated away; it was never acknowledged. New records go to a new
+ * segment.
+ */
+class PlaylistLog implements Closeable {
+
+  /** The changes the log records. */
+  enum Op {
+    CREATE, ADD, REMOVE, CLEAR, DELETE
+  }
+
+  static final int DEFAULT_SNAPSHOT_EVERY = 10_000;
+
+  private static final String SNAPSHOT = "playlists.snapshot";
+  private static final String SEGMENT_PREFIX = "playlists-";
+  private static final String SEGMENT_SUFFIX = ".wal";
+  private static final int SNAPSHOT_MAGIC = 0x59545053;
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final int MAX_RECORD_SIZE = 1 << 20;
+
+  private final Path directory;
+  private final int snapshotEvery;
+  private final Thread flusher;
+  private final ByteArrayOutputStream pending;
+  private final DataOutputStream pendingOut;
+  private FileChannel segment;
+  private long nextSequence;
+  private long lastPending;
+  private long durable;
+  private int sinceSnapshot;
+  private boolean flushing;
+  private boolean closed;
+  private IOException failure;
+
+  private PlaylistLog(Path directory, int snapshotEvery, long nextSequence) throws IOException {
+    this.directory = directory;
+    this.snapshotEvery = snapshotEvery;
+    this.pending = new ByteArrayOutputStream();
+    this.pendingOut = new DataOutputStream(pending);
+    this.nextSequence = nextSequence;
+    this.lastPending = nextSequence - 1;
+    this.durable = nextSequence - 1;
+    this.segment = openSegment(nextSequence);
+    this.flusher = new Thread(this::flushLoop, "playlist-log-flusher");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  /**
+   * Opens the log in the directory, creating it if needed, and recovers
+   * its playlists into the given map, keyed by lowercased name.
+   */
+  static PlaylistLog open(Path directory, int snapshotEvery, Map<String, VideoPlaylist> playlists)
+      throws IOException {
+    Files.createDirectories(directory);
+    long last = readSnapshot(directory.resolve(SNAPSHOT), playlists);
+    List<Path> segments = segments(directory);
+    for (int i = 0; i < segments.size(); i++) {
+      last = replay(segments.get(i), last, i == segments.size() - 1, playlists);
+    }
+    return new PlaylistLog(directory, snapshotEvery, last + 1);
+  }
+
+  /**
+   * Appends a change, returning its sequence number. Changes must be
+   * appended in the order they were made to the playlists.
+   */
+  synchronized long append(Op op, String playlist, String videoId) {
+    if (closed) {
+      throw new IllegalStateException("Playlist log is closed");
+    }
+    long sequence = nextSequence++;
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+    try (DataOutputStream out = new DataOutputStream(payload)) {
+      out.writeLong(sequence);
+      out.writeByte(op.ordinal());
+      out.writeUTF(playlist);
+      if (videoId != null) {
+        out.writeUTF(videoId);
+      }
+      CRC32 crc = new CRC32();
+      crc.update(payload.toByteArray());
+      pendingOut.writeInt(payload.size());
+      pendingOut.writeInt((int) crc.getValue());
+      payload.writeTo(pendingOut);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    lastPending = sequence;
+    sinceSnapshot++;
+    notifyAll();
+    return sequence;
+  }
+
+  /** Waits until the change with the given sequence number is on disk. */
+  synchronized void awaitDurable(long sequence) {
+    boolean interrupted = false;
+    while (durable < sequence && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (durable < sequence) {
+      throw new UncheckedIOException("Playlist log write failed", failure);
+    }
+  }
+
+  /** Returns whether enough changes have been logged since the last snapshot to take another. */
+  synchronized boolean snapshotDue() {
+    return sinceSnapshot >= snapshotEvery;
+  }
+
+  /**
+   * Starts a new segment once everything appended so far is on disk, and
+   * returns the sequence number of the last change before it. The caller
+   * must stop changes to the playlists while this runs, and then pass the
+   * playlists as they are to {@link #writeSnapshot}.
+   */
+  synchronized long rotate() throws IOException {
+    while ((durable < lastPending || flushing) && failure == null) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for the playlist log");
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    segment.close();
+    segment = openSegment(nextSequence);
+    sinceSnapshot = 0;
+    return nextSequence - 1;
+  }
+
+  /**
+   * Writes a snapshot of the playlists, given by name with their video ids
+   * in order, as of the sequence number {@link #rotate} returned, and
+   * deletes the segments it replaces.
+   */
+  void writeSnapshot(Map<String, List<String>> playlists, long through) throws IOException {
+    Path temporary = directory.resolve(SNAPSHOT + ".tmp");
+    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      CRC32 crc = new CRC32();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new CheckedOutputStream(Channels.newOutputStream(channel), crc)));
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(SNAPSHOT_VERSION);
+      out.writeLong(through);
+      out.writeInt(playlists.size());
+      for (Map.Entry<String, List<String>> playlist : playlists.entrySet()) {
+        out.writeUTF(playlist.getKey());
+        out.writeInt(playlist.getValue().size());
+        for (String videoId : playlist.getValue()) {
+          out.writeUTF(videoId);
+        }
+      }
+      out.flush();
+      ByteBuffer checksum = ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue());
+      checksum.flip();
+      while (checksum.hasRemaining()) {
+        channel.write(checksum);
+      }
+      channel.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    syncDirectory();
+    for (Path old : segments(directory)) {
+      if (firstSequence(old) <= through) {
+        Files.deleteIfExists(old);
+      }
+    }
+  }
+
+  /** Writes out everything appended so far and stops the flusher. */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      segment.close();
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private void flushLoop() {
+    while (true) {
+      byte[] batch;
+      long last;
+      FileChannel channel;
+      synchronized (this) {
+        while (pending.size() == 0 && !closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (pending.size() == 0) {
+          return;
+        }
+        batch = pending.toByteArray();
+        pending.reset();
+        last = lastPending;
+        channel = segment;
+        flushing = true;
+      }
+      try {
+        ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(false);
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          flushing = false;
+          notifyAll();
+        }
+        return;
+      }
+      synchronized (this) {
+        durable = last;
+        flushing = false;
+        notifyAll();
+      }
+    }
+  }
+
+  private FileChannel openSegment(long firstSequence) throws IOException {
+    Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence,
+        SEGMENT_SUFFIX));
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    syncDirectory();
+    return channel;
+  }
+
+  /** Makes a file created or renamed in the directory durable, where the platform allows it. */
+  private void syncDirectory() {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
+    } catch (IOException e) {
+      // Some platforms cannot open or sync a directory; the rename is still atomic.
+    }
+  }
+
+  private static List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static long firstSequence(Path segment) {
+    String name = segment.getFileName().toString();
+    return Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+        name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /** Loads the snapshot, if there is one, and returns the sequence number it is as of. */
+  private static long readSnapshot(Path file, Map<String, VideoPlaylist> playlists)
+      throws IOException {
+    byte[] bytes;
+    try {
+      bytes = Files.readAllBytes(file);
+    } catch (NoSuchFileException e) {
+      return 0;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, Math.max(0, bytes.length - Integer.BYTES));
+    if (bytes.length < Integer.BYTES
+        || ByteBuffer.wrap(bytes, bytes.length - Integer.BYTES, Integer.BYTES).getInt()
+        != (int) crc.getValue()) {
+      throw new IOException("Playlist snapshot " + file + " is corrupt");
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+      throw new IOException(file + " is not a playlist snapshot of this version");
+    }
+    long through = in.readLong();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      VideoPlaylist playlist = new VideoPlaylist(in.readUTF());
+      int videos = in.readInt();
+      for (int j = 0; j < videos; j++) {
+        playlist.addVideo(in.readUTF());
+      }
+      playlists.put(playlist.getName().toLowerCase(), playlist);
+    }
+    return through;
+  }
+
+  /**
+   * Applies the segment's records after sequence number {@code last} and
+   * returns the last one applied. A damaged record ends the last segment,
+   * which is truncated there; anywhere else it is an error.
+   */
+  private static long replay(Path file, long last, boolean isLast,
+      Map<String, VideoPlaylist> playlists) throws IOException {
+    long valid = 0;
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file)))) {
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException e) {
+          return last;
+        }
+        byte[] payload;
+        try {
+          int checksum = in.readInt();
+          if (length < 0 || length > MAX_RECORD_SIZE) {
+            throw new EOFException();
+          }
+          payload = in.readNBytes(length);
+          CRC32 crc = new CRC32();
+          crc.update(payload);
+          if (payload.length < length || (int) crc.getValue() != checksum) {
+            throw new EOFException();
+          }
+        } catch (EOFException e) {
+          break;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        long sequence = record.readLong();
+        Op op = Op.values()[record.readByte()];
+        String name = record.readUTF();
+        String videoId = op == Op.ADD || op == Op.REMOVE ? record.readUTF() : null;
+        if (sequence > last) {
+          apply(op, name, videoId, playlists);
+          last = sequence;
+        }
+        valid += 2 * Integer.BYTES + length;
+      }
+    }
+    if (!isLast) {
+      throw new IOException("Playlist log segment " + file + " is corrupt");
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(valid);
+      channel.force(true);
+    }
+    return last;
+  }
+
+  private static void apply(Op op, String name, String videoId,
+      Map<String, VideoPlaylist> playlists) {
+    String key = name.toLowerCase();
+    VideoPlaylist playlist = playlists.get(key);
+    switch (op) {
+      case CREATE:
+        playlists.putIfAbsent(key, new VideoPlaylist(name));
+        break;
+      case DELETE:
+        playlists.remove(key);
+        break;
+      case ADD:
+        if (playlist != null) {
+          playlist.addVideo(videoId);
+        }
+        break;
+      case REMOVE:
+        if (playlist != null) {
+          playlist.removeVideo(videoId);
+        }
+        break;
+      case CLEAR:
+        if (playlist != null) {
+          playlist.removeAllVideos();
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown playlist change " + op);
+    }
+  }
+
+  /** Returns every playlist by name with its video ids, for a snapshot. */
+  static Map<String, List<String>> contents(Map<String, VideoPlaylist> playlists) {
+    Map<String, List<String>> contents = new LinkedHashMap<>();
+    for (VideoPlaylist playlist : playlists.values()) {
+      contents.put(playlist.getName(), new ArrayList<>(playlist.getVideosIds()));
+    }
+    return contents;
+  }
+}
@@ -1,37 +1,135 @@
 package com.google;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
-public class PlaylistManager {
+/**
+ * Holds the playlists, keyed by lowercased name. The map is concurrent and
+ * each playlist synchronizes on itself, so a manager can be shared between
+ * sessions.
+ *
+ * <p>A manager opened on a directory is durable: every change is written to
+ * a {@link PlaylistLog} before the method making it returns, and the
+ * playlists are recovered from the log when the directory is opened again.
+ * A change is logged while holding the lock that orders it against other
+ * changes to the same playlist, so the log replays them in the order they
+ * were made. Changes share a read lock that a snapshot takes exclusively,
+ * for the moment it takes to copy the playlists.
+ */
+public class PlaylistManager implements Closeable {
+
+    /** The system property naming the directory playlists are kept in. */
+    static final String DIRECTORY_PROPERTY = "playlists.dir";
 
     private final Map<String, VideoPlaylist> playlists;
     private final VideoLibrary videoLibrary;
+    private final PlaylistLog log;
+    private final ReadWriteLock changes;
+    private final AtomicBoolean snapshotting;
 
     public PlaylistManager(VideoLibrary videoLibrary) {
-        this.playlists = new HashMap<>();
+        this(videoLibrary, new ConcurrentHashMap<>(), null);
+    }
+
+    private PlaylistManager(VideoLibrary videoLibrary, Map<String, VideoPlaylist> playlists,
+            PlaylistLog log) {
+        this.playlists = playlists;
         this.videoLibrary = videoLibrary;
+        this.log = log;
+        this.changes = new ReentrantReadWriteLock();
+        this.snapshotting = new AtomicBoolean();
+    }
+
+    /**
+     * Opens a durable manager on the directory, recovering the playlists
+     * saved there. A snapshot is taken every {@code snapshotEvery} changes.
+     */
+    static PlaylistManager open(VideoLibrary videoLibrary, Path directory, int snapshotEvery)
+            throws IOException {
+        Map<String, VideoPlaylist> playlists = new ConcurrentHashMap<>();
+        PlaylistLog log = PlaylistLog.open(directory, snapshotEvery, playlists);
+        return new PlaylistManager(videoLibrary, playlists, log);
+    }
+
+    /**
+     * Returns a durable manager on the directory named by the
+     * {@value #DIRECTORY_PROPERTY} system property, or an in-memory one if it
+     * is not set.
+     */
+    static PlaylistManager fromSystemProperty(VideoLibrary videoLibrary) {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null) {
+            return new PlaylistManager(videoLibrary);
+        }
+        try {
+            return open(videoLibrary, Path.of(directory), PlaylistLog.DEFAULT_SNAPSHOT_EVERY);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open playlists in " + directory, e);
+        }
     }
 
     public boolean playlistExists(String name) {
         return playlists.containsKey(name.toLowerCase());
     }
 
+    /** Returns the playlist with the given name, ignoring case, or null. */
     public VideoPlaylist getPlaylist(String name) {
         return playlists.get(name.toLowerCase());
     }
 
-    public String createPlaylist(String name) {
-        if (playlistExists(name)) {
-            return "Cannot create playlist: A playlist with the same name already exists";
+    /**
+     * Creates a playlist. Returns false if a playlist with the same name,
+     * ignoring case, already exists.
+     */
+    public boolean createPlaylist(String name) {
+        if (log == null) {
+            return playlists.putIfAbsent(name.toLowerCase(), new VideoPlaylist(name)) == null;
+        }
+        long[] sequence = {-1};
+        changes.readLock().lock();
+        try {
+            playlists.computeIfAbsent(name.toLowerCase(), key -> {
+                sequence[0] = log.append(PlaylistLog.Op.CREATE, name, null);
+                return new VideoPlaylist(name);
+            });
+        } finally {
+            changes.readLock().unlock();
         }
-        playlists.put(name.toLowerCase(), new VideoPlaylist(name));
-        return "Successfully created new playlist: " + name;
+        commit(sequence[0]);
+        return sequence[0] >= 0;
+    }
+
+    /** Adds the video to an existing playlist. Returns false if it was already there. */
+    public boolean addToPlayList(String playlistName, String videoId) {
+        return addVideo(getPlaylist(playlistName), videoId);
+    }
+
+    /** Adds the video to the playlist. Returns false if it was already there. */
+    public boolean addVideo(VideoPlaylist playlist, String videoId) {
+        return change(playlist, () -> playlist.addVideo(videoId), PlaylistLog.Op.ADD, videoId);
+    }
+
+    /** Removes the video from the playlist. Returns false if it was not there. */
+    public boolean removeVideo(VideoPlaylist playlist, String videoId) {
+        return change(playlist, () -> playlist.removeVideo(videoId), PlaylistLog.Op.REMOVE,
+                videoId);
     }
 
-    public void addToPlayList(String playlistName, String videoId) {
-        VideoPlaylist videoPlaylist = getPlaylist(playlistName);
-        videoPlaylist.addVideo(videoId);
+    /** Removes every video from the playlist. */
+    public void clearPlaylist(VideoPlaylist playlist) {
+        change(playlist, () -> {
+            playlist.removeAllVideos();
+            return true;
+        }, PlaylistLog.Op.CLEAR, null);
     }
 
     public List<String> playListNames() {
@@ -42,7 +140,92 @@ public class PlaylistManager {
         return playlistNames;
     }
 
-    public void deletePlaylist(String playlistName) {
-        playlists.remove(playlistName);
+    /** Deletes the playlist. Returns false if it did not exist. */
+    public boolean deletePlaylist(String playlistName) {
+        if (log == null) {
+            return playlists.remove(playlistName.toLowerCase()) != null;
+        }
+        long[] sequence = {-1};
+        changes.readLock().lock();
+        try {
+            playlists.computeIfPresent(playlistName.toLowerCase(), (key, playlist) -> {
+                synchronized (playlist) {
+                    playlist.markDeleted();
+                    sequence[0] = log.append(PlaylistLog.Op.DELETE, playlist.getName(), null);
+                }
+                return null;
+            });
+        } finally {
+            changes.readLock().unlock();
+        }
+        commit(sequence[0]);
+        return sequence[0] >= 0;
+    }
+
+    /**
+     * Makes a change to a playlist and logs it if it changed anything.
+     * Changes to a playlist that has since been deleted are not logged, as
+     * a later playlist with the same name must not see them on replay.
+     */
+    private boolean change(VideoPlaylist playlist, BooleanSupplier mutation,
+            PlaylistLog.Op op, String videoId) {
+        if (log == null) {
+            return mutation.getAsBoolean();
+        }
+        long sequence = -1;
+        changes.readLock().lock();
+        try {
+            synchronized (playlist) {
+                if (!mutation.getAsBoolean()) {
+                    return false;
+                }
+                if (!playlist.isDeleted()) {
+                    sequence = log.append(op, playlist.getName(), videoId);
+                }
+            }
+        } finally {
+            changes.readLock().unlock();
+        }
+        commit(sequence);
+        return true;
+    }
+
+    /** Waits for a logged change to be durable, then takes a snapshot if one is due. */
+    private void commit(long sequence) {
+        if (sequence < 0) {
+            return;
+        }
+        log.awaitDurable(sequence);
+        if (log.snapshotDue() && snapshotting.compareAndSet(false, true)) {
+            try {
+                snapshot();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't snapshot playlists", e);
+            } finally {
+                snapshotting.set(false);
+            }
+        }
+    }
+
+    /** Writes a snapshot of every playlist and drops the log it replaces. */
+    void snapshot() throws IOException {
+        Map<String, List<String>> contents;
+        long through;
+        changes.writeLock().lock();
+        try {
+            through = log.rotate();
+            contents = PlaylistLog.contents(playlists);
+        } finally {
+            changes.writeLock().unlock();
+        }
+        log.writeSnapshot(contents, through);
+    }
+
+    /** Closes the log of a durable manager, once every change is on disk. */
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
     }
 }
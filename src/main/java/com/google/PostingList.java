@@ -0,0 +1,113 @@
+package com.google;
+
+import java.util.Arrays;
+
+/**
+ * A growable, sorted list of video ordinals. Used by the library indexes to
+ * record which videos contain a given key.
+ */
+class PostingList {
+
+  private int[] ordinals;
+  private int size;
+
+  PostingList() {
+    this.ordinals = new int[4];
+    this.size = 0;
+  }
+
+  /** Wraps ordinals that are already sorted and distinct, without copying. */
+  PostingList(int[] sortedOrdinals) {
+    this.ordinals = sortedOrdinals;
+    this.size = sortedOrdinals.length;
+  }
+
+  /** Adds the ordinal, keeping the list sorted. Duplicates are ignored. */
+  void add(int ordinal) {
+    if (size > 0 && ordinals[size - 1] >= ordinal) {
+      int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+      if (pos >= 0) {
+        return;
+      }
+      insertAt(-pos - 1, ordinal);
+      return;
+    }
+    insertAt(size, ordinal);
+  }
+
+  /** Removes the ordinal if present. */
+  void remove(int ordinal) {
+    int pos = Arrays.binarySearch(ordinals, 0, size, ordinal);
+    if (pos < 0) {
+      return;
+    }
+    System.arraycopy(ordinals, pos + 1, ordinals, pos, size - pos - 1);
+    size--;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean contains(int ordinal) {
+    return Arrays.binarySearch(ordinals, 0, size, ordinal) >= 0;
+  }
+
+  int get(int index) {
+    return ordinals[index];
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the ordinals present in both lists, by merging them. */
+  static PostingList intersect(PostingList a, PostingList b) {
+    PostingList result = new PostingList();
+    int i = 0;
+    int j = 0;
+    while (i < a.size && j < b.size) {
+      int x = a.ordinals[i];
+      int y = b.ordinals[j];
+      if (x == y) {
+        result.insertAt(result.size, x);
+        i++;
+        j++;
+      } else if (x < y) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /** Returns the ordinals present in either list, by merging them. */
+  static PostingList union(PostingList a, PostingList b) {
+    PostingList result = new PostingList();
+    int i = 0;
+    int j = 0;
+    while (i < a.size || j < b.size) {
+      int next;
+      if (j == b.size || (i < a.size && a.ordinals[i] < b.ordinals[j])) {
+        next = a.ordinals[i++];
+      } else if (i == a.size || b.ordinals[j] < a.ordinals[i]) {
+        next = b.ordinals[j++];
+      } else {
+        next = a.ordinals[i++];
+        j++;
+      }
+      result.insertAt(result.size, next);
+    }
+    return result;
+  }
+
+  private void insertAt(int pos, int ordinal) {
+    if (size == ordinals.length) {
+      ordinals = Arrays.copyOf(ordinals, Math.max(4, size * 2));
+    }
+    System.arraycopy(ordinals, pos, ordinals, pos + 1, size - pos);
+    ordinals[pos] = ordinal;
+    size++;
+  }
+}
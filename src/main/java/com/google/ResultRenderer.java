@@ -0,0 +1,254 @@
+package com.google;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Renders {@link CommandResult}s as the text messages of the command line
+ * player. This is the only place those messages are built.
+ */
+class ResultRenderer {
+
+    /** What a video id looks like: letters, digits, '_' and '-', at most 64 of them. */
+    private static final Pattern VIDEO_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    void render(CommandResult result, PrintStream out) {
+        switch (result.getStatus()) {
+            case VIDEO_COUNT:
+                out.printf("%s videos in the library%n", result.getCount());
+                break;
+            case ALL_VIDEOS:
+                out.println("Here's a list of all available videos:");
+                for (Video each : result.getVideos()) {
+                    out.println(" " + each);
+                }
+                break;
+            case VIDEOS_PAGE:
+                out.println("Here's page " + result.getPage() + " of all available videos:");
+                for (Video each : result.getVideos()) {
+                    out.println(" " + each);
+                }
+                printMore(result, out);
+                break;
+            case PLAYING:
+                if (result.getStoppedVideo() != null) {
+                    out.println("Stopping video: " + result.getStoppedVideo().getTitle());
+                }
+                out.println("Playing video: " + result.getVideo().getTitle());
+                break;
+            case PLAY_NOT_FOUND:
+                out.println("Cannot play video: Video does not exist");
+                break;
+            case PLAY_FLAGGED:
+                out.println("Cannot play video: Video is currently flagged (reason: "
+                        + result.getReason() + ")");
+                break;
+            case NO_VIDEOS_AVAILABLE:
+                out.println("No videos available");
+                break;
+            case STOPPED:
+                out.println("Stopping video: " + result.getVideo().getTitle());
+                break;
+            case STOP_NOTHING_PLAYING:
+                out.println("Cannot stop video: No video is currently playing");
+                break;
+            case PAUSED:
+                out.println("Pausing video: " + result.getVideo().getTitle());
+                break;
+            case ALREADY_PAUSED:
+                out.println("Video already paused: " + result.getVideo().getTitle());
+                break;
+            case PAUSE_NOTHING_PLAYING:
+                out.println("Cannot pause video: No video is currently playing");
+                break;
+            case CONTINUED:
+                out.println("Continuing video: " + result.getVideo().getTitle());
+                break;
+            case NOT_PAUSED:
+                out.println("Cannot continue video: Video is not paused");
+                break;
+            case CONTINUE_NOTHING_PLAYING:
+                out.println("Cannot continue video: No video is currently playing");
+                break;
+            case NOW_PLAYING:
+                out.println("Currently playing: " + result.getVideo()
+                        + (result.isPaused() ? " - PAUSED" : ""));
+                break;
+            case NOTHING_PLAYING:
+                out.println("No video is currently playing");
+                break;
+            case PLAYLIST_CREATED:
+                out.println("Successfully created new playlist: " + result.getName());
+                break;
+            case PLAYLIST_ALREADY_EXISTS:
+                out.println("Cannot create playlist: A playlist with the same name already exists");
+                break;
+            case ADDED_TO_PLAYLIST:
+                out.println("Added video to " + result.getName() + ": "
+                        + result.getVideo().getTitle());
+                break;
+            case ADD_NO_PLAYLIST:
+                out.println("Cannot add video to " + result.getName()
+                        + ": Playlist does not exist");
+                break;
+            case ADD_NOT_FOUND:
+                out.println("Cannot add video to " + result.getName() + ": Video does not exist");
+                break;
+            case ADD_FLAGGED:
+                out.println("Cannot add video to " + result.getName()
+                        + ": Video is currently flagged (reason: "
+                        + result.getReason() + ")");
+                break;
+            case ALREADY_IN_PLAYLIST:
+                out.println("Cannot add video to " + result.getName() + ": Video already added");
+                break;
+            case ALL_PLAYLISTS:
+                out.println("Showing all playlists:");
+                for (String playlistName : result.getNames()) {
+                    out.println(" " + playlistName);
+                }
+                break;
+            case NO_PLAYLISTS:
+                out.println("No playlists exist yet");
+                break;
+            case PLAYLIST_CONTENTS:
+                out.println("Showing playlist: " + result.getName());
+                if (result.getVideos().isEmpty()) {
+                    out.println(" No videos here yet");
+                }
+                for (Video each : result.getVideos()) {
+                    out.println(each);
+                }
+                break;
+            case SHOW_NO_PLAYLIST:
+                out.println("Cannot show playlist " + result.getName()
+                        + ": Playlist does not exist");
+                break;
+            case REMOVED_FROM_PLAYLIST:
+                out.println("Removed video from " + result.getName() + ": "
+                        + result.getVideo().getTitle());
+                break;
+            case REMOVE_NO_PLAYLIST:
+                out.println("Cannot remove video from " + result.getName()
+                        + ": Playlist does not exist");
+                break;
+            case REMOVE_NOT_FOUND:
+                out.println("Cannot remove video from " + result.getName()
+                        + ": Video does not exist");
+                break;
+            case NOT_IN_PLAYLIST:
+                out.println("Cannot remove video from " + result.getName()
+                        + ": Video is not in playlist");
+                break;
+            case PLAYLIST_CLEARED:
+                out.println("Successfully removed all videos from " + result.getName());
+                break;
+            case CLEAR_NO_PLAYLIST:
+                out.println("Cannot clear playlist " + result.getName()
+                        + ": Playlist does not exist");
+                break;
+            case PLAYLIST_DELETED:
+                out.println("Deleted playlist: " + result.getName());
+                break;
+            case DELETE_NO_PLAYLIST:
+                out.println("Cannot delete playlist " + result.getName()
+                        + ": Playlist does not exist");
+                break;
+            case SEARCH_RESULTS:
+                out.println("Here are the results for " + result.getName() + ":");
+                List<Video> videos = result.getVideos();
+                for (int i = 0; i < videos.size(); i++) {
+                    out.println(" " + (i + 1) + ") " + videos.get(i));
+                }
+                break;
+            case NO_SEARCH_RESULTS:
+                out.println("No search results for " + result.getName());
+                break;
+            case SEARCH_RESULTS_PAGE:
+                out.println("Here are the results for " + result.getName() + " (page "
+                        + result.getPage()
+                        + "):");
+                List<Video> page = result.getVideos();
+                for (int i = 0; i < page.size(); i++) {
+                    out.println(" " + (result.getFirstNumber() + i) + ") " + page.get(i));
+                }
+                printMore(result, out);
+                break;
+            case PAGE_OUT_OF_RANGE:
+                out.println("Cannot show page " + result.getPage() + ": No more results");
+                break;
+            case NO_NEXT_PAGE:
+                out.println("Cannot show next page: No more results");
+                break;
+            case FLAGGED:
+                if (result.getStoppedVideo() != null) {
+                    out.println("Stopping video: " + result.getStoppedVideo().getTitle());
+                }
+                out.println("Successfully flagged video: " + result.getVideo().getTitle()
+                        + " (reason: " + result.getReason() + ")");
+                break;
+            case FLAG_NOT_FOUND:
+                out.println("Cannot flag video: Video does not exist");
+                break;
+            case ALREADY_FLAGGED:
+                out.println("Cannot flag video: Video is already flagged");
+                break;
+            case ALLOWED:
+                out.println("Successfully removed flag from video: "
+                        + result.getVideo().getTitle());
+                break;
+            case ALLOW_NOT_FOUND:
+                out.println("Cannot remove flag from video: Video does not exist");
+                break;
+            case NOT_FLAGGED:
+                out.println("Cannot remove flag from video: Video is not flagged");
+                break;
+            case VIDEOS_FLAGGED:
+                if (result.getStoppedVideo() != null) {
+                    out.println("Stopping video: " + result.getStoppedVideo().getTitle());
+                }
+                out.println("Successfully flagged " + result.getCount() + " of "
+                        + result.getMatched() + " videos selected by " + result.getName()
+                        + " (reason: " + result.getReason() + ")");
+                printMissing(result, out);
+                break;
+            case VIDEOS_ALLOWED:
+                out.println("Successfully removed flag from " + result.getCount() + " of "
+                        + result.getMatched() + " videos selected by " + result.getName());
+                printMissing(result, out);
+                break;
+            case VIDEO_IDS_UNREADABLE:
+                out.println("Cannot read video ids from file: " + result.getName());
+                break;
+            case VIDEO_IDS_NOT_ALLOWED:
+                out.println("Cannot read video ids from file: " + result.getName()
+                        + " is not in an allowed directory");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown status: " + result.getStatus());
+        }
+    }
+
+    /**
+     * Prints how many selected ids do not exist. One is shown as an example
+     * only if it looks like a video id, since it may come from a file that
+     * is not a list of ids at all.
+     */
+    private static void printMissing(CommandResult result, PrintStream out) {
+        List<String> missing = result.getNames();
+        if (missing.isEmpty()) {
+            return;
+        }
+        String example = missing.stream().filter(id -> VIDEO_ID.matcher(id).matches())
+                .findFirst().orElse(null);
+        out.println(missing.size() + " video ids do not exist"
+                + (example == null ? "" : ", e.g. " + example));
+    }
+
+    private static void printMore(CommandResult result, PrintStream out) {
+        if (result.hasMore()) {
+            out.println("Type NEXT_PAGE for more");
+        }
+    }
+}
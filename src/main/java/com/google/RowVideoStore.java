@@ -0,0 +1,29 @@
+package com.google;
+
+import java.util.Objects;
+
+/**
+ * A store that keeps its videos as numbered rows of encoded data rather
+ * than as objects, and creates a new {@link Video} from a row every time
+ * one is read.
+ */
+abstract class RowVideoStore implements VideoStore {
+
+  @Override
+  public Video get(int ordinal) {
+    Objects.checkIndex(ordinal, size());
+    return new Video(titleOf(ordinal), videoId(ordinal), tagIds(ordinal));
+  }
+
+  /** Decodes the id of the given row. */
+  abstract String videoId(int row);
+
+  /** Decodes the tag ids of the given row into a new array. */
+  abstract int[] tagIds(int row);
+
+  /** Finishes a hash of id bytes computed as {@code h = 31 * h + b}. */
+  static int mix(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -1,13 +1,42 @@
 package com.google;
 
-import java.util.Arrays;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class Run {
-  public static void main(String[] args){
+  private static final int BUFFER_SIZE = 1 << 16;
+  private static final int DEFAULT_PORT = 8089;
+  private static final int DEFAULT_MAX_IN_FLIGHT = 4 * Runtime.getRuntime().availableProcessors();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length > 0 && args[0].equals("--batch")) {
+      runBatch(args.length > 1 ? args[1] : "-", args.length > 2 ? args[2] : null);
+      return;
+    }
+    if (args.length > 1 && args[0].equals("--import-moderation")) {
+      importModeration(args[1], args.length > 2 ? args[2] : null);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--server")) {
+      runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT,
+          args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_IN_FLIGHT,
+          args.length > 3 ? args[3] : null);
+      return;
+    }
+    var videoPlayer = new VideoPlayer();
+    reportLoad(videoPlayer.getSession().getVideoLibrary());
     System.out.println("Hello and welcome to YouTube, what would you like to do? "
         + "Enter HELP for list of available commands or EXIT to terminate.");
-    var videoPlayer = new VideoPlayer();
     var parser = new CommandParser(videoPlayer);
     var scanner = new Scanner(System.in);
     while (true) {
@@ -18,7 +47,86 @@ public class Run {
             "Thank you and goodbye!");
         return;
       }
-      parser.executeCommand(Arrays.asList(input.split("\\s+")));
+      parser.executeCommand(CommandParser.tokenize(input));
+    }
+  }
+
+  /**
+   * Writes how long loading the library's catalog took, and at how many
+   * lines a second, to standard error. Prints nothing for a library opened
+   * from a snapshot.
+   */
+  private static void reportLoad(VideoLibrary videoLibrary) {
+    if (videoLibrary.getLoadResult() != null) {
+      System.err.println(videoLibrary.getLoadResult());
+    }
+  }
+
+  /**
+   * Runs the commands in the given file, or standard input for "-", writing
+   * output through one buffered stream and a timing summary to standard
+   * error. The commands work on the given catalog or snapshot file, or on
+   * the bundled videos when it is null.
+   */
+  private static void runBatch(String script, String catalog) throws IOException {
+    Reader reader = script.equals("-")
+        ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+        : Files.newBufferedReader(Path.of(script), StandardCharsets.UTF_8);
+    var out = new PrintStream(new BufferedOutputStream(
+        new FileOutputStream(FileDescriptor.out), BUFFER_SIZE), false, StandardCharsets.UTF_8);
+    try (var input = new BufferedReader(reader, BUFFER_SIZE)) {
+      var videoLibrary = catalog == null ? new VideoLibrary() : VideoLibrary.open(Path.of(catalog));
+      reportLoad(videoLibrary);
+      var runner = new BatchRunner(videoLibrary, input, out);
+      long start = System.nanoTime();
+      CommandStats stats = runner.run();
+      stats.report(System.err, System.nanoTime() - start);
+      if (videoLibrary.searchCacheStats() != null) {
+        System.err.println(videoLibrary.searchCacheStats());
+      }
+    } finally {
+      out.flush();
+    }
+  }
+
+  /**
+   * Applies a file of moderation decisions to the given catalog or snapshot
+   * file, or to the bundled videos when it is null, recording them in the
+   * moderation journal so later runs start with them.
+   */
+  private static void importModeration(String decisions, String catalog) throws IOException {
+    if (System.getProperty(ModerationJournal.DIRECTORY_PROPERTY) == null) {
+      System.err.println("Set -D" + ModerationJournal.DIRECTORY_PROPERTY
+          + " to the directory of the moderation journal to import into");
+      return;
+    }
+    var library = catalog == null ? new VideoLibrary() : VideoLibrary.open(Path.of(catalog));
+    reportLoad(library);
+    try (var input = Files.newBufferedReader(Path.of(decisions), StandardCharsets.UTF_8)) {
+      long start = System.nanoTime();
+      int changed = library.importModeration(input);
+      System.err.printf("Changed the flags of %d videos in %d ms%n", changed,
+          (System.nanoTime() - start) / 1_000_000);
     }
   }
+
+  /**
+   * Serves the command protocol on the given localhost port until the
+   * process is stopped, over the given catalog or snapshot file, or the
+   * bundled videos when it is null.
+   */
+  private static void runServer(int port, int maxInFlight, String catalog) throws IOException {
+    var videoLibrary = catalog == null ? new VideoLibrary() : VideoLibrary.open(Path.of(catalog));
+    reportLoad(videoLibrary);
+    var server = new CommandServer(videoLibrary, port, maxInFlight, System.err);
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        server.close();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }));
+    System.out.println("Listening on localhost:" + server.getPort()
+        + " with at most " + maxInFlight + " commands in flight");
+  }
 }
@@ -0,0 +1,191 @@
+package com.google;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Remembers the results of recent searches, keyed by the normalized query,
+ * and evicts the least recently used once it holds more than its maximum
+ * number of entries or of estimated bytes. A result larger than the whole
+ * byte budget is not kept.
+ *
+ * <p>An entry holds the matching ordinals in title order, the same ordinals
+ * sorted for lookup, and the playable videos among them as of one version
+ * of the library's flags. The library checks an entry against its current
+ * flags on every hit, and invalidates it only if a video in the result was
+ * flagged or allowed since; the videos are then rebuilt from the ordinals
+ * without searching again. Adding or removing
+ * videos moves ordinals, so the library {@linkplain #clear clears} the
+ * cache instead.
+ *
+ * <p>Every method synchronizes on the cache, so it can be shared by the
+ * readers of a library.
+ */
+final class SearchCache {
+
+  static final String ENTRIES_PROPERTY = "search.cache.entries";
+  static final String BYTES_PROPERTY = "search.cache.bytes";
+  static final int DEFAULT_ENTRIES = 1024;
+  static final long DEFAULT_BYTES = 64L << 20;
+
+  /** The estimated size of an entry with no results, key characters aside. */
+  static final int ENTRY_BYTES = 160;
+  /** The estimated size of each result in an entry: two ints and a reference. */
+  static final int RESULT_BYTES = 16;
+  /** The estimated size of a video object, title and id characters aside. */
+  static final int VIDEO_BYTES = 112;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> entries;
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long invalidations;
+
+  SearchCache(int maxEntries, long maxBytes) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Returns a cache sized by the {@value #ENTRIES_PROPERTY} and
+   * {@value #BYTES_PROPERTY} system properties, or null if either is 0.
+   */
+  static SearchCache fromSystemProperties() {
+    int maxEntries = Integer.getInteger(ENTRIES_PROPERTY, DEFAULT_ENTRIES);
+    long maxBytes = Long.getLong(BYTES_PROPERTY, DEFAULT_BYTES);
+    return maxEntries <= 0 || maxBytes <= 0 ? null : new SearchCache(maxEntries, maxBytes);
+  }
+
+  /** Returns the entry for the query, or null, counting a hit or a miss. */
+  synchronized Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return entry;
+  }
+
+  /** Adds or replaces the entry for the query, evicting others to make room. */
+  synchronized void put(String key, Entry entry) {
+    if (entry.bytes > maxBytes) {
+      return;
+    }
+    Entry old = entries.put(key, entry);
+    bytes += entry.bytes - (old == null ? 0 : old.bytes);
+    evict();
+  }
+
+  /**
+   * Replaces an entry that is out of date with one rebuilt for the current
+   * flags, unless another reader replaced it first. Counts an invalidation
+   * if the rebuilt entry's videos changed. The rebuilt entry may be larger,
+   * so others are evicted to make room as by {@link #put}, and it is dropped
+   * if it is larger than the whole byte budget.
+   */
+  synchronized void replace(String key, Entry stale, Entry fresh, boolean invalidated) {
+    if (invalidated) {
+      invalidations++;
+    }
+    if (entries.get(key) != stale) {
+      return;
+    }
+    if (fresh.bytes > maxBytes) {
+      entries.remove(key);
+      bytes -= stale.bytes;
+      evictions++;
+      return;
+    }
+    entries.put(key, fresh);
+    bytes += fresh.bytes - stale.bytes;
+    evict();
+  }
+
+  /** Evicts the least recently used entries until the cache is within its limits. */
+  private void evict() {
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (entries.size() > maxEntries || bytes > maxBytes) {
+      bytes -= eldest.next().bytes;
+      eldest.remove();
+      evictions++;
+    }
+  }
+
+  /** Drops every entry, as when videos are added or removed. */
+  synchronized void clear() {
+    invalidations += entries.size();
+    entries.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Estimates the bytes an entry for the key with the given number of
+   * results takes. The playable videos are counted only if the cache is
+   * their only holder, as with stores that create a video on every read.
+   */
+  static long estimate(String key, int results, List<Video> playable, boolean ownsVideos) {
+    long bytes = ENTRY_BYTES + 2L * key.length() + (long) results * RESULT_BYTES;
+    if (ownsVideos) {
+      for (Video video : playable) {
+        bytes += VIDEO_BYTES + 2L * (video.getTitle().length() + video.getVideoId().length());
+      }
+    }
+    return bytes;
+  }
+
+  synchronized Stats stats() {
+    return new Stats(hits, misses, evictions, invalidations, entries.size(), bytes);
+  }
+
+  /** The results of one query, as of one version of the flags. */
+  static final class Entry {
+    final int[] ordinals;
+    final int[] sortedOrdinals;
+    final FlagSet flags;
+    final List<Video> playable;
+    final long bytes;
+
+    Entry(int[] ordinals, int[] sortedOrdinals, FlagSet flags, List<Video> playable,
+        long bytes) {
+      this.ordinals = ordinals;
+      this.sortedOrdinals = sortedOrdinals;
+      this.flags = flags;
+      this.playable = playable;
+      this.bytes = bytes;
+    }
+  }
+
+  /** Counters for a cache, read at one moment. */
+  static final class Stats {
+    final long hits;
+    final long misses;
+    final long evictions;
+    final long invalidations;
+    final int entries;
+    final long bytes;
+
+    Stats(long hits, long misses, long evictions, long invalidations, int entries, long bytes) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.invalidations = invalidations;
+      this.entries = entries;
+      this.bytes = bytes;
+    }
+
+    @Override
+    public String toString() {
+      long lookups = hits + misses;
+      return String.format("search cache: %d hits, %d misses (%.1f%% hit rate), %d evictions,"
+              + " %d invalidations, %d entries, %.1f MB",
+          hits, misses, lookups == 0 ? 0 : hits * 100.0 / lookups, evictions, invalidations,
+          entries, bytes / 1e6);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+package com.google;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports how much memory each kind of {@link VideoStore} retains for a
+ * generated catalog of a given size: the heap in use after a full
+ * collection, with and without the store, and the direct buffer memory it
+ * holds outside the heap.
+ *
+ * <p>Run it with a heap large enough for the biggest store, e.g.
+ * {@code java -Xmx4g -cp target/classes com.google.StoreMemoryReport 1000000}.
+ * Measurements are only as exact as {@link System#gc()} is thorough, so run
+ * one kind per JVM for the most reliable figures.
+ */
+public class StoreMemoryReport {
+
+  private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+  /**
+   * Returns the heap and direct bytes the store retains once filled with
+   * the first {@code videos} videos.
+   */
+  static long[] retainedBytes(VideoStore.Kind kind, CatalogGenerator generator, int videos) {
+    long heapBefore = usedHeap();
+    long directBefore = usedDirect();
+    VideoStore store = kind.create();
+    for (int line = 0; line < videos; line++) {
+      store.add(generator.video(line));
+    }
+    long heapAfter = usedHeap();
+    long directAfter = usedDirect();
+    Reference.reachabilityFence(store);
+    return new long[] {heapAfter - heapBefore, directAfter - directBefore};
+  }
+
+  static long usedHeap() {
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+    }
+    return used;
+  }
+
+  private static long usedDirect() {
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+      if (pool.getName().equals("direct")) {
+        return pool.getMemoryUsed();
+      }
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("Usage: StoreMemoryReport <videos> [HEAP|COLUMNAR|OFF_HEAP ...]");
+      return;
+    }
+    int videos = Integer.parseInt(args[0]);
+    List<VideoStore.Kind> kinds = new ArrayList<>();
+    for (int i = 1; i < args.length; i++) {
+      kinds.add(VideoStore.Kind.parse(args[i]));
+    }
+    if (kinds.isEmpty()) {
+      kinds.addAll(List.of(VideoStore.Kind.values()));
+    }
+    CatalogGenerator generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    generator.video(0);
+    System.out.printf("%d videos%n%-10s %12s %12s %12s%n", videos, "store", "heap MB",
+        "direct MB", "bytes/video");
+    for (VideoStore.Kind kind : kinds) {
+      long[] bytes = retainedBytes(kind, generator, videos);
+      System.out.printf("%-10s %12.1f %12.1f %12.1f%n", kind, bytes[0] / 1e6, bytes[1] / 1e6,
+          (double) (bytes[0] + bytes[1]) / videos);
+    }
+  }
+}
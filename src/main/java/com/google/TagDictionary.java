@@ -0,0 +1,104 @@
+package com.google;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct tag a small integer id, so that each tag string is
+ * held once however many videos carry it, and videos and indexes can refer
+ * to tags by id.
+ *
+ * <p>Ids are dense, starting at 0, and never reused: a tag keeps its id even
+ * when no video carries it any more. Lookups are lock-free; adding a new tag
+ * takes a lock.
+ */
+final class TagDictionary {
+
+  private static final TagDictionary GLOBAL = new TagDictionary();
+
+  private final Map<String, Integer> ids;
+  private volatile String[] tags;
+  private int size;
+
+  TagDictionary() {
+    this.ids = new ConcurrentHashMap<>();
+    this.tags = new String[64];
+    this.size = 0;
+  }
+
+  /** Returns the dictionary shared by every video. */
+  static TagDictionary global() {
+    return GLOBAL;
+  }
+
+  /** Returns the id of the tag, giving it one if it has none yet. */
+  int intern(String tag) {
+    Integer id = ids.get(tag);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(tag);
+      if (id == null) {
+        String[] current = tags;
+        if (size == current.length) {
+          current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = tag;
+        tags = current;
+        id = size++;
+        ids.put(tag, id);
+      }
+      return id;
+    }
+  }
+
+  /** Returns the ids of the tags, in order. */
+  int[] internAll(Collection<String> tagList) {
+    int[] result = new int[tagList.size()];
+    int i = 0;
+    for (String tag : tagList) {
+      result[i++] = intern(tag);
+    }
+    return result;
+  }
+
+  /** Returns the id of the tag, or -1 if no video has ever carried it. */
+  int find(String tag) {
+    Integer id = ids.get(tag);
+    return id == null ? -1 : id;
+  }
+
+  /** Returns the tag with the given id. */
+  String tag(int id) {
+    return tags[id];
+  }
+
+  /** Returns a read-only list of the tags with the given ids. */
+  List<String> tags(int[] tagIds) {
+    return new TagList(tagIds);
+  }
+
+  private final class TagList extends AbstractList<String> implements RandomAccess {
+    private final int[] tagIds;
+
+    TagList(int[] tagIds) {
+      this.tagIds = tagIds;
+    }
+
+    @Override
+    public String get(int index) {
+      return tag(tagIds[index]);
+    }
+
+    @Override
+    public int size() {
+      return tagIds.length;
+    }
+  }
+}
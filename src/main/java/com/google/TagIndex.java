@@ -0,0 +1,121 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An inverted index from tag to the sorted posting list of videos carrying
+ * that tag. Tags are looked up by their {@link TagDictionary} id, and
+ * multi-tag queries are answered by combining the posting lists as bitsets.
+ */
+class TagIndex {
+
+  private final TagDictionary dictionary;
+  private PostingList[] postingsById;
+
+  TagIndex() {
+    this.dictionary = TagDictionary.global();
+    this.postingsById = new PostingList[0];
+  }
+
+  void add(int ordinal, Video video) {
+    for (int tagId : video.getTagIds()) {
+      if (tagId >= postingsById.length) {
+        postingsById = Arrays.copyOf(postingsById,
+            Math.max(tagId + 1, postingsById.length * 2));
+      }
+      if (postingsById[tagId] == null) {
+        postingsById[tagId] = new PostingList();
+      }
+      postingsById[tagId].add(ordinal);
+    }
+  }
+
+  void remove(int ordinal, Video video) {
+    for (int tagId : video.getTagIds()) {
+      PostingList postings = postingsById[tagId];
+      if (postings != null) {
+        postings.remove(ordinal);
+        if (postings.isEmpty()) {
+          postingsById[tagId] = null;
+        }
+      }
+    }
+  }
+
+  /** Returns the videos carrying the tag. The list must not be modified. */
+  PostingList withTag(String tag) {
+    PostingList postings = postings(tag);
+    return postings == null ? new PostingList() : postings;
+  }
+
+  /** Returns every tag in the index. */
+  Collection<String> keys() {
+    List<String> keys = new ArrayList<>();
+    for (int tagId = 0; tagId < postingsById.length; tagId++) {
+      if (postingsById[tagId] != null) {
+        keys.add(dictionary.tag(tagId));
+      }
+    }
+    return keys;
+  }
+
+  /** Returns the videos carrying the tag, or null if there are none. */
+  PostingList postings(String tag) {
+    int tagId = dictionary.find(tag);
+    return tagId < 0 || tagId >= postingsById.length ? null : postingsById[tagId];
+  }
+
+  /** Returns the videos carrying every one of the tags. */
+  PostingList withAllTags(Collection<String> queryTags) {
+    List<PostingList> lists = new ArrayList<>(queryTags.size());
+    for (String tag : queryTags) {
+      PostingList postings = postings(tag);
+      if (postings == null) {
+        return new PostingList();
+      }
+      lists.add(postings);
+    }
+    if (lists.isEmpty()) {
+      return new PostingList();
+    }
+    if (lists.size() == 1) {
+      return lists.get(0);
+    }
+    lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+    BitSet result = new BitSet();
+    setAll(result, lists.get(0));
+    for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+      BitSet next = new BitSet();
+      PostingList postings = lists.get(i);
+      for (int j = 0; j < postings.size(); j++) {
+        if (result.get(postings.get(j))) {
+          next.set(postings.get(j));
+        }
+      }
+      result = next;
+    }
+    return new PostingList(result.stream().toArray());
+  }
+
+  /** Returns the videos carrying at least one of the tags. */
+  PostingList withAnyTag(Collection<String> queryTags) {
+    BitSet result = new BitSet();
+    for (String tag : queryTags) {
+      PostingList postings = postings(tag);
+      if (postings != null) {
+        setAll(result, postings);
+      }
+    }
+    return new PostingList(result.stream().toArray());
+  }
+
+  private static void setAll(BitSet bits, PostingList postings) {
+    for (int i = 0; i < postings.size(); i++) {
+      bits.set(postings.get(i));
+    }
+  }
+}
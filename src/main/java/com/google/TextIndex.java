@@ -0,0 +1,532 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A full-text index over the words of video titles and tags that ranks
+ * matches by BM25. Every posting records how often its word occurs in the
+ * video and where, so a query can weigh repeated words, favour short
+ * titles and require quoted phrases to appear word for word.
+ *
+ * <p>The index is a list of segments, each covering some of the library's
+ * ordinals. A segment's postings never change once written. Adding a video
+ * writes a segment of its own; removing one sets a tombstone for it in the
+ * segment that has it, under the library's write lock like every other
+ * change. Whenever the newest segment has grown to half the size of the
+ * one before, the two are replaced in the list by a merged segment that
+ * indexes their live videos again, so there are O(log n) segments and each
+ * video is reindexed O(log n) times, never the whole catalog at once. A
+ * segment that is mostly tombstones is replaced by a rewrite of its own.
+ *
+ * <p>Flagged videos are excluded the way deleted ones are: a search is
+ * given the library's flags and skips their postings before scoring, so a
+ * flagged video never takes a place among the results, and flagging does
+ * not change the index. As with deletions, the collection statistics BM25
+ * uses still count them.
+ *
+ * <p>Nothing is built until the first search, and until then changes are
+ * ignored. Callers must not update the index concurrently with any other
+ * call. Searches may run concurrently; the first one builds the index.
+ */
+class TextIndex {
+
+  /** How quickly the score of a word saturates as it repeats. */
+  static final double K1 = 1.2;
+  /** How much a video's length counts against its score, from 0 to 1. */
+  static final double B = 0.75;
+
+  private final List<Video> videosByOrdinal;
+  private volatile List<Segment> segments;
+
+  TextIndex(List<Video> videosByOrdinal) {
+    this.videosByOrdinal = videosByOrdinal;
+  }
+
+  /** Records that the video with the given ordinal was added or replaced. */
+  void added(int ordinal) {
+    List<Segment> current = segments;
+    if (current == null) {
+      return;
+    }
+    removed(ordinal);
+    current.add(new Segment(videosByOrdinal, new int[] {ordinal}));
+    while (current.size() >= 2) {
+      Segment last = current.get(current.size() - 1);
+      Segment previous = current.get(current.size() - 2);
+      if (previous.size() > 2 * last.size()) {
+        break;
+      }
+      current.remove(current.size() - 1);
+      current.set(current.size() - 1, merge(previous, last));
+    }
+  }
+
+  /** Records that the video with the given ordinal is being removed or moved. */
+  void removed(int ordinal) {
+    List<Segment> current = segments;
+    if (current == null) {
+      return;
+    }
+    for (int i = 0; i < current.size(); i++) {
+      Segment segment = current.get(i);
+      if (segment.delete(ordinal)) {
+        if (segment.deletedCount * 2 > segment.size()) {
+          Segment rewritten = merge(segment, null);
+          if (rewritten.size() == 0) {
+            current.remove(i);
+          } else {
+            current.set(i, rewritten);
+          }
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the ordinals of up to {@code limit} of the live videos that
+   * match the query, best first. A query is words, and phrases in double
+   * quotes: a video matches if it has at least one of the words and every
+   * phrase, and is scored by BM25 over all of them. Equal scores are
+   * ordered by {@code rank}, lowest first.
+   */
+  int[] search(String query, IntPredicate live, IntUnaryOperator rank, int limit) {
+    Query parsed = Query.parse(query);
+    List<Segment> current = segments();
+    if (parsed.words.isEmpty() || limit <= 0) {
+      return new int[0];
+    }
+    long documents = 0;
+    long length = 0;
+    double[] idf = new double[parsed.words.size()];
+    for (Segment segment : current) {
+      documents += segment.size();
+      length += segment.totalLength;
+      for (int w = 0; w < idf.length; w++) {
+        idf[w] += segment.frequency(parsed.words.get(w));
+      }
+    }
+    for (int w = 0; w < idf.length; w++) {
+      idf[w] = Math.log(1 + (documents - idf[w] + 0.5) / (idf[w] + 0.5));
+    }
+    double averageLength = documents == 0 ? 1 : (double) length / documents;
+    TopHits best = new TopHits(limit, rank);
+    for (Segment segment : current) {
+      segment.search(parsed, idf, averageLength, live, best);
+    }
+    return best.ordinals();
+  }
+
+  /** Returns how many segments the index has, building it if need be. */
+  int segmentCount() {
+    return segments().size();
+  }
+
+  private List<Segment> segments() {
+    List<Segment> current = segments;
+    return current != null ? current : build();
+  }
+
+  private synchronized List<Segment> build() {
+    if (segments == null) {
+      int[] ordinals = new int[videosByOrdinal.size()];
+      for (int i = 0; i < ordinals.length; i++) {
+        ordinals[i] = i;
+      }
+      List<Segment> built = new ArrayList<>();
+      if (ordinals.length > 0) {
+        built.add(new Segment(videosByOrdinal, ordinals));
+      }
+      segments = built;
+    }
+    return segments;
+  }
+
+  /** Indexes the live videos of one or two segments again, as one segment. */
+  private Segment merge(Segment a, Segment b) {
+    int[] ordinals = new int[a.size() + (b == null ? 0 : b.size())];
+    int count = a.liveOrdinals(ordinals, 0);
+    if (b != null) {
+      count = b.liveOrdinals(ordinals, count);
+    }
+    ordinals = Arrays.copyOf(ordinals, count);
+    Arrays.sort(ordinals);
+    return new Segment(videosByOrdinal, ordinals);
+  }
+
+  /** The best matches found so far, in a heap with the worst on top. */
+  private static final class TopHits {
+    private static final Comparator<Hit> WORST_FIRST =
+        Comparator.<Hit>comparingDouble(hit -> hit.score)
+            .thenComparing(Comparator.<Hit>comparingInt(hit -> hit.rank).reversed());
+
+    private final int limit;
+    private final IntUnaryOperator rank;
+    private final PriorityQueue<Hit> heap;
+
+    TopHits(int limit, IntUnaryOperator rank) {
+      this.limit = limit;
+      this.rank = rank;
+      this.heap = new PriorityQueue<>(WORST_FIRST);
+    }
+
+    /** Returns the score a match needs to have a chance of being kept. */
+    double threshold() {
+      return heap.size() < limit ? Double.NEGATIVE_INFINITY : heap.peek().score;
+    }
+
+    void offer(int ordinal, double score) {
+      if (score < threshold()) {
+        return;
+      }
+      Hit hit = new Hit(ordinal, score, rank.applyAsInt(ordinal));
+      if (heap.size() < limit) {
+        heap.add(hit);
+      } else if (WORST_FIRST.compare(hit, heap.peek()) > 0) {
+        heap.poll();
+        heap.add(hit);
+      }
+    }
+
+    /** Returns the ordinals kept, best first. */
+    int[] ordinals() {
+      int[] result = new int[heap.size()];
+      for (int i = result.length - 1; i >= 0; i--) {
+        result[i] = heap.poll().ordinal;
+      }
+      return result;
+    }
+  }
+
+  private static final class Hit {
+    final int ordinal;
+    final double score;
+    final int rank;
+
+    Hit(int ordinal, double score, int rank) {
+      this.ordinal = ordinal;
+      this.score = score;
+      this.rank = rank;
+    }
+  }
+
+  /** The distinct words of a query and its phrases, as indexes into the words. */
+  private static final class Query {
+    final List<String> words = new ArrayList<>();
+    final List<int[]> phrases = new ArrayList<>();
+
+    static Query parse(String query) {
+      Query parsed = new Query();
+      String[] parts = query.toLowerCase().split("\"", -1);
+      for (int i = 0; i < parts.length; i++) {
+        List<String> partWords = TitleTrie.wordsOf(parts[i]);
+        int[] phrase = new int[partWords.size()];
+        for (int j = 0; j < phrase.length; j++) {
+          int word = parsed.words.indexOf(partWords.get(j));
+          if (word < 0) {
+            word = parsed.words.size();
+            parsed.words.add(partWords.get(j));
+          }
+          phrase[j] = word;
+        }
+        if (i % 2 == 1 && phrase.length > 1) {
+          parsed.phrases.add(phrase);
+        }
+      }
+      return parsed;
+    }
+  }
+
+  /**
+   * The postings of some videos. The segment numbers its videos from 0 in
+   * order of ordinal: video {@code d} has ordinal {@code ordinals[d]} and
+   * {@code lengths[d]} words. Word {@code t} of the sorted {@code terms}
+   * occurs in the videos {@code docs[termStart[t]]} up to
+   * {@code docs[termStart[t + 1]]}, in ascending order, {@code freqs[p]}
+   * times in the video of posting {@code p}. Its positions follow each
+   * other in {@code positions} from {@code positionStart[t]}, those of
+   * each posting ascending.
+   */
+  private static final class Segment {
+    final String[] terms;
+    final int[] termStart;
+    final int[] positionStart;
+    final int[] docs;
+    final int[] freqs;
+    final int[] positions;
+    final int[] ordinals;
+    final int[] lengths;
+    final long totalLength;
+    final BitSet deleted;
+    int deletedCount;
+
+    /** Indexes the videos with the given ordinals, which must be ascending. */
+    Segment(List<Video> videosByOrdinal, int[] ordinals) {
+      this.ordinals = ordinals;
+      this.lengths = new int[ordinals.length];
+      Map<String, TermPostings> postings = new HashMap<>();
+      long total = 0;
+      for (int doc = 0; doc < ordinals.length; doc++) {
+        List<String> words = new ArrayList<>();
+        List<Integer> wordPositions = new ArrayList<>();
+        Video video = videosByOrdinal.get(ordinals[doc]);
+        int position = tokenize(video.getTitle(), 0, words, wordPositions);
+        for (String tag : video.getTags()) {
+          position = tokenize(tag, position + 1, words, wordPositions);
+        }
+        lengths[doc] = words.size();
+        total += words.size();
+        Map<String, List<Integer>> byWord = new HashMap<>();
+        for (int i = 0; i < words.size(); i++) {
+          byWord.computeIfAbsent(words.get(i), w -> new ArrayList<>()).add(wordPositions.get(i));
+        }
+        for (Map.Entry<String, List<Integer>> entry : byWord.entrySet()) {
+          postings.computeIfAbsent(entry.getKey(), w -> new TermPostings())
+              .add(doc, entry.getValue());
+        }
+      }
+      this.totalLength = total;
+      this.terms = postings.keySet().toArray(new String[0]);
+      Arrays.sort(terms);
+      this.termStart = new int[terms.length + 1];
+      this.positionStart = new int[terms.length + 1];
+      for (int t = 0; t < terms.length; t++) {
+        TermPostings term = postings.get(terms[t]);
+        termStart[t + 1] = termStart[t] + term.count;
+        positionStart[t + 1] = positionStart[t] + term.positionCount;
+      }
+      this.docs = new int[termStart[terms.length]];
+      this.freqs = new int[docs.length];
+      this.positions = new int[positionStart[terms.length]];
+      for (int t = 0; t < terms.length; t++) {
+        TermPostings term = postings.remove(terms[t]);
+        System.arraycopy(term.docs, 0, docs, termStart[t], term.count);
+        System.arraycopy(term.freqs, 0, freqs, termStart[t], term.count);
+        System.arraycopy(term.positions, 0, positions, positionStart[t], term.positionCount);
+      }
+      this.deleted = new BitSet();
+    }
+
+    /** Adds the words of the text from the given position, returning the next position. */
+    private static int tokenize(String text, int position, List<String> words,
+        List<Integer> wordPositions) {
+      for (String word : TitleTrie.wordsOf(text.toLowerCase())) {
+        words.add(word);
+        wordPositions.add(position++);
+      }
+      return position;
+    }
+
+    int size() {
+      return ordinals.length;
+    }
+
+    /** Marks the video deleted, returning whether the segment had it live. */
+    boolean delete(int ordinal) {
+      int doc = Arrays.binarySearch(ordinals, ordinal);
+      if (doc < 0 || deleted.get(doc)) {
+        return false;
+      }
+      deleted.set(doc);
+      deletedCount++;
+      return true;
+    }
+
+    /** Copies the ordinals that are not deleted into the array, returning the next index. */
+    int liveOrdinals(int[] into, int at) {
+      for (int doc = 0; doc < ordinals.length; doc++) {
+        if (!deleted.get(doc)) {
+          into[at++] = ordinals[doc];
+        }
+      }
+      return at;
+    }
+
+    /** Returns how many videos in the segment, deleted or not, have the word. */
+    int frequency(String word) {
+      int term = Arrays.binarySearch(terms, word);
+      return term < 0 ? 0 : termStart[term + 1] - termStart[term];
+    }
+
+    /**
+     * Offers every live video in the segment that matches the query,
+     * walking the postings of its words together in order of video.
+     *
+     * <p>Without phrases, words are skipped by MaxScore: once the words that
+     * add least to a score could not lift a video above the worst of the
+     * best found so far even together, videos having only those words are
+     * not visited, and their postings are only searched for the videos the
+     * other words lead to.
+     */
+    void search(Query query, double[] idf, double averageLength, IntPredicate live,
+        TopHits best) {
+      int words = query.words.size();
+      int[] at = new int[words];
+      int[] end = new int[words];
+      int[] positionAt = new int[words];
+      for (int w = 0; w < words; w++) {
+        int term = Arrays.binarySearch(terms, query.words.get(w));
+        if (term >= 0) {
+          at[w] = termStart[term];
+          end[w] = termStart[term + 1];
+          positionAt[w] = positionStart[term];
+        }
+      }
+      for (int[] phrase : query.phrases) {
+        for (int w : phrase) {
+          if (at[w] == end[w]) {
+            return;
+          }
+        }
+      }
+      // The words by the most they can add to a score, least first, and
+      // the most the first i of them can add together.
+      int[] order = new int[words];
+      for (int i = 0; i < words; i++) {
+        int w = i;
+        int j = i;
+        for (; j > 0 && idf[order[j - 1]] > idf[w]; j--) {
+          order[j] = order[j - 1];
+        }
+        order[j] = w;
+      }
+      double[] upTo = new double[words + 1];
+      for (int i = 0; i < words; i++) {
+        upTo[i + 1] = upTo[i] + idf[order[i]] * (K1 + 1);
+      }
+      double[] parts = new double[words];
+      boolean prune = query.phrases.isEmpty();
+      int essential = 0;
+      while (true) {
+        if (prune) {
+          while (essential < words && upTo[essential + 1] < best.threshold()) {
+            essential++;
+          }
+        }
+        int doc = Integer.MAX_VALUE;
+        for (int i = essential; i < words; i++) {
+          int w = order[i];
+          if (at[w] < end[w]) {
+            doc = Math.min(doc, docs[at[w]]);
+          }
+        }
+        if (doc == Integer.MAX_VALUE) {
+          return;
+        }
+        if (!deleted.get(doc) && live.test(ordinals[doc])
+            && hasPhrases(query, doc, at, end, positionAt)) {
+          double norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+          double score = 0;
+          Arrays.fill(parts, 0);
+          for (int i = essential; i < words; i++) {
+            int w = order[i];
+            if (at[w] < end[w] && docs[at[w]] == doc) {
+              parts[i] = idf[w] * freqs[at[w]] * (K1 + 1) / (freqs[at[w]] + norm);
+              score += parts[i];
+            }
+          }
+          int i = essential - 1;
+          for (; i >= 0 && score + upTo[i + 1] >= best.threshold(); i--) {
+            int w = order[i];
+            at[w] = seek(at[w], end[w], doc);
+            if (at[w] < end[w] && docs[at[w]] == doc) {
+              parts[i] = idf[w] * freqs[at[w]] * (K1 + 1) / (freqs[at[w]] + norm);
+              score += parts[i];
+            }
+          }
+          if (i < 0) {
+            // Added up again in one order, so that a score does not depend on
+            // which words were skipped and equal scores stay equal.
+            score = 0;
+            for (double part : parts) {
+              score += part;
+            }
+            best.offer(ordinals[doc], score);
+          }
+        }
+        for (int i = essential; i < words; i++) {
+          int w = order[i];
+          if (at[w] < end[w] && docs[at[w]] == doc) {
+            positionAt[w] += freqs[at[w]];
+            at[w]++;
+          }
+        }
+      }
+    }
+
+    /** Returns the first posting from {@code from} whose video is at least {@code doc}. */
+    private int seek(int from, int to, int doc) {
+      int low = from;
+      int high = to;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (docs[mid] < doc) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /** Returns whether every phrase of the query occurs in the video, word after word. */
+    private boolean hasPhrases(Query query, int doc, int[] at, int[] end, int[] positionAt) {
+      for (int[] phrase : query.phrases) {
+        for (int w : phrase) {
+          if (at[w] == end[w] || docs[at[w]] != doc) {
+            return false;
+          }
+        }
+        boolean found = false;
+        int first = phrase[0];
+        for (int p = positionAt[first]; p < positionAt[first] + freqs[at[first]] && !found;
+            p++) {
+          found = true;
+          for (int j = 1; j < phrase.length && found; j++) {
+            int w = phrase[j];
+            found = Arrays.binarySearch(positions, positionAt[w], positionAt[w] + freqs[at[w]],
+                positions[p] + j) >= 0;
+          }
+        }
+        if (!found) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The postings of one word, gathered while a segment is built. */
+  private static final class TermPostings {
+    int[] docs = new int[2];
+    int[] freqs = new int[2];
+    int[] positions = new int[2];
+    int count;
+    int positionCount;
+
+    void add(int doc, List<Integer> at) {
+      if (count == docs.length) {
+        docs = Arrays.copyOf(docs, count * 2);
+        freqs = Arrays.copyOf(freqs, count * 2);
+      }
+      docs[count] = doc;
+      freqs[count++] = at.size();
+      if (positionCount + at.size() > positions.length) {
+        positions = Arrays.copyOf(positions, Math.max(positions.length * 2,
+            positionCount + at.size()));
+      }
+      for (int position : at) {
+        positions[positionCount++] = position;
+      }
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A trigram index over lowercased video titles. A title can only contain a
+ * search term if it contains every trigram of that term, so intersecting the
+ * trigram posting lists gives a small candidate set that is then verified
+ * with {@link String#contains}.
+ */
+class TitleIndex {
+
+  static final int GRAM_LENGTH = 3;
+
+  private final Map<String, PostingList> grams;
+
+  TitleIndex() {
+    this.grams = new HashMap<>();
+  }
+
+  void add(int ordinal, String title) {
+    for (String gram : gramsOf(title.toLowerCase())) {
+      grams.computeIfAbsent(gram, g -> new PostingList()).add(ordinal);
+    }
+  }
+
+  void remove(int ordinal, String title) {
+    for (String gram : gramsOf(title.toLowerCase())) {
+      PostingList postings = grams.get(gram);
+      if (postings != null) {
+        postings.remove(ordinal);
+        if (postings.isEmpty()) {
+          grams.remove(gram);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the ordinals of titles that may contain the given lowercased
+   * term. Returns null when the term is shorter than a trigram and the index
+   * cannot narrow the search.
+   */
+  PostingList candidates(String lowerTerm) {
+    if (lowerTerm.length() < GRAM_LENGTH) {
+      return null;
+    }
+    List<PostingList> lists = new ArrayList<>();
+    for (String gram : gramsOf(lowerTerm)) {
+      PostingList postings = postings(gram);
+      if (postings == null) {
+        return new PostingList();
+      }
+      lists.add(postings);
+    }
+    lists.sort(Comparator.comparingInt(PostingList::size));
+    PostingList result = lists.get(0);
+    for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+      result = PostingList.intersect(result, lists.get(i));
+    }
+    return result;
+  }
+
+  /** Returns every trigram in the index. */
+  Collection<String> keys() {
+    return grams.keySet();
+  }
+
+  /** Returns the titles containing the trigram, or null if there are none. */
+  PostingList postings(String gram) {
+    return grams.get(gram);
+  }
+
+  static Set<String> gramsOf(String text) {
+    Set<String> result = new HashSet<>();
+    for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+      result.add(text.substring(i, i + GRAM_LENGTH));
+    }
+    return result;
+  }
+}
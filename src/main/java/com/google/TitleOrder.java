@@ -0,0 +1,317 @@
+package com.google;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Keeps the library's video ordinals sorted by title, with the video id
+ * breaking ties. The order is built with a single sort the first time it
+ * is needed and afterwards updated in place as videos are added, removed
+ * or moved to a new ordinal.
+ *
+ * <p>Alongside the order it keeps each ordinal's rank, so a set of search
+ * candidates can be put in title order by sorting plain ints rather than
+ * comparing titles. The ranks also let the first few matches of a search
+ * be {@linkplain #select selected} without putting every match in order.
+ *
+ * <p>Callers must not update the order concurrently with any other call.
+ * Reads may run concurrently; the first one builds the order.
+ *
+ * <p>An order read from a snapshot can be supplied up front, in which case
+ * building it copies that order rather than sorting.
+ */
+class TitleOrder {
+
+  private static final Comparator<Video> TITLE_ORDER =
+      Comparator.comparing(Video::getTitle).thenComparing(Video::getVideoId);
+
+  private final List<Video> videosByOrdinal;
+  private int[] order;
+  private int[] ranks;
+  private IntBuffer presorted;
+  private volatile boolean built;
+
+  TitleOrder(List<Video> videosByOrdinal) {
+    this(videosByOrdinal, null);
+  }
+
+  /**
+   * Creates an order whose first build copies {@code presorted}, which must
+   * hold every ordinal of the list, already in title order.
+   */
+  TitleOrder(List<Video> videosByOrdinal, IntBuffer presorted) {
+    this.videosByOrdinal = videosByOrdinal;
+    this.order = new int[0];
+    this.ranks = new int[0];
+    this.presorted = presorted;
+    this.built = false;
+  }
+
+  /** Records that a video was appended with the given ordinal. */
+  void added(int ordinal) {
+    if (!built) {
+      return;
+    }
+    int size = videosByOrdinal.size() - 1;
+    ensureCapacity(size + 1);
+    Video video = videosByOrdinal.get(ordinal);
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (TITLE_ORDER.compare(videosByOrdinal.get(order[mid]), video) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    System.arraycopy(order, low, order, low + 1, size - low);
+    order[low] = ordinal;
+    renumber(low, size + 1);
+  }
+
+  /**
+   * Records that the video with the given ordinal is being removed. Must be
+   * called while the video is still in the library.
+   */
+  void removed(int ordinal) {
+    if (!built) {
+      return;
+    }
+    int size = videosByOrdinal.size();
+    int rank = ranks[ordinal];
+    System.arraycopy(order, rank + 1, order, rank, size - rank - 1);
+    renumber(rank, size - 1);
+  }
+
+  /** Records that the video with ordinal {@code from} now has ordinal {@code to}. */
+  void moved(int from, int to) {
+    if (!built) {
+      return;
+    }
+    int rank = ranks[from];
+    order[rank] = to;
+    ranks[to] = rank;
+  }
+
+  /** Returns the ordinal of the video at the given position in title order. */
+  int ordinalAt(int position) {
+    ensureBuilt();
+    return order[position];
+  }
+
+  /** Returns the position of the video with the given ordinal in title order. */
+  int rankOf(int ordinal) {
+    ensureBuilt();
+    return ranks[ordinal];
+  }
+
+  /**
+   * Returns, in title order, up to {@code count} of the ordinals at
+   * positions from {@code from} on that are among the candidates, or any
+   * ordinal if they are null, and that the filter accepts, if there is one,
+   * passing over the first {@code skip} of them.
+   *
+   * <p>When the matches are dense, walking the order from {@code from}
+   * finds them soonest and stops as soon as it has enough. When they are
+   * sparse, so a walk would pass many positions for each one, the best
+   * {@code skip + count} candidates by rank are kept in a bounded heap
+   * instead, at a cost of O(C log K) for C candidates and K kept. Either
+   * way, only the ordinals returned and at most K ranks are held.
+   */
+  int[] select(PostingList candidates, IntPredicate filter, int from, int skip, int count) {
+    ensureBuilt();
+    if (count <= 0) {
+      return new int[0];
+    }
+    int size = videosByOrdinal.size();
+    from = Math.max(from, 0);
+    int kept = (int) Math.min((long) skip + count, Integer.MAX_VALUE);
+    if (candidates != null
+        && heapCost(candidates.size(), kept) < walkCost(candidates.size(), kept, size - from)) {
+      return selectByRank(candidates, filter, from, skip, kept);
+    }
+    int[] result = new int[Math.min(count, 1024)];
+    int found = 0;
+    for (int position = from; position < size && found < count; position++) {
+      int ordinal = order[position];
+      if (candidates != null && !candidates.contains(ordinal)
+          || filter != null && !filter.test(ordinal)) {
+        continue;
+      }
+      if (skip > 0) {
+        skip--;
+        continue;
+      }
+      if (found == result.length) {
+        result = Arrays.copyOf(result, (int) Math.min((long) found * 2, count));
+      }
+      result[found++] = ordinal;
+    }
+    return Arrays.copyOf(result, found);
+  }
+
+  /** Estimates the cost of keeping the best {@code kept} of the candidates in a heap. */
+  private static double heapCost(int candidates, int kept) {
+    return (double) candidates * log2(kept + 1L);
+  }
+
+  /**
+   * Estimates the cost of walking the order until {@code kept} candidates
+   * are found, assuming they are spread evenly over the remaining positions,
+   * each of which takes a binary search of the candidates.
+   */
+  private double walkCost(int candidates, int kept, int remaining) {
+    double positions = Math.min(remaining, (double) kept * videosByOrdinal.size() / candidates);
+    return positions * log2(candidates + 1L);
+  }
+
+  private static double log2(long n) {
+    return 64 - Long.numberOfLeadingZeros(n);
+  }
+
+  private int[] selectByRank(PostingList candidates, IntPredicate filter, int from, int skip,
+      int kept) {
+    int[] heap = new int[Math.min(Math.min(kept, candidates.size()), 1024)];
+    int heapSize = 0;
+    for (int i = 0; i < candidates.size(); i++) {
+      int ordinal = candidates.get(i);
+      int rank = ranks[ordinal];
+      if (rank < from || heapSize == kept && rank >= heap[0]
+          || filter != null && !filter.test(ordinal)) {
+        continue;
+      }
+      if (heapSize < kept) {
+        if (heapSize == heap.length) {
+          heap = Arrays.copyOf(heap, (int) Math.min((long) heapSize * 2, kept));
+        }
+        siftUp(heap, heapSize++, rank);
+      } else {
+        siftDown(heap, heapSize, rank);
+      }
+    }
+    Arrays.sort(heap, 0, heapSize);
+    int[] result = new int[Math.max(heapSize - skip, 0)];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = order[heap[skip + i]];
+    }
+    return result;
+  }
+
+  /** Adds a rank at the end of a max-heap and moves it up to its place. */
+  private static void siftUp(int[] heap, int at, int rank) {
+    while (at > 0) {
+      int parent = (at - 1) >>> 1;
+      if (heap[parent] >= rank) {
+        break;
+      }
+      heap[at] = heap[parent];
+      at = parent;
+    }
+    heap[at] = rank;
+  }
+
+  /** Replaces the largest rank of a max-heap and moves the new one down to its place. */
+  private static void siftDown(int[] heap, int size, int rank) {
+    int at = 0;
+    while (true) {
+      int child = 2 * at + 1;
+      if (child >= size) {
+        break;
+      }
+      if (child + 1 < size && heap[child + 1] > heap[child]) {
+        child++;
+      }
+      if (heap[child] <= rank) {
+        break;
+      }
+      heap[at] = heap[child];
+      at = child;
+    }
+    heap[at] = rank;
+  }
+
+  /**
+   * Returns the given ordinals in title order. Small candidate sets are
+   * sorted by rank; large ones are found by walking the whole order.
+   */
+  int[] sort(PostingList ordinals) {
+    ensureBuilt();
+    int count = ordinals.size();
+    int[] result = new int[count];
+    int size = videosByOrdinal.size();
+    if ((long) count * (32 - Integer.numberOfLeadingZeros(count)) < size) {
+      for (int i = 0; i < count; i++) {
+        result[i] = ranks[ordinals.get(i)];
+      }
+      Arrays.sort(result);
+      for (int i = 0; i < count; i++) {
+        result[i] = order[result[i]];
+      }
+      return result;
+    }
+    BitSet members = new BitSet(size);
+    for (int i = 0; i < count; i++) {
+      members.set(ordinals.get(i));
+    }
+    int next = 0;
+    for (int position = 0; position < size && next < count; position++) {
+      if (members.get(order[position])) {
+        result[next++] = order[position];
+      }
+    }
+    return result;
+  }
+
+  void ensureBuilt() {
+    if (!built) {
+      build();
+    }
+  }
+
+  private synchronized void build() {
+    if (built) {
+      return;
+    }
+    int size = videosByOrdinal.size();
+    order = new int[Math.max(size, 16)];
+    ranks = new int[order.length];
+    if (presorted != null) {
+      IntBuffer source = presorted.duplicate();
+      source.rewind();
+      source.get(order, 0, size);
+      presorted = null;
+    } else {
+      Integer[] sorted = new Integer[size];
+      Video[] videos = new Video[size];
+      for (int i = 0; i < size; i++) {
+        sorted[i] = i;
+        videos[i] = videosByOrdinal.get(i);
+      }
+      Arrays.sort(sorted, (a, b) -> TITLE_ORDER.compare(videos[a], videos[b]));
+      for (int i = 0; i < size; i++) {
+        order[i] = sorted[i];
+      }
+    }
+    renumber(0, size);
+    built = true;
+  }
+
+  private void renumber(int from, int to) {
+    for (int position = from; position < to; position++) {
+      ranks[order[position]] = position;
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (order.length < capacity) {
+      int length = Math.max(capacity, order.length * 2);
+      order = Arrays.copyOf(order, length);
+      ranks = Arrays.copyOf(ranks, length);
+    }
+  }
+}
@@ -0,0 +1,441 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A trie over the distinct words of the lowercased video titles, each word
+ * leading to the titles that contain it. It answers typeahead queries,
+ * whose last word may be unfinished, and fuzzy queries, whose words may be
+ * a few typos away from a title's, by walking only the branches of the trie
+ * that can still match. Their cost depends on the part of the dictionary
+ * they reach and on the number of results, not on the size of the catalog.
+ *
+ * <p>A word is a run of letters and digits. The trie is built in one pass
+ * over the titles into flat arrays: its nodes in breadth-first order, so
+ * that the children of a node are adjacent and sorted by label, and every
+ * word's ordinals one after another. Catalogs often have as many distinct
+ * words as titles, so nothing is kept per word but a node and an offset,
+ * and the index takes about as much memory as the titles themselves.
+ *
+ * <p>The arrays are not changed afterwards. Titles added, removed or moved
+ * to another ordinal since are kept in a small sorted map of their words
+ * instead, and their ordinals are masked in the arrays. Once the map holds
+ * more than a sixteenth as many ordinals as the arrays, the index is dropped
+ * and built again by the next query.
+ *
+ * <p>Nothing is built until the first query, and until then changes are
+ * ignored. Callers must not update the index concurrently with any other
+ * call. Reads may run concurrently; the first one builds the index.
+ */
+class TitleTrie {
+
+  /** The most typos a fuzzy query allows in a word. */
+  static final int MAX_EDITS = 2;
+
+  /** How many ordinals may be added since the build, whatever its size, before a rebuild. */
+  private static final int MIN_REBUILD = 1024;
+
+  private final List<Video> videosByOrdinal;
+  private volatile Index index;
+
+  TitleTrie(List<Video> videosByOrdinal) {
+    this.videosByOrdinal = videosByOrdinal;
+  }
+
+  /** Records that a video with the given title now has the given ordinal. */
+  void added(int ordinal, String title) {
+    Index current = index;
+    if (current == null) {
+      return;
+    }
+    if (ordinal < current.titles) {
+      current.changed.set(ordinal);
+    }
+    for (String word : wordsOf(title.toLowerCase())) {
+      current.added.computeIfAbsent(word, w -> new PostingList()).add(ordinal);
+      current.addedCount++;
+    }
+    if (current.addedCount > Math.max(MIN_REBUILD, current.ordinals.length / 16)) {
+      index = null;
+    }
+  }
+
+  /** Records that the video with the given title no longer has the given ordinal. */
+  void removed(int ordinal, String title) {
+    Index current = index;
+    if (current == null) {
+      return;
+    }
+    if (ordinal < current.titles) {
+      current.changed.set(ordinal);
+    }
+    for (String word : wordsOf(title.toLowerCase())) {
+      PostingList postings = current.added.get(word);
+      if (postings != null) {
+        postings.remove(ordinal);
+        if (postings.isEmpty()) {
+          current.added.remove(word);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the ordinals of the titles that contain every word of the
+   * lowercased query, the last one possibly as the start of a longer word.
+   * Returns an empty list if the query has no words.
+   */
+  PostingList completions(String lowerQuery) {
+    Index current = index();
+    List<String> queryWords = wordsOf(lowerQuery);
+    List<PostingList> lists = new ArrayList<>();
+    for (int i = 0; i < queryWords.size(); i++) {
+      String word = queryWords.get(i);
+      Matches matches = new Matches(current);
+      int node = current.find(word);
+      if (i < queryWords.size() - 1) {
+        matches.addTerm(node >= 0 ? current.terms[node] : -1);
+        matches.add(current.added.get(word));
+      } else {
+        current.collect(node, matches);
+        for (PostingList postings
+            : current.added.subMap(word, word + Character.MAX_VALUE).values()) {
+          matches.add(postings);
+        }
+      }
+      lists.add(matches.toPostingList());
+    }
+    return intersect(lists);
+  }
+
+  /**
+   * Returns the ordinals of the titles that contain, for every word of the
+   * lowercased query, a word within {@link #allowedEdits} insertions,
+   * deletions or substitutions of it. Returns an empty list if the query
+   * has no words.
+   */
+  PostingList similar(String lowerQuery) {
+    Index current = index();
+    List<PostingList> lists = new ArrayList<>();
+    for (String word : wordsOf(lowerQuery)) {
+      int maxEdits = allowedEdits(word);
+      int[] row = new int[word.length() + 1];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = i;
+      }
+      Matches matches = new Matches(current);
+      current.similar(0, word, row, maxEdits, matches);
+      for (Map.Entry<String, PostingList> added : current.added.entrySet()) {
+        if (distance(word, added.getKey(), maxEdits) <= maxEdits) {
+          matches.add(added.getValue());
+        }
+      }
+      lists.add(matches.toPostingList());
+    }
+    return intersect(lists);
+  }
+
+  /**
+   * Returns how many typos a fuzzy query allows in a word of its length:
+   * none in a word of one or two characters, which would match too much,
+   * one in a word of up to five and {@value #MAX_EDITS} in a longer one.
+   */
+  static int allowedEdits(String word) {
+    return word.length() <= 2 ? 0 : word.length() <= 5 ? 1 : MAX_EDITS;
+  }
+
+  /** Returns the runs of letters and digits in the text, in order. */
+  static List<String> wordsOf(String text) {
+    List<String> result = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      if (i < text.length() && Character.isLetterOrDigit(text.charAt(i))) {
+        if (start < 0) {
+          start = i;
+        }
+      } else if (start >= 0) {
+        result.add(text.substring(start, i));
+        start = -1;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the edit distance between two words, or any number above
+   * {@code maxEdits} once it is certain to exceed it.
+   */
+  private static int distance(String a, String b, int maxEdits) {
+    if (Math.abs(a.length() - b.length()) > maxEdits) {
+      return maxEdits + 1;
+    }
+    int[] previous = new int[b.length() + 1];
+    for (int j = 0; j < previous.length; j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int[] row = new int[previous.length];
+      row[0] = i;
+      int best = row[0];
+      for (int j = 1; j < row.length; j++) {
+        int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        row[j] = Math.min(replace, Math.min(row[j - 1], previous[j]) + 1);
+        best = Math.min(best, row[j]);
+      }
+      if (best > maxEdits) {
+        return best;
+      }
+      previous = row;
+    }
+    return previous[b.length()];
+  }
+
+  private Index index() {
+    Index current = index;
+    return current != null ? current : build();
+  }
+
+  private synchronized Index build() {
+    if (index == null) {
+      index = new Index(videosByOrdinal);
+    }
+    return index;
+  }
+
+  /** Returns the ordinals in every one of the lists, smallest first. */
+  private static PostingList intersect(List<PostingList> lists) {
+    if (lists.isEmpty()) {
+      return new PostingList();
+    }
+    lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+    PostingList result = lists.get(0);
+    for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+      result = PostingList.intersect(result, lists.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * The trie as built from the titles, with the changes made since.
+   *
+   * <p>Node 0 is the root, the children of node {@code n} are the nodes from
+   * {@code first[n]} up to {@code first[n + 1]}, sorted by label, and
+   * {@code terms[n]} is the number of the word ending at node {@code n}, or
+   * -1. The ordinals of word {@code t} are {@code ordinals[offsets[t]]} up
+   * to {@code ordinals[offsets[t + 1]]}, and are to be skipped if they are
+   * in {@code changed}.
+   */
+  private static final class Index {
+    final int titles;
+    final char[] labels;
+    final int[] first;
+    final int[] terms;
+    final int[] offsets;
+    final int[] ordinals;
+    final BitSet changed;
+    final TreeMap<String, PostingList> added;
+    int addedCount;
+
+    Index(List<Video> videosByOrdinal) {
+      titles = videosByOrdinal.size();
+      Map<String, PostingList> words = new HashMap<>();
+      for (int ordinal = 0; ordinal < titles; ordinal++) {
+        for (String word : wordsOf(videosByOrdinal.get(ordinal).getTitle().toLowerCase())) {
+          words.computeIfAbsent(word, w -> new PostingList()).add(ordinal);
+        }
+      }
+      String[] sorted = words.keySet().toArray(new String[0]);
+      Arrays.sort(sorted);
+      offsets = new int[sorted.length + 1];
+      int capacity = 1;
+      for (int term = 0; term < sorted.length; term++) {
+        offsets[term + 1] = offsets[term] + words.get(sorted[term]).size();
+        capacity += sorted[term].length();
+      }
+      ordinals = new int[offsets[sorted.length]];
+      for (int term = 0; term < sorted.length; term++) {
+        PostingList postings = words.remove(sorted[term]);
+        for (int i = 0; i < postings.size(); i++) {
+          ordinals[offsets[term] + i] = postings.get(i);
+        }
+      }
+      // Each node covers the range of sorted words that start with its path.
+      char[] labels = new char[capacity];
+      int[] first = new int[capacity + 1];
+      int[] terms = new int[capacity];
+      int[] from = new int[capacity];
+      int[] to = new int[capacity];
+      int[] depth = new int[capacity];
+      to[0] = sorted.length;
+      int count = 1;
+      for (int node = 0; node < count; node++) {
+        first[node] = count;
+        int word = from[node];
+        terms[node] = -1;
+        if (word < to[node] && sorted[word].length() == depth[node]) {
+          terms[node] = word++;
+        }
+        while (word < to[node]) {
+          char label = sorted[word].charAt(depth[node]);
+          int end = word + 1;
+          while (end < to[node] && sorted[end].charAt(depth[node]) == label) {
+            end++;
+          }
+          labels[count] = label;
+          from[count] = word;
+          to[count] = end;
+          depth[count] = depth[node] + 1;
+          count++;
+          word = end;
+        }
+      }
+      first[count] = count;
+      this.labels = Arrays.copyOf(labels, count);
+      this.first = Arrays.copyOf(first, count + 1);
+      this.terms = Arrays.copyOf(terms, count);
+      this.changed = new BitSet();
+      this.added = new TreeMap<>();
+    }
+
+    /** Returns the node the path spelling the word leads to, or -1. */
+    int find(String word) {
+      int node = 0;
+      for (int i = 0; i < word.length() && node >= 0; i++) {
+        node = child(node, word.charAt(i));
+      }
+      return node;
+    }
+
+    private int child(int node, char label) {
+      int low = first[node];
+      int high = first[node + 1] - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (labels[mid] < label) {
+          low = mid + 1;
+        } else if (labels[mid] > label) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    /** Adds the ordinals of every word at or below the node, if there is one. */
+    void collect(int node, Matches matches) {
+      if (node < 0) {
+        return;
+      }
+      int[] stack = new int[16];
+      int size = 0;
+      stack[size++] = node;
+      while (size > 0) {
+        int next = stack[--size];
+        matches.addTerm(terms[next]);
+        int children = first[next + 1] - first[next];
+        if (size + children > stack.length) {
+          stack = Arrays.copyOf(stack, Math.max(stack.length * 2, size + children));
+        }
+        for (int child = first[next]; child < first[next + 1]; child++) {
+          stack[size++] = child;
+        }
+      }
+    }
+
+    /**
+     * Adds the ordinals of every word below the node within {@code maxEdits}
+     * of the query word, given the row of edit distances between the node's
+     * path and each prefix of the query word. Branches whose every distance
+     * exceeds {@code maxEdits} cannot lead to a match and are cut.
+     */
+    void similar(int node, String word, int[] previous, int maxEdits, Matches matches) {
+      for (int child = first[node]; child < first[node + 1]; child++) {
+        char label = labels[child];
+        int[] row = new int[previous.length];
+        row[0] = previous[0] + 1;
+        int best = row[0];
+        for (int i = 1; i < row.length; i++) {
+          int replace = previous[i - 1] + (word.charAt(i - 1) == label ? 0 : 1);
+          row[i] = Math.min(replace, Math.min(row[i - 1], previous[i]) + 1);
+          best = Math.min(best, row[i]);
+        }
+        if (row[row.length - 1] <= maxEdits) {
+          matches.addTerm(terms[child]);
+        }
+        if (best <= maxEdits) {
+          similar(child, word, row, maxEdits, matches);
+        }
+      }
+    }
+  }
+
+  /** Gathers the ordinals of the words a query word matches. */
+  private static final class Matches {
+    private final Index index;
+    private int[] ordinals;
+    private int size;
+
+    Matches(Index index) {
+      this.index = index;
+      this.ordinals = new int[16];
+    }
+
+    /** Adds the ordinals of the numbered word that have not changed since the build. */
+    void addTerm(int term) {
+      if (term < 0) {
+        return;
+      }
+      for (int i = index.offsets[term]; i < index.offsets[term + 1]; i++) {
+        int ordinal = index.ordinals[i];
+        if (!index.changed.get(ordinal)) {
+          append(ordinal);
+        }
+      }
+    }
+
+    void add(PostingList postings) {
+      if (postings == null) {
+        return;
+      }
+      for (int i = 0; i < postings.size(); i++) {
+        append(postings.get(i));
+      }
+    }
+
+    private void append(int ordinal) {
+      if (size == ordinals.length) {
+        ordinals = Arrays.copyOf(ordinals, size * 2);
+      }
+      ordinals[size++] = ordinal;
+    }
+
+    /**
+     * Returns the ordinals gathered, sorted and distinct. Many ordinals are
+     * put in order by setting them in a bit set rather than by sorting.
+     */
+    PostingList toPostingList() {
+      if (size > 64 && (long) size * 8 > index.titles) {
+        BitSet bits = new BitSet(index.titles);
+        for (int i = 0; i < size; i++) {
+          bits.set(ordinals[i]);
+        }
+        return new PostingList(bits.stream().toArray());
+      }
+      Arrays.sort(ordinals, 0, size);
+      int distinct = 0;
+      for (int i = 0; i < size; i++) {
+        if (distinct == 0 || ordinals[distinct - 1] != ordinals[i]) {
+          ordinals[distinct++] = ordinals[i];
+        }
+      }
+      return new PostingList(Arrays.copyOf(ordinals, distinct));
+    }
+  }
+}
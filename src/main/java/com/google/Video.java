@@ -1,22 +1,41 @@
 package com.google;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
-/** A class used to represent a video. */
+/**
+ * A class used to represent a video.
+ *
+ * <p>A video is immutable, so it can be shared between threads freely. Tags
+ * are held as ids in the {@link TagDictionary}, so videos share one copy of
+ * each tag string. Flags are kept by the {@link VideoLibrary}, which hands
+ * out a flagged copy of a video, made by {@link #withFlag}, for as long as
+ * the video is flagged.
+ */
 class Video implements Comparable<Video> {
 
   private final String title;
   private final String videoId;
-  private final List<String> tags;
-  private boolean flagged;
-  private String flagReason;
+  private final int[] tagIds;
+  private final String flagReason;
 
   Video(String title, String videoId, List<String> tags) {
+    this(title, videoId, TagDictionary.global().internAll(tags));
+  }
+
+  /** Creates a video from tag ids in the global dictionary, which it keeps. */
+  Video(String title, String videoId, int[] tagIds) {
     this.title = title;
     this.videoId = videoId;
-    this.tags = Collections.unmodifiableList(tags);
-    this.flagged = false;
+    this.tagIds = tagIds;
+    this.flagReason = null;
+  }
+
+  private Video(Video video, String flagReason) {
+    this.title = video.title;
+    this.videoId = video.videoId;
+    this.tagIds = video.tagIds;
+    this.flagReason = flagReason;
   }
 
   /** Returns the title of the video. */
@@ -31,7 +50,15 @@ class Video implements Comparable<Video> {
 
   /** Returns a readonly collection of the tags of the video. */
   List<String> getTags() {
-    return tags;
+    return TagDictionary.global().tags(tagIds);
+  }
+
+  /**
+   * Returns the dictionary ids of the tags of the video, in the same order
+   * as {@link #getTags()}. The array must not be modified.
+   */
+  int[] getTagIds() {
+    return tagIds;
   }
 
   @Override
@@ -41,18 +68,18 @@ class Video implements Comparable<Video> {
     str.append(" (");
     str.append(videoId);
     str.append(") [");
-    boolean first = true;
-    for (String tag : tags) {
-      if (!first) {
+    TagDictionary dictionary = TagDictionary.global();
+    for (int i = 0; i < tagIds.length; i++) {
+      if (i > 0) {
         str.append(" ");
       }
-      first = false;
-      str.append(tag);
+      str.append(dictionary.tag(tagIds[i]));
     }
     str.append("]");
-    if (isFlagged()) {
+    String reason = getFlagReason();
+    if (reason != null) {
       str.append(" - FLAGGED (reason: ");
-      str.append(getFlagReason());
+      str.append(reason);
       str.append(")");
     }
     return str.toString();
@@ -64,20 +91,19 @@ class Video implements Comparable<Video> {
   }
 
   public boolean isFlagged() {
-    return flagged;
-  }
-
-  public void flag(String flagReason) {
-    flagged = true;
-    this.flagReason = flagReason;
+    return flagReason != null;
   }
 
+  /** Returns the reason the video is flagged, or null if it is not flagged. */
   public String getFlagReason() {
     return flagReason;
   }
 
-  public void removeFlag() {
-    flagged = false;
-    flagReason = null;
+  /**
+   * Returns this video flagged for the given reason, or not flagged if the
+   * reason is null: this video itself if it is already so, otherwise a copy.
+   */
+  Video withFlag(String flagReason) {
+    return Objects.equals(flagReason, this.flagReason) ? this : new Video(this, flagReason);
   }
 }
@@ -1,55 +1,987 @@
 package com.google;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Scanner;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 
 /**
  * A class used to represent a Video Library.
+ *
+ * <p>Every video is given a dense ordinal, its position in the library's
+ * {@link VideoStore}. The title and tag indexes refer to videos by
+ * ordinal, and removing a video moves the last video into the freed slot so
+ * that ordinals stay dense. A {@link TitleOrder} keeps the ordinals sorted by
+ * title so that listings and search results come out sorted without a sort
+ * per request.
+ *
+ * <p>The store is chosen when the library is created, by default from the
+ * {@value VideoStore#KIND_PROPERTY} system property. A library opened from a
+ * {@link CatalogSnapshot} reads its videos and indexes from the snapshot
+ * until the first video is added or removed, when they are copied into a
+ * store of that kind and the indexes are rebuilt on the heap.
+ *
+ * <p>Flags are not kept on the videos, which never change, but in a
+ * {@link FlagSet} by ordinal, which the library replaces with a new version
+ * on every flag change. A read takes the current version with one volatile
+ * read and answers entirely from it, handing out flagged copies of the
+ * videos that are flagged in it, so every result reflects one moment even
+ * while flags change. Iterating over the library or its sorted list does
+ * the same, for as long as no video is added or removed meanwhile.
+ *
+ * <p>A library can be shared by many sessions. Reads and flag changes take
+ * a shared lock and can run concurrently, so reads never wait for a flag
+ * change; flag changes are serialized among themselves by a separate
+ * monitor. Adding or removing videos takes the lock exclusively, as it
+ * moves ordinals.
+ *
+ * <p>A library given a {@link ModerationJournal} keeps its flags across
+ * restarts: it applies the journal's flags when the journal is attached,
+ * and records every later flag change in it, holding the flag monitor so
+ * the journal sees the changes in the order they were made.
  */
-class VideoLibrary {
+class VideoLibrary implements Iterable<Video> {
 
-  private final HashMap<String, Video> videos;
+  /** The reason a video is flagged with when none is given. */
+  static final String DEFAULT_FLAG_REASON = "Not supplied";
+
+  private static final int IMPORT_BATCH = 1 << 16;
+
+  private final VideoStore.Kind storeKind;
+  private VideoStore store;
+  private final List<Video> videosByOrdinal;
+  private TitleIndex titleIndex;
+  private TagIndex tagIndex;
+  private TextIndex textIndex;
+  private final TitleOrder titleOrder;
+  private final TitleTrie titleTrie;
+  private volatile FlagSet flags;
+  private int layout;
+  private final List<Video> sortedVideos;
+  private final ReadWriteLock lock;
+  private final Object moderation;
+  private final SearchCache searchCache;
+  private CatalogSnapshot snapshot;
+  private CatalogLoader.Result loadResult;
+  private ModerationJournal journal;
 
   VideoLibrary() {
-    this.videos = new HashMap<>();
-    try {
-      File file = new File(this.getClass().getResource("/videos.txt").getFile());
-
-      Scanner scanner = new Scanner(file);
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        String[] split = line.split("\\|");
-        String title = split[0].strip();
-        String id = split[1].strip();
-        List<String> tags;
-        if (split.length > 2) {
-          tags = Arrays.stream(split[2].split(",")).map(String::strip).collect(
-              Collectors.toList());
-        } else {
-          tags = new ArrayList<>();
-        }
-        this.videos.put(id, new Video(title, id, tags));
-      }
-    } catch (FileNotFoundException e) {
+    this(VideoStore.Kind.fromSystemProperty(), null);
+    try {
+      loadCatalog(new File(this.getClass().getResource("/videos.txt").getFile()).toPath());
+    } catch (IOException e) {
       System.out.println("Couldn't find videos.txt");
       e.printStackTrace();
     }
+    useModerationJournal(ModerationJournal.fromSystemProperty());
+  }
+
+  /** Creates a library from a videos.txt-format catalog file. */
+  VideoLibrary(Path catalog) throws IOException {
+    this(catalog, VideoStore.Kind.fromSystemProperty());
+  }
+
+  /** Creates a library from a videos.txt-format catalog file, held in a store of the given kind. */
+  VideoLibrary(Path catalog, VideoStore.Kind storeKind) throws IOException {
+    this(storeKind, null);
+    loadCatalog(catalog);
+  }
+
+  VideoLibrary(List<Video> videos) {
+    this(VideoStore.Kind.fromSystemProperty(), null);
+    for (Video video : videos) {
+      addVideo(video);
+    }
+  }
+
+  /**
+   * Creates an empty library with a store of the given kind, or a library
+   * reading from the snapshot, if one is given, until it is first changed.
+   */
+  private VideoLibrary(VideoStore.Kind storeKind, CatalogSnapshot snapshot) {
+    this.storeKind = storeKind;
+    this.store = snapshot == null ? storeKind.create() : snapshot.videos();
+    this.videosByOrdinal = new StoreView();
+    if (snapshot == null) {
+      this.titleIndex = new TitleIndex();
+      this.tagIndex = new TagIndex();
+      this.titleOrder = new TitleOrder(this.videosByOrdinal);
+    } else {
+      this.titleIndex = snapshot.titleIndex();
+      this.tagIndex = snapshot.tagIndex();
+      this.titleOrder = new TitleOrder(this.videosByOrdinal, snapshot.titleOrder());
+    }
+    this.titleTrie = new TitleTrie(this.videosByOrdinal);
+    this.textIndex = new TextIndex(this.videosByOrdinal);
+    this.snapshot = snapshot;
+    this.flags = FlagSet.EMPTY;
+    this.lock = new ReentrantReadWriteLock();
+    this.moderation = new Object();
+    this.searchCache = SearchCache.fromSystemProperties();
+    this.sortedVideos = new AbstractList<>() {
+      @Override
+      public Video get(int position) {
+        lock.readLock().lock();
+        try {
+          Objects.checkIndex(position, store.size());
+          return video(flags, titleOrder.ordinalAt(position));
+        } finally {
+          lock.readLock().unlock();
+        }
+      }
+
+      @Override
+      public int size() {
+        return VideoLibrary.this.size();
+      }
+
+      @Override
+      public Iterator<Video> iterator() {
+        return new ViewIterator(titleOrder::ordinalAt);
+      }
+    };
+  }
+
+  /**
+   * Opens a catalog file, which may be a snapshot written by
+   * {@link #writeSnapshot} or a videos.txt-format text file, with the
+   * moderation journal named by the {@value ModerationJournal#DIRECTORY_PROPERTY}
+   * system property, if it is set.
+   */
+  static VideoLibrary open(Path catalog) throws IOException {
+    VideoLibrary library = CatalogSnapshot.isSnapshot(catalog)
+        ? new VideoLibrary(VideoStore.Kind.fromSystemProperty(), CatalogSnapshot.open(catalog))
+        : new VideoLibrary(catalog);
+    library.useModerationJournal(ModerationJournal.fromSystemProperty());
+    return library;
+  }
+
+  /**
+   * Applies the journal's flags to the library's videos and records every
+   * later flag change in it. Does nothing if the journal is null.
+   */
+  void useModerationJournal(ModerationJournal journal) {
+    if (journal == null) {
+      return;
+    }
+    lock.readLock().lock();
+    try {
+      synchronized (this.moderation) {
+        FlagSet.Editor next = this.flags.edit();
+        for (Map.Entry<String, String> flag : journal.flagged().entrySet()) {
+          int ordinal = ordinalOf(flag.getKey());
+          if (ordinal >= 0) {
+            moderate(next, ordinal, flag.getValue(), true);
+          }
+        }
+        this.flags = next.build();
+        this.journal = journal;
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void loadCatalog(Path catalog) throws IOException {
+    CatalogLoader.Result result = new CatalogLoader().load(catalog);
+    for (Video video : result.getVideos()) {
+      addVideo(video);
+    }
+    this.loadResult = result.withoutVideos();
   }
 
+  /**
+   * Returns how long loading the catalog file took, or null if the library
+   * was not loaded from a text catalog.
+   */
+  CatalogLoader.Result getLoadResult() {
+    return this.loadResult;
+  }
+
+  /**
+   * Writes a snapshot of the library's videos and indexes, which
+   * {@link #open} loads in a fraction of the time a text catalog takes.
+   */
+  void writeSnapshot(Path file) throws IOException {
+    lock.readLock().lock();
+    try {
+      CatalogSnapshot.write(file, this.videosByOrdinal, this.titleOrder, this.titleIndex,
+          this.tagIndex);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Moves a library opened from a snapshot into its own store and heap
+   * indexes, so that it can be changed. Must be called with the write lock
+   * held.
+   */
+  private void thaw() {
+    if (this.snapshot == null) {
+      return;
+    }
+    this.titleOrder.ensureBuilt();
+    VideoStore thawed = this.storeKind.create();
+    this.titleIndex = new TitleIndex();
+    this.tagIndex = new TagIndex();
+    this.textIndex = new TextIndex(this.videosByOrdinal);
+    for (int ordinal = 0; ordinal < this.store.size(); ordinal++) {
+      Video video = this.store.get(ordinal);
+      thawed.add(video);
+      index(ordinal, video);
+    }
+    this.store = thawed;
+    this.snapshot = null;
+  }
+
+  private int ordinalOf(String videoId) {
+    return this.store.ordinalOf(videoId);
+  }
+
+  /** Returns the video with the given ordinal as it is in the given version of the flags. */
+  private Video video(FlagSet flags, int ordinal) {
+    return this.store.get(ordinal).withFlag(flags.reason(ordinal));
+  }
+
+  /**
+   * Adds a video to the library and its indexes. A video with the same id
+   * replaces the existing one. The video keeps its flag, if it has one.
+   */
+  void addVideo(Video video) {
+    lock.writeLock().lock();
+    try {
+      thaw();
+      removeVideo(video.getVideoId());
+      int ordinal = this.store.size();
+      this.store.add(video.withFlag(null));
+      this.titleOrder.added(ordinal);
+      if (video.isFlagged()) {
+        this.flags = this.flags.with(ordinal, video.getFlagReason());
+      }
+      this.layout++;
+      if (this.searchCache != null) {
+        this.searchCache.clear();
+      }
+      index(ordinal, video);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a video from the library and its indexes. Returns the removed
+   * video, or null if there was no video with that id.
+   */
+  Video removeVideo(String videoId) {
+    lock.writeLock().lock();
+    try {
+      thaw();
+      int ordinal = ordinalOf(videoId);
+      if (ordinal < 0) {
+        return null;
+      }
+      FlagSet flags = this.flags;
+      Video removed = video(flags, ordinal);
+      this.titleOrder.removed(ordinal);
+      unindex(ordinal, removed);
+      int last = this.store.size() - 1;
+      Video moved = ordinal != last ? this.store.get(last) : null;
+      if (moved != null) {
+        unindex(last, moved);
+      }
+      this.store.remove(ordinal);
+      this.flags = moved != null ? flags.moved(last, ordinal) : flags.without(ordinal);
+      this.layout++;
+      if (this.searchCache != null) {
+        this.searchCache.clear();
+      }
+      if (moved != null) {
+        this.titleOrder.moved(last, ordinal);
+        index(ordinal, moved);
+      }
+      return removed;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void index(int ordinal, Video video) {
+    this.titleIndex.add(ordinal, video.getTitle());
+    this.titleTrie.added(ordinal, video.getTitle());
+    this.textIndex.added(ordinal);
+    this.tagIndex.add(ordinal, video);
+  }
+
+  private void unindex(int ordinal, Video video) {
+    this.titleIndex.remove(ordinal, video.getTitle());
+    this.titleTrie.removed(ordinal, video.getTitle());
+    this.textIndex.removed(ordinal);
+    this.tagIndex.remove(ordinal, video);
+  }
+
+  /** Returns a copy of every video. Prefer the read-only views below. */
   List<Video> getVideos() {
-    return new ArrayList<>(this.videos.values());
+    lock.readLock().lock();
+    try {
+      FlagSet flags = this.flags;
+      List<Video> result = new ArrayList<>(this.store.size());
+      for (int ordinal = 0; ordinal < this.store.size(); ordinal++) {
+        result.add(video(flags, ordinal));
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the number of videos in the library. */
+  int size() {
+    lock.readLock().lock();
+    try {
+      return this.store.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the video with the given ordinal, between 0 and size() - 1. */
+  Video getVideoAt(int ordinal) {
+    lock.readLock().lock();
+    try {
+      return video(this.flags, ordinal);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Iterates over every video without copying. The iterator is read-only and
+   * weakly consistent: it never fails, but may or may not see videos added
+   * or removed while it runs. Until a video is added or removed it shows the
+   * flags as they were when it was created.
+   */
+  @Override
+  public Iterator<Video> iterator() {
+    return new ViewIterator(IntUnaryOperator.identity());
+  }
+
+  /**
+   * Returns a read-only list of every video sorted by title. The list is a
+   * view of the library's title order, so it reflects later changes, and
+   * its iterator is weakly consistent like {@link #iterator()}.
+   */
+  List<Video> getSortedVideos() {
+    return this.sortedVideos;
+  }
+
+  /**
+   * Flags a video in the library, so it can no longer be played. Returns
+   * false, changing nothing, if the video is already flagged.
+   */
+  boolean flagVideo(Video video, String reason) {
+    return moderateOne(video.getVideoId(), reason);
+  }
+
+  /**
+   * Removes the flag from a video in the library. Returns false, changing
+   * nothing, if the video is not flagged.
+   */
+  boolean allowVideo(Video video) {
+    return moderateOne(video.getVideoId(), null);
+  }
+
+  private boolean moderateOne(String videoId, String reason) {
+    long decision;
+    lock.readLock().lock();
+    try {
+      synchronized (this.moderation) {
+        int ordinal = ordinalOf(videoId);
+        FlagSet.Editor next = this.flags.edit();
+        if (ordinal < 0 || !moderate(next, ordinal, reason, false)) {
+          return false;
+        }
+        this.flags = next.build();
+        decision = journal(videoId, reason, 0);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    commitModeration(decision);
+    return true;
+  }
+
+  /**
+   * Applies a file of moderation decisions in one pass, one per line:
+   * {@code FLAG_VIDEO <video_id> [reason]} or {@code ALLOW_VIDEO <video_id>},
+   * as the commands are written. Blank lines are skipped, and decisions
+   * about videos that are not in the library, or that change nothing, are
+   * ignored. Decisions are applied, published and journaled in batches,
+   * and the whole import is durable when this returns. Returns the
+   * number of videos whose flag changed.
+   */
+  int importModeration(BufferedReader decisions) throws IOException {
+    String[] videoIds = new String[IMPORT_BATCH];
+    String[] reasons = new String[IMPORT_BATCH];
+    int changed = 0;
+    long decision = 0;
+    int lineNumber = 0;
+    while (true) {
+      int count = 0;
+      String line;
+      while (count < IMPORT_BATCH && (line = decisions.readLine()) != null) {
+        lineNumber++;
+        List<String> words = CommandParser.tokenize(line);
+        if (words.isEmpty()) {
+          continue;
+        }
+        String command = words.get(0).toUpperCase();
+        if (words.size() < 2 || !command.equals("FLAG_VIDEO") && !command.equals("ALLOW_VIDEO")) {
+          throw new IOException("Line " + lineNumber + " is not a moderation decision: " + line);
+        }
+        videoIds[count] = words.get(1);
+        reasons[count] = command.equals("ALLOW_VIDEO") ? null
+            : words.size() > 2 ? String.join(" ", words.subList(2, words.size()))
+            : DEFAULT_FLAG_REASON;
+        count++;
+      }
+      if (count == 0) {
+        break;
+      }
+      lock.readLock().lock();
+      try {
+        synchronized (this.moderation) {
+          FlagSet.Editor next = this.flags.edit();
+          for (int i = 0; i < count; i++) {
+            int ordinal = ordinalOf(videoIds[i]);
+            if (ordinal >= 0 && moderate(next, ordinal, reasons[i], true)) {
+              changed++;
+              decision = journal(videoIds[i], reasons[i], decision);
+            }
+          }
+          this.flags = next.build();
+        }
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+    commitModeration(decision);
+    return changed;
+  }
+
+  /**
+   * Flags every video with one of the given ids for the reason, or allows
+   * it if the reason is null, in one pass published as one version of the
+   * flags, and waits once for the whole change to be journaled. Like
+   * {@link #flagVideo}, it leaves the reason of a video that is already
+   * flagged as it is. Ids of videos that are not in the library are skipped
+   * and listed in the result.
+   */
+  Moderation moderateAll(Collection<String> videoIds, String reason) {
+    int matched = 0;
+    int changed = 0;
+    List<String> missing = new ArrayList<>();
+    long decision = 0;
+    lock.readLock().lock();
+    try {
+      synchronized (this.moderation) {
+        FlagSet.Editor next = this.flags.edit();
+        for (String videoId : videoIds) {
+          int ordinal = ordinalOf(videoId);
+          if (ordinal < 0) {
+            missing.add(videoId);
+            continue;
+          }
+          matched++;
+          if (moderate(next, ordinal, reason, false)) {
+            changed++;
+            decision = journal(videoId, reason, decision);
+          }
+        }
+        this.flags = next.build();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    commitModeration(decision);
+    return new Moderation(matched, changed, missing);
+  }
+
+  /**
+   * How many of the videos a bulk flag or allow named exist, how many of
+   * those it changed, and the ids of the others.
+   */
+  static final class Moderation {
+    final int matched;
+    final int changed;
+    final List<String> missing;
+
+    Moderation(int matched, int changed, List<String> missing) {
+      this.matched = matched;
+      this.changed = changed;
+      this.missing = missing;
+    }
+  }
+
+  /**
+   * Flags the given ordinal, or allows it if the reason is null. A flagged
+   * ordinal is given the new reason only if {@code replaceReason} is set.
+   * Returns false if nothing changed.
+   */
+  private static boolean moderate(FlagSet.Editor flags, int ordinal, String reason,
+      boolean replaceReason) {
+    if (reason == null) {
+      return flags.remove(ordinal);
+    }
+    return (replaceReason || flags.reason(ordinal) == null) && flags.put(ordinal, reason);
+  }
+
+  /**
+   * Journals a flag change made holding the flag monitor, if the library
+   * has a journal, and returns the number to wait for: the change's, or
+   * {@code last} if it was not journaled.
+   */
+  private long journal(String videoId, String reason, long last) {
+    return this.journal == null ? last : this.journal.append(videoId, reason);
+  }
+
+  /** Waits for a journaled flag change to be durable, then compacts the journal if it is due. */
+  private void commitModeration(long decision) {
+    if (decision == 0) {
+      return;
+    }
+    this.journal.awaitDurable(decision);
+    try {
+      this.journal.compactIfDue();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't compact the moderation journal", e);
+    }
+  }
+
+  /** Returns the number of videos that are not flagged. */
+  int playableCount() {
+    lock.readLock().lock();
+    try {
+      return this.store.size() - this.flags.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a uniformly chosen video that is not flagged, or null if every
+   * video is flagged.
+   */
+  Video getRandomPlayableVideo(Random random) {
+    lock.readLock().lock();
+    try {
+      FlagSet flags = this.flags;
+      int playable = this.store.size() - flags.size();
+      return playable == 0 ? null : video(flags, flags.unflaggedAt(random.nextInt(playable)));
+    } finally {
+      lock.readLock().unlock();
+    }
   }
 
   /**
    * Get a video by id. Returns null if the video is not found.
    */
   Video getVideo(String videoId) {
-    return this.videos.get(videoId);
+    lock.readLock().lock();
+    try {
+      int ordinal = ordinalOf(videoId);
+      return ordinal < 0 ? null : video(this.flags, ordinal);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns every video whose title contains the search term, ignoring case,
+   * sorted by title. Flagged videos are included.
+   */
+  List<Video> searchTitles(String searchTerm) {
+    String term = searchTerm.toLowerCase();
+    lock.readLock().lock();
+    try {
+      return toVideos(titleMatches(term), this.flags);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the videos that are not flagged whose title contains the search
+   * term, ignoring case, sorted by title, as a read-only list. Results are
+   * cached; see {@link SearchCache}.
+   */
+  List<Video> searchPlayableTitles(String searchTerm) {
+    String term = searchTerm.toLowerCase();
+    return cachedSearch("title " + term, () -> titleMatches(term));
+  }
+
+  /**
+   * Returns the videos that are not flagged carrying the tag, sorted by
+   * title, as a read-only list. Results are cached; see {@link SearchCache}.
+   */
+  List<Video> searchPlayableTag(String tag) {
+    return cachedSearch("tag " + tag, () -> this.titleOrder.sort(this.tagIndex.withTag(tag)));
+  }
+
+  /**
+   * Returns, sorted by title, up to {@code limit} of the videos that are not
+   * flagged whose titles contain every word of the query, ignoring case,
+   * the last one possibly unfinished, as when completing what a user types.
+   * See {@link TitleTrie}.
+   */
+  List<Video> completeTitles(String query, int limit) {
+    lock.readLock().lock();
+    try {
+      return page(this.titleTrie.completions(query.toLowerCase()), null, true, 0, 0, limit)
+          .videos;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns, sorted by title, up to {@code limit} of the videos that are not
+   * flagged whose titles contain every word of the query, ignoring case,
+   * allowing a few typos in each; see {@link TitleTrie#similar}.
+   */
+  List<Video> searchTitlesFuzzy(String query, int limit) {
+    lock.readLock().lock();
+    try {
+      return page(this.titleTrie.similar(query.toLowerCase()), null, true, 0, 0, limit).videos;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} of the videos that are not flagged matching
+   * the query's words in their titles or tags, most relevant first; quoted
+   * phrases must match word for word. See {@link TextIndex}.
+   */
+  List<Video> searchRanked(String query, int limit) {
+    lock.readLock().lock();
+    try {
+      FlagSet flags = this.flags;
+      int[] ordinals = this.textIndex.search(query, ordinal -> !flags.contains(ordinal),
+          this.titleOrder::rankOf, limit);
+      List<Video> result = new ArrayList<>(ordinals.length);
+      for (int ordinal : ordinals) {
+        result.add(video(flags, ordinal));
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns how many segments the full-text index has, building it if need be. */
+  int textIndexSegments() {
+    lock.readLock().lock();
+    try {
+      return this.textIndex.segmentCount();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns the ordinals of the videos whose title contains the lower-case term, by title. */
+  private int[] titleMatches(String term) {
+    PostingList candidates = this.titleIndex.candidates(term);
+    if (candidates == null) {
+      int count = 0;
+      int[] result = new int[16];
+      for (int position = 0; position < this.store.size(); position++) {
+        int ordinal = this.titleOrder.ordinalAt(position);
+        if (this.store.titleOf(ordinal).toLowerCase().contains(term)) {
+          if (count == result.length) {
+            result = Arrays.copyOf(result, count * 2);
+          }
+          result[count++] = ordinal;
+        }
+      }
+      return Arrays.copyOf(result, count);
+    }
+    PostingList matches = new PostingList();
+    for (int i = 0; i < candidates.size(); i++) {
+      int ordinal = candidates.get(i);
+      if (this.store.titleOf(ordinal).toLowerCase().contains(term)) {
+        matches.add(ordinal);
+      }
+    }
+    return this.titleOrder.sort(matches);
+  }
+
+  /**
+   * Returns the playable videos a search finds, from the cache if it holds
+   * the query and none of the videos it found has been flagged or allowed
+   * since. The search runs with the read lock held.
+   */
+  private List<Video> cachedSearch(String key, Supplier<int[]> search) {
+    lock.readLock().lock();
+    try {
+      FlagSet flags = this.flags;
+      if (this.searchCache == null) {
+        return playable(search.get(), flags);
+      }
+      SearchCache.Entry entry = this.searchCache.get(key);
+      if (entry == null) {
+        int[] ordinals = search.get();
+        int[] sortedOrdinals = ordinals.clone();
+        Arrays.sort(sortedOrdinals);
+        entry = cacheEntry(key, ordinals, sortedOrdinals, flags);
+        this.searchCache.put(key, entry);
+      } else if (entry.flags != flags) {
+        boolean changed = flags.differsWithin(entry.flags, entry.sortedOrdinals);
+        SearchCache.Entry fresh = changed
+            ? cacheEntry(key, entry.ordinals, entry.sortedOrdinals, flags)
+            : new SearchCache.Entry(entry.ordinals, entry.sortedOrdinals, flags, entry.playable,
+                entry.bytes);
+        this.searchCache.replace(key, entry, fresh, changed);
+        entry = fresh;
+      }
+      return entry.playable;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private SearchCache.Entry cacheEntry(String key, int[] ordinals, int[] sortedOrdinals,
+      FlagSet flags) {
+    List<Video> playable = playable(ordinals, flags);
+    long bytes = SearchCache.estimate(key, ordinals.length, playable,
+        this.store instanceof RowVideoStore);
+    return new SearchCache.Entry(ordinals, sortedOrdinals, flags, playable, bytes);
+  }
+
+  /** Returns the videos with the given ordinals that are not flagged, as a read-only list. */
+  private List<Video> playable(int[] ordinals, FlagSet flags) {
+    List<Video> result = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      if (!flags.contains(ordinal)) {
+        result.add(this.store.get(ordinal));
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /** Returns the search cache's counters, or null if the library has no cache. */
+  SearchCache.Stats searchCacheStats() {
+    return this.searchCache == null ? null : this.searchCache.stats();
+  }
+
+  /**
+   * Returns every video carrying the tag, sorted by title. Tags are matched
+   * exactly. Flagged videos are included.
+   */
+  List<Video> searchTag(String tag) {
+    lock.readLock().lock();
+    try {
+      return toSortedVideos(this.tagIndex.withTag(tag));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns every video carrying all of the given tags, sorted by title. */
+  List<Video> searchAllTags(Collection<String> tags) {
+    lock.readLock().lock();
+    try {
+      return toSortedVideos(this.tagIndex.withAllTags(tags));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns every video carrying at least one of the given tags, sorted by title. */
+  List<Video> searchAnyTag(Collection<String> tags) {
+    lock.readLock().lock();
+    try {
+      return toSortedVideos(this.tagIndex.withAnyTag(tags));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a page of every video in title order: up to {@code limit}
+   * videos starting {@code skip} positions after position {@code from}.
+   */
+  Page pageOfAll(int from, int skip, int limit) {
+    lock.readLock().lock();
+    try {
+      return page(null, null, false, (int) Math.min((long) from + skip, Integer.MAX_VALUE), 0,
+          limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a page of the videos that are not flagged whose title contains
+   * the search term, ignoring case: up to {@code limit} of them in title
+   * order, skipping the first {@code skip} found from position {@code from}.
+   */
+  Page pageOfTitles(String searchTerm, int from, int skip, int limit) {
+    String term = searchTerm.toLowerCase();
+    lock.readLock().lock();
+    try {
+      return page(this.titleIndex.candidates(term),
+          ordinal -> this.store.titleOf(ordinal).toLowerCase().contains(term), true, from, skip,
+          limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Returns a page of the unflagged videos carrying the tag, as {@link #pageOfTitles} does. */
+  Page pageOfTag(String tag, int from, int skip, int limit) {
+    lock.readLock().lock();
+    try {
+      return page(this.tagIndex.withTag(tag), null, true, from, skip, limit);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns, in title order, up to {@code limit} of the videos at positions
+   * from {@code from} on that are among the candidates, if there are any,
+   * and pass the filter, if there is one, after skipping {@code skip} of
+   * them. The videos are {@linkplain TitleOrder#select selected} without
+   * finding or sorting the rest of the matches. Must be called with the
+   * read lock held.
+   */
+  private Page page(PostingList candidates, IntPredicate filter, boolean playableOnly, int from,
+      int skip, int limit) {
+    FlagSet flags = this.flags;
+    IntPredicate accept = filter;
+    if (playableOnly) {
+      IntPredicate playable = ordinal -> !flags.contains(ordinal);
+      accept = filter == null ? playable : playable.and(filter);
+    }
+    int[] ordinals = this.titleOrder.select(candidates, accept, from, skip,
+        (int) Math.min(limit + 1L, Integer.MAX_VALUE));
+    int count = Math.min(ordinals.length, limit);
+    List<Video> videos = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      videos.add(video(flags, ordinals[i]));
+    }
+    return new Page(videos, ordinals.length > limit ? this.titleOrder.rankOf(ordinals[limit]) : -1);
+  }
+
+  /**
+   * A page of videos in title order, and the position in title order the
+   * next page starts from, or -1 if this is the last page.
+   */
+  static final class Page {
+    final List<Video> videos;
+    final int next;
+
+    Page(List<Video> videos, int next) {
+      this.videos = videos;
+      this.next = next;
+    }
+  }
+
+  private List<Video> toSortedVideos(PostingList postings) {
+    return toVideos(this.titleOrder.sort(postings), this.flags);
+  }
+
+  private List<Video> toVideos(int[] ordinals, FlagSet flags) {
+    List<Video> result = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      result.add(video(flags, ordinal));
+    }
+    return result;
+  }
+
+  /** The store as a read-only list, for the title order and snapshot writer. */
+  private final class StoreView extends AbstractList<Video> implements RandomAccess {
+    @Override
+    public Video get(int ordinal) {
+      return store.get(ordinal);
+    }
+
+    @Override
+    public int size() {
+      return store.size();
+    }
+  }
+
+  /**
+   * A read-only iterator over positions 0, 1, ... that fetches each element
+   * as it goes and stops at the first position past the end. It shows the
+   * version of the flags current when it was created, for as long as no
+   * video is added or removed: until then that version's ordinals are the
+   * store's.
+   */
+  private final class ViewIterator implements Iterator<Video> {
+    private final IntUnaryOperator ordinalAt;
+    private final FlagSet flags;
+    private final int layout;
+    private int position;
+    private Video next;
+
+    ViewIterator(IntUnaryOperator ordinalAt) {
+      this.ordinalAt = ordinalAt;
+      lock.readLock().lock();
+      try {
+        this.flags = VideoLibrary.this.flags;
+        this.layout = VideoLibrary.this.layout;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (next == null) {
+        lock.readLock().lock();
+        try {
+          if (position >= store.size()) {
+            return false;
+          }
+          FlagSet current = layout == VideoLibrary.this.layout ? flags : VideoLibrary.this.flags;
+          next = video(current, ordinalAt.applyAsInt(position));
+        } finally {
+          lock.readLock().unlock();
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public Video next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Video result = next;
+      next = null;
+      position++;
+      return result;
+    }
   }
 }
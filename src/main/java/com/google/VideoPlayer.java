@@ -1,304 +1,267 @@
 package com.google;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
 
+/**
+ * The command line video player. Commands are carried out by a
+ * {@link PlayerSession}, and the results it returns are printed by a
+ * {@link ResultRenderer}.
+ */
 public class VideoPlayer {
 
-    private final VideoLibrary videoLibrary;
-    private final PlaylistManager playlistManager;
-    private Video currentVideo;
-    private boolean videoPaused;
+    private final PlayerSession session;
+    private final ResultRenderer renderer;
+    private final PrintStream out;
+    private final BufferedReader input;
+    private final InputListener inputListener;
+
+    /**
+     * Told when the player stops to wait for the answer to a search prompt
+     * and when the answer has been read, so that the time spent waiting can
+     * be told apart from the time spent on the command.
+     */
+    interface InputListener {
+        InputListener NONE = new InputListener() {
+            @Override
+            public void awaitingInput() {
+            }
+
+            @Override
+            public void inputReceived() {
+            }
+        };
+
+        void awaitingInput();
+
+        void inputReceived();
+    }
 
     public VideoPlayer() {
-        this.videoLibrary = new VideoLibrary();
-        this.playlistManager = new PlaylistManager(videoLibrary);
-        this.currentVideo = null;
+        this(System.out, null, null);
     }
 
-    public void numberOfVideos() {
-        System.out.printf("%s videos in the library%n", videoLibrary.getVideos().size());
+    /**
+     * Creates a player whose PLAY_RANDOM draws from the given generator, so a
+     * seeded generator gives a reproducible sequence. With null, each draw
+     * uses {@link java.util.concurrent.ThreadLocalRandom}.
+     */
+    VideoPlayer(Random random) {
+        this(System.out, null, random);
     }
 
-    public void showAllVideos() {
-        List<Video> videos = videoLibrary.getVideos();
-        Collections.sort(videos);
+    /**
+     * Creates a player that writes all its output to {@code out}. Answers to
+     * search prompts are read a line at a time from {@code input}, or from
+     * System.in when it is null.
+     */
+    VideoPlayer(PrintStream out, BufferedReader input, Random random) {
+        this(newSession(random), out, input);
+    }
 
-        StringBuilder str = new StringBuilder();
+    /**
+     * Creates a player for an existing session, for example one of many
+     * sessions sharing a library.
+     */
+    VideoPlayer(PlayerSession session, PrintStream out, BufferedReader input) {
+        this(session, out, input, InputListener.NONE);
+    }
 
-        str.append("Here's a list of all available videos:");
-        for (Video video : videos) {
-            str.append("\n");
-            str.append(" ");
-            str.append(video);
-        }
+    /**
+     * Creates a player for an existing session that tells {@code inputListener}
+     * whenever it waits for an answer to a search prompt.
+     */
+    VideoPlayer(PlayerSession session, PrintStream out, BufferedReader input,
+            InputListener inputListener) {
+        this.session = session;
+        this.renderer = new ResultRenderer();
+        this.out = out;
+        this.input = input;
+        this.inputListener = inputListener;
+    }
+
+    private static PlayerSession newSession(Random random) {
+        VideoLibrary videoLibrary = new VideoLibrary();
+        return new PlayerSession(videoLibrary, PlaylistManager.fromSystemProperty(videoLibrary),
+                random);
+    }
 
-        System.out.println(str);
+    /** Returns the session that carries out this player's commands. */
+    PlayerSession getSession() {
+        return session;
+    }
+
+    private void print(CommandResult result) {
+        renderer.render(result, out);
+    }
+
+    public void numberOfVideos() {
+        print(session.numberOfVideos());
+    }
+
+    public void showAllVideos() {
+        print(session.showAllVideos());
+    }
+
+    public void showAllVideos(int page, int pageSize) {
+        print(session.showAllVideos(page, pageSize));
     }
 
     public void playVideo(String videoId) {
-        Video video = videoLibrary.getVideo(videoId);
-        if (video == null) {
-            System.out.println("Cannot play video: Video does not exist");
-            return;
-        }
-        if (video.isFlagged()) {
-            System.out.println("Cannot play video: Video is currently flagged (reason: " + video.getFlagReason() + ")");
-            return;
-        }
-        if (currentVideo != null) {
-            System.out.println("Stopping video: " + currentVideo.getTitle());
-        }
-        currentVideo = video;
-        videoPaused = false;
-        System.out.println("Playing video: " + currentVideo.getTitle());
+        print(session.playVideo(videoId));
     }
 
     public void stopVideo() {
-        if (currentVideo == null) {
-            System.out.println("Cannot stop video: No video is currently playing");
-            return;
-        }
-        System.out.println("Stopping video: " + currentVideo.getTitle());
-        currentVideo = null;
+        print(session.stopVideo());
     }
 
     public void playRandomVideo() {
-        List<Video> videos = videoLibrary.getVideos().stream()
-                .filter(video -> !video.isFlagged())
-                .collect(Collectors.toList());
-        if (videos.isEmpty()) {
-            System.out.println("No videos available");
-            return;
-        }
-        Random random = new Random();
-        Video randomVideo = videos.get(random.nextInt(videos.size()));
-        playVideo(randomVideo.getVideoId());
+        print(session.playRandomVideo());
     }
 
     public void pauseVideo() {
-        if (currentVideo == null) {
-            System.out.println("Cannot pause video: No video is currently playing");
-            return;
-        }
-        if (videoPaused) {
-            System.out.println("Video already paused: " + currentVideo.getTitle());
-            return;
-        }
-        videoPaused = true;
-        System.out.println("Pausing video: " + currentVideo.getTitle());
+        print(session.pauseVideo());
     }
 
     public void continueVideo() {
-        if (currentVideo == null) {
-            System.out.println("Cannot continue video: No video is currently playing");
-            return;
-        }
-        if (!videoPaused) {
-            System.out.println("Cannot continue video: Video is not paused");
-            return;
-        }
-        videoPaused = false;
-        System.out.println("Continuing video: " + currentVideo.getTitle());
+        print(session.continueVideo());
     }
 
     public void showPlaying() {
-        if (currentVideo == null) {
-            System.out.println("No video is currently playing");
-            return;
-        }
-        StringBuilder str = new StringBuilder();
-        str.append("Currently playing: ");
-        str.append(currentVideo);
-        if (videoPaused) {
-            str.append(" - PAUSED");
-        }
-        System.out.println(str);
+        print(session.showPlaying());
     }
 
     public void createPlaylist(String playlistName) {
-        System.out.println(playlistManager.createPlaylist(playlistName));
+        print(session.createPlaylist(playlistName));
     }
 
     public void addVideoToPlaylist(String playlistName, String videoId) {
-        if (!playlistManager.playlistExists(playlistName)) {
-            System.out.println("Cannot add video to " + playlistName + ": Playlist does not exist");
-            return;
-        }
-
-        if (videoLibrary.getVideo(videoId) == null) {
-            System.out.println("Cannot add video to " + playlistName + ": Video does not exist");
-            return;
-        }
-        Video video = videoLibrary.getVideo(videoId);
-        if (video.isFlagged()) {
-            System.out.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: "
-                    + video.getFlagReason() + ")");
-            return;
-        }
-        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
-
-        if (videoPlaylist.containsVideo(videoId)) {
-            System.out.println("Cannot add video to " + playlistName + ": Video already added");
-            return;
-        }
-
-        playlistManager.addToPlayList(playlistName, videoId);
-        System.out.println("Added video to " + playlistName + ": " + video.getTitle());
+        print(session.addVideoToPlaylist(playlistName, videoId));
     }
 
     public void showAllPlaylists() {
-        List<String> playlistNames = playlistManager.playListNames();
-        if (playlistNames.isEmpty()) {
-            System.out.println("No playlists exist yet");
-            return;
-        }
-        System.out.println("Showing all playlists:");
-        for (String playlistName : playlistNames) {
-            System.out.println(" " + playlistName);
-        }
+        print(session.showAllPlaylists());
     }
 
     public void showPlaylist(String playlistName) {
-        if (!playlistManager.playlistExists(playlistName)) {
-            System.out.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
-            return;
-        }
-        System.out.println("Showing playlist: " + playlistName);
-        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
-        if (videoPlaylist.getVideosIds().isEmpty()) {
-            System.out.println(" No videos here yet");
-            return;
-        }
-        List<Video> videos = videoPlaylist.getVideosIds().stream()
-                .map(videoLibrary::getVideo)
-                .collect(Collectors.toList());
-        String str;
-        for (Video video : videos) {
-            System.out.println(video);
-        }
+        print(session.showPlaylist(playlistName));
     }
 
     public void removeFromPlaylist(String playlistName, String videoId) {
-        if (!playlistManager.playlistExists(playlistName)) {
-            System.out.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
-            return;
-        }
-        if (videoLibrary.getVideo(videoId) == null) {
-            System.out.println("Cannot remove video from " + playlistName + ": Video does not exist");
-            return;
-        }
-        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
-        if (!videoPlaylist.containsVideo(videoId)) {
-            System.out.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
-            return;
-        }
-        videoPlaylist.removeVideo(videoId);
-        System.out.println("Removed video from " + playlistName + ": " + videoLibrary.getVideo(videoId).getTitle());
+        print(session.removeFromPlaylist(playlistName, videoId));
     }
 
     public void clearPlaylist(String playlistName) {
-        if (!playlistManager.playlistExists(playlistName)) {
-            System.out.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
-            return;
-        }
-        VideoPlaylist videoPlaylist = playlistManager.getPlaylist(playlistName);
-        videoPlaylist.removeAllVideos();
-        System.out.println("Successfully removed all videos from " + playlistName);
+        print(session.clearPlaylist(playlistName));
     }
 
     public void deletePlaylist(String playlistName) {
-        if (!playlistManager.playlistExists(playlistName)) {
-            System.out.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
-            return;
-        }
-        playlistManager.deletePlaylist(playlistName);
-        System.out.println("Deleted playlist: " + playlistName);
+        print(session.deletePlaylist(playlistName));
     }
 
     public void searchVideos(String searchTerm) {
-        List<Video> videos = videoLibrary.getVideos().stream()
-                .filter(video -> !video.isFlagged())
-                .filter(video -> video.getTitle().toLowerCase().contains(searchTerm.toLowerCase()))
-                .sorted().collect(Collectors.toList());
-        if (videos.isEmpty()) {
-            System.out.println("No search results for " + searchTerm);
-            return;
-        }
-        System.out.println("Here are the results for " + searchTerm + ":");
-        for (int i = 0; i < videos.size(); i++) {
-            System.out.println(" " + (i + 1) + ") " + videos.get(i));
-        }
-        System.out.println("Would you like to play any of the above? If yes, specify the number of the video.");
-        System.out.println("If your answer is not a valid number, we will assume it's a no.");
-        Scanner scanner = new Scanner(System.in);
-        if (scanner.hasNextInt()) {
-            int n = scanner.nextInt();
-            if (n >= 1 && n <= videos.size()) {
-                playVideo(videos.get(n - 1).getVideoId());
-            }
-        }
+        printSearchResults(session.searchVideos(searchTerm));
     }
 
     public void searchVideosWithTag(String videoTag) {
-        List<Video> videos = videoLibrary.getVideos().stream()
-                .filter(video -> !video.isFlagged())
-                .filter(video -> video.getTags().contains(videoTag.toLowerCase()))
-                .sorted().collect(Collectors.toList());
-        if (videos.isEmpty()) {
-            System.out.println("No search results for " + videoTag);
-            return;
-        }
-        System.out.println("Here are the results for " + videoTag + ":");
-        for (int i = 0; i < videos.size(); i++) {
-            System.out.println(" " + (i + 1) + ") " + videos.get(i));
-        }
-        System.out.println("Would you like to play any of the above? If yes, specify the number of the video.");
-        System.out.println("If your answer is not a valid number, we will assume it's a no.");
-        Scanner scanner = new Scanner(System.in);
-        if (scanner.hasNextInt()) {
-            int n = scanner.nextInt();
-            if (n >= 1 && n <= videos.size()) {
-                playVideo(videos.get(n - 1).getVideoId());
-            }
-        }
+        printSearchResults(session.searchVideosWithTag(videoTag));
+    }
+
+    public void searchVideos(String searchTerm, int page, int pageSize) {
+        printSearchResults(session.searchVideos(searchTerm, page, pageSize));
+    }
+
+    public void searchVideosWithTag(String videoTag, int page, int pageSize) {
+        printSearchResults(session.searchVideosWithTag(videoTag, page, pageSize));
+    }
+
+    public void completeVideos(String query, int limit) {
+        printSearchResults(session.completeVideos(query, limit));
+    }
+
+    public void searchVideosFuzzy(String query, int limit) {
+        printSearchResults(session.searchVideosFuzzy(query, limit));
+    }
+
+    public void searchVideosRanked(String query, int limit) {
+        printSearchResults(session.searchVideosRanked(query, limit));
+    }
+
+    /** Shows the next page of the last paged listing, offering to play a search result. */
+    public void nextPage() {
+        printSearchResults(session.nextPage());
     }
 
     public void flagVideo(String videoId) {
-        flagVideo(videoId, "Not supplied");
+        flagVideo(videoId, VideoLibrary.DEFAULT_FLAG_REASON);
     }
 
     public void flagVideo(String videoId, String reason) {
-        Video video = videoLibrary.getVideo(videoId);
-        if (video == null) {
-            System.out.println("Cannot flag video: Video does not exist");
-            return;
-        }
-        if (video.isFlagged()) {
-            System.out.println("Cannot flag video: Video is already flagged");
-            return;
-        }
-        video.flag(reason);
-        if (currentVideo == video) {
-            stopVideo();
-        }
-        System.out.println("Successfully flagged video: " + video.getTitle()
-                + " (reason: " + video.getFlagReason() + ")");
+        print(session.flagVideo(videoId, reason));
     }
 
     public void allowVideo(String videoId) {
-        Video video = videoLibrary.getVideo(videoId);
-        if (video == null) {
-            System.out.println("Cannot remove flag from video: Video does not exist");
-            return;
+        print(session.allowVideo(videoId));
+    }
+
+    public void flagVideos(String by, String target) {
+        flagVideos(by, target, VideoLibrary.DEFAULT_FLAG_REASON);
+    }
+
+    public void flagVideos(String by, String target, String reason) {
+        print(session.flagVideos(by, target, reason));
+    }
+
+    public void allowVideos(String by, String target) {
+        print(session.allowVideos(by, target));
+    }
+
+    private void printSearchResults(CommandResult result) {
+        print(result);
+        if (result.getStatus() == CommandResult.Status.SEARCH_RESULTS) {
+            offerToPlay(result.getVideos(), 1);
+        } else if (result.getStatus() == CommandResult.Status.SEARCH_RESULTS_PAGE) {
+            offerToPlay(result.getVideos(), result.getFirstNumber());
         }
-        if (!video.isFlagged()) {
-            System.out.println("Cannot remove flag from video: Video is not flagged");
-            return;
+    }
+
+    /** Offers to play one of the videos, numbered from {@code first}. */
+    private void offerToPlay(List<Video> videos, int first) {
+        out.println("Would you like to play any of the above? If yes, specify the number of the video.");
+        out.println("If your answer is not a valid number, we will assume it's a no.");
+        int n = readSelection() - first;
+        if (n >= 0 && n < videos.size()) {
+            print(session.playVideo(videos.get(n)));
         }
-        video.removeFlag();
+    }
 
-        System.out.println("Successfully removed flag from video: " + video.getTitle()
-                + " (reason: " + video.getFlagReason() + ")");
+    /**
+     * Reads the user's answer to a search prompt. Returns 0 if the answer is
+     * not a number or cannot be read. With no input reader the answer is read from System.in;
+     * otherwise the next line of the reader is the answer. The prompt is
+     * flushed first, since the user cannot answer what they have not seen.
+     */
+    private int readSelection() {
+        out.flush();
+        inputListener.awaitingInput();
+        try {
+            if (input == null) {
+                Scanner scanner = new Scanner(System.in);
+                return scanner.hasNextInt() ? scanner.nextInt() : 0;
+            }
+            String line = input.readLine();
+            return line == null ? 0 : Integer.parseInt(line.strip());
+        } catch (NumberFormatException e) {
+            return 0;
+        } catch (IOException e) {
+            // The input was closed, as when a client disconnects: no answer.
+            return 0;
+        } finally {
+            inputListener.inputReceived();
+        }
     }
-}
\ No newline at end of file
+}
@@ -2,11 +2,17 @@ package com.google;
 
 import java.util.*;
 
-/** A class used to represent a Playlist */
+/**
+ * A class used to represent a Playlist.
+ *
+ * <p>Each playlist is its own lock, so sessions working on different
+ * playlists never contend, and each method is atomic.
+ */
 class VideoPlaylist {
 
     private final String name;
     private final Set<String> videos;
+    private boolean deleted;
 
 
     VideoPlaylist(String name) {
@@ -14,26 +20,40 @@ class VideoPlaylist {
         this.videos = new LinkedHashSet<>();
     }
 
-    public boolean containsVideo(String videoId) {
+    public synchronized boolean containsVideo(String videoId) {
         return videos.contains(videoId);
     }
 
-    public void addVideo(String videoId) {
-        videos.add(videoId);
+    /** Adds the video. Returns false if it was already in the playlist. */
+    public synchronized boolean addVideo(String videoId) {
+        return videos.add(videoId);
     }
 
-    public void removeVideo(String videoId) {
-        videos.remove(videoId);
+    /** Removes the video. Returns false if it was not in the playlist. */
+    public synchronized boolean removeVideo(String videoId) {
+        return videos.remove(videoId);
     }
-    public Set<String> getVideosIds() {
-        return videos;
+
+    /** Returns a copy of the video ids, in the order they were added. */
+    public synchronized List<String> getVideosIds() {
+        return new ArrayList<>(videos);
     }
 
     public String getName() {
         return name;
     }
 
-    public void removeAllVideos() {
+    public synchronized void removeAllVideos() {
         videos.clear();
     }
+
+    /** Records that the playlist has been deleted from its manager. */
+    synchronized void markDeleted() {
+        deleted = true;
+    }
+
+    /** Returns whether the playlist has been deleted from its manager. */
+    synchronized boolean isDeleted() {
+        return deleted;
+    }
 }
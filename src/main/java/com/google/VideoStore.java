@@ -0,0 +1,92 @@
+package com.google;
+
+import java.util.Locale;
+
+/**
+ * Holds a library's videos by dense ordinal, and finds them by id.
+ *
+ * <p>Removing a video moves the last video into the freed ordinal, so that
+ * ordinals stay dense; {@link VideoLibrary} relies on this to keep its
+ * indexes in step.
+ *
+ * <p>A store may hand out a new {@link Video} object on every read rather
+ * than keep one per video, so callers must compare videos by id, not by
+ * identity. Flags are not kept here: the library holds them in its own flag
+ * set, so flagging a video never writes to the store.
+ *
+ * <p>Stores are not thread-safe: the library calls them under its lock.
+ */
+interface VideoStore {
+
+  /** The system property that selects the store libraries are created with. */
+  String KIND_PROPERTY = "video.store";
+
+  /** The kinds of store a library can be created with. */
+  enum Kind {
+    /** One {@link Video} object per video, found through a hash map. */
+    HEAP,
+    /** Primitive columns, with videos created on demand; see {@link ColumnarVideoStore}. */
+    COLUMNAR,
+    /** Records in direct buffers outside the heap; see {@link OffHeapVideoStore}. */
+    OFF_HEAP;
+
+    /** Creates an empty store of this kind. */
+    VideoStore create() {
+      switch (this) {
+        case COLUMNAR:
+          return new ColumnarVideoStore();
+        case OFF_HEAP:
+          return new OffHeapVideoStore();
+        default:
+          return new HeapVideoStore();
+      }
+    }
+
+    /**
+     * Returns the kind named by the {@value #KIND_PROPERTY} system property,
+     * or {@link #HEAP} if it is not set.
+     */
+    static Kind fromSystemProperty() {
+      String name = System.getProperty(KIND_PROPERTY);
+      return name == null ? HEAP : parse(name);
+    }
+
+    /** Returns the kind with the given name, ignoring case. */
+    static Kind parse(String name) {
+      try {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown video store: " + name);
+      }
+    }
+  }
+
+  /** Returns the number of videos. */
+  int size();
+
+  /** Returns the video with the given ordinal, between 0 and size() - 1. */
+  Video get(int ordinal);
+
+  /**
+   * Returns the title of the video with the given ordinal, which a store
+   * may find without creating the whole video.
+   */
+  default String titleOf(int ordinal) {
+    return get(ordinal).getTitle();
+  }
+
+  /** Returns the ordinal of the video with the given id, or -1 if there is none. */
+  int ordinalOf(String videoId);
+
+  /**
+   * Appends a video, giving it ordinal size() - 1. The id must not already
+   * be in the store.
+   */
+  void add(Video video);
+
+  /**
+   * Removes the video with the given ordinal, moving the last video into
+   * its place.
+   */
+  void remove(int ordinal);
+}
@@ -0,0 +1,93 @@
+package com.google;
+
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks 1..n with probability proportional to 1 / rank^exponent. An
+ * exponent of 0 gives a uniform distribution; around 1 is typical of tag and
+ * word frequencies.
+ *
+ * <p>Uses rejection-inversion sampling (Hormann and Derflinger, 1996), which
+ * takes constant time and memory however large n is, so it can pick among
+ * millions of videos without a table of cumulative weights.
+ */
+class ZipfDistribution {
+
+  private final int n;
+  private final double exponent;
+  private final double hIntegralX1;
+  private final double hIntegralN;
+  private final double s;
+
+  ZipfDistribution(int n, double exponent) {
+    if (n < 1) {
+      throw new IllegalArgumentException("n must be positive: " + n);
+    }
+    if (exponent < 0) {
+      throw new IllegalArgumentException("exponent must not be negative: " + exponent);
+    }
+    this.n = n;
+    this.exponent = exponent;
+    this.hIntegralX1 = hIntegral(1.5) - 1;
+    this.hIntegralN = hIntegral(n + 0.5);
+    this.s = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+  }
+
+  int size() {
+    return n;
+  }
+
+  /** Returns a rank between 1 and n. */
+  int sample(SplittableRandom random) {
+    if (exponent == 0) {
+      return 1 + random.nextInt(n);
+    }
+    while (true) {
+      double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+      double x = hIntegralInverse(u);
+      int k = (int) (x + 0.5);
+      if (k < 1) {
+        k = 1;
+      } else if (k > n) {
+        k = n;
+      }
+      if (k - x <= s || u >= hIntegral(k + 0.5) - h(k)) {
+        return k;
+      }
+    }
+  }
+
+  /** The integral of h, shifted so that it is continuous in the exponent. */
+  private double hIntegral(double x) {
+    double logX = Math.log(x);
+    return expm1OverX((1 - exponent) * logX) * logX;
+  }
+
+  private double h(double x) {
+    return Math.exp(-exponent * Math.log(x));
+  }
+
+  private double hIntegralInverse(double x) {
+    double t = x * (1 - exponent);
+    if (t < -1) {
+      t = -1;
+    }
+    return Math.exp(log1pOverX(t) * x);
+  }
+
+  /** log(1 + x) / x, accurate near 0. */
+  private static double log1pOverX(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.log1p(x) / x;
+    }
+    return 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+  }
+
+  /** (e^x - 1) / x, accurate near 0. */
+  private static double expm1OverX(double x) {
+    if (Math.abs(x) > 1e-8) {
+      return Math.expm1(x) / x;
+    }
+    return 1 + x * 0.5 * (1 + x * (1.0 / 3) * (1 + 0.25 * x));
+  }
+}
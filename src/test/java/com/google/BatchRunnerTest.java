@@ -0,0 +1,52 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import org.junit.jupiter.api.Test;
+
+public class BatchRunnerTest {
+
+  @Test
+  public void testRunsScriptAndAnswersSearchPromptsFromScript() throws IOException {
+    String script = String.join("\n",
+        "NUMBER_OF_VIDEOS",
+        "SEARCH_VIDEOS cat",
+        "2",
+        "  SHOW_PLAYING  ",
+        "SEARCH_VIDEOS_WITH_TAG #dog",
+        "no",
+        "PLAY",
+        "EXIT",
+        "STOP");
+    var bytes = new ByteArrayOutputStream();
+    var out = new PrintStream(bytes, false);
+
+    var stats = new BatchRunner(new BufferedReader(new StringReader(script)), out).run();
+
+    assertArrayEquals(new String[] {
+        "5 videos in the library",
+        "Here are the results for cat:",
+        " 1) Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        " 2) Another Cat Video (another_cat_video_id) [#cat #animal]",
+        "Would you like to play any of the above? If yes, specify the number of the video.",
+        "If your answer is not a valid number, we will assume it's a no.",
+        "Playing video: Another Cat Video",
+        "Currently playing: Another Cat Video (another_cat_video_id) [#cat #animal]",
+        "Here are the results for #dog:",
+        " 1) Funny Dogs (funny_dogs_video_id) [#dog #animal]",
+        "Would you like to play any of the above? If yes, specify the number of the video.",
+        "If your answer is not a valid number, we will assume it's a no.",
+        "Please enter PLAY command followed by video_id.",
+    }, bytes.toString().split("\\r?\\n"));
+    assertEquals(5, stats.getCommandCount());
+    assertTrue(stats.percentile("SEARCH_VIDEOS", 99) > 0);
+    assertEquals(-1, stats.percentile("STOP", 50));
+  }
+}
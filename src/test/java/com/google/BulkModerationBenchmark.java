@@ -0,0 +1,93 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares flagging a list of videos, and allowing them again, one command
+ * at a time with flagging them in bulk. Results are rendered to a discarding
+ * stream, as the command line would print them. With {@code journaled} set
+ * the library records its flags in a {@link ModerationJournal}, which the
+ * bulk commands sync once per command rather than once per video.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkModerationBenchmark {
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"10000", "100000"})
+  int videos;
+
+  @Param({"false", "true"})
+  boolean journaled;
+
+  private PlayerSession session;
+  private List<String> videoIds;
+  private ResultRenderer renderer;
+  private PrintStream out;
+  private ModerationJournal journal;
+
+  @Setup
+  public void setUp() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    if (journaled) {
+      journal = ModerationJournal.open(Files.createTempDirectory("moderation"));
+      videoLibrary.useModerationJournal(journal);
+    }
+    session = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null);
+    Random random = new Random(42);
+    videoIds = new ArrayList<>(videos);
+    for (int i = 0; i < videos; i++) {
+      videoIds.add(CatalogGenerator.videoId(random.nextInt(size)));
+    }
+    renderer = new ResultRenderer();
+    out = new PrintStream(OutputStream.nullOutputStream());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  @Benchmark
+  public void oneByOne() {
+    for (String videoId : videoIds) {
+      renderer.render(session.flagVideo(videoId, "review"), out);
+    }
+    for (String videoId : videoIds) {
+      renderer.render(session.allowVideo(videoId), out);
+    }
+  }
+
+  @Benchmark
+  public void bulk() {
+    renderer.render(session.flagVideos("IDS review.txt", videoIds, "review"), out);
+    renderer.render(session.allowVideos("IDS review.txt", videoIds), out);
+  }
+}
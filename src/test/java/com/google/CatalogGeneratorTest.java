@@ -0,0 +1,88 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogGeneratorTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testCatalogLoadsAndIsReproducible() throws IOException {
+    var generator = new CatalogGenerator(7);
+    Path first = tempDir.resolve("first.txt");
+    Path second = tempDir.resolve("second.txt");
+    generator.writeCatalog(first, 2000);
+    new CatalogGenerator(7).writeCatalog(second, 2000);
+
+    assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    var videoLibrary = new VideoLibrary(first);
+    assertEquals(2000, videoLibrary.size());
+    Video video = videoLibrary.getVideo(CatalogGenerator.videoId(1234));
+    assertEquals(generator.video(1234).getTitle(), video.getTitle());
+    assertEquals(generator.video(1234).getTags(), video.getTags());
+  }
+
+  @Test
+  public void testTagsFollowZipfDistribution() {
+    var generator = new CatalogGenerator(7, List.of("word"), 0, 50, 1.2, 0);
+    int[] counts = new int[50];
+    for (int i = 0; i < 5000; i++) {
+      for (String tag : generator.video(i).getTags()) {
+        counts[Integer.parseInt(tag.substring("#tag".length()))]++;
+      }
+    }
+    assertTrue(counts[0] > 2 * counts[4]);
+    assertTrue(counts[4] > counts[40]);
+  }
+
+  @Test
+  public void testZipfSamplesStayInRange() {
+    var random = new SplittableRandom(1);
+    for (double exponent : new double[] {0, 0.5, 1, 2}) {
+      var zipf = new ZipfDistribution(10, exponent);
+      int[] counts = new int[11];
+      for (int i = 0; i < 10000; i++) {
+        counts[zipf.sample(random)]++;
+      }
+      assertEquals(0, counts[0]);
+      assertTrue(counts[1] > 0 && counts[10] > 0);
+      if (exponent > 0) {
+        assertTrue(counts[1] > counts[10]);
+      }
+    }
+  }
+
+  @Test
+  public void testTraceReplaysAgainstCatalog() throws IOException {
+    var generator = new CatalogGenerator(7, CatalogGenerator.DEFAULT_VOCABULARY, 1, 100, 1, 0.1);
+    Path catalog = tempDir.resolve("videos.txt");
+    Path trace = tempDir.resolve("trace.txt");
+    generator.writeCatalog(catalog, 500);
+    generator.writeTrace(trace, 500, 2000, CatalogGenerator.DEFAULT_MIX);
+
+    long flagged = Files.lines(trace).takeWhile(line -> line.startsWith("FLAG_VIDEO")).count();
+    assertTrue(flagged > 20 && flagged < 100, "flagged " + flagged);
+    var bytes = new ByteArrayOutputStream();
+    try (BufferedReader input = Files.newBufferedReader(trace)) {
+      var stats = new BatchRunner(new VideoLibrary(catalog), input, new PrintStream(bytes)).run();
+      assertEquals(2000 + flagged, stats.getCommandCount());
+    }
+    assertFalse(bytes.toString().contains("Please enter a valid command"));
+    assertFalse(bytes.toString().contains("Cannot play video: Video does not exist"));
+  }
+}
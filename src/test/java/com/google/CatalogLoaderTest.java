@@ -0,0 +1,83 @@
+package com.google;
+
+import static com.google.TestVideos.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogLoaderTest {
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testLoadMatchesSplitBasedParser() throws IOException {
+    List<String> lines = new ArrayList<>(List.of(
+        "Funny Dogs | funny_dogs_video_id |  #dog , #animal",
+        "Video about nothing | nothing_video_id |",
+        "Trailing comma | trailing_id | #a, #b,",
+        "Blank tags | blank_tags_id |   ",
+        "Extra field | extra_id | #x | ignored",
+        "Caf\u00e9 \u00fcber \u65e5\u672c | unicode_id | #\u00e9t\u00e9"));
+    for (int i = 0; i < 500; i++) {
+      lines.add("Video " + i + " | video_" + i + " | #tag" + (i % 7) + " , #other");
+    }
+    Path file = tempDir.resolve("videos.txt");
+    Files.write(file, String.join("\r\n", lines).getBytes(StandardCharsets.UTF_8));
+
+    for (int chunkSize : new int[] {1, 17, 4096, CatalogLoader.DEFAULT_CHUNK_SIZE}) {
+      var result = new CatalogLoader(ForkJoinPool.commonPool(), chunkSize).load(file);
+
+      assertEquals(lines.size(), result.getLineCount());
+      assertEquals(describe(referenceParse(lines)), describe(result.getVideos()));
+      assertTrue(result.getElapsedNanos() > 0);
+    }
+  }
+
+  @Test
+  public void testLoadEmptyFile() throws IOException {
+    Path file = Files.createFile(tempDir.resolve("empty.txt"));
+
+    var result = new CatalogLoader().load(file);
+
+    assertEquals(0, result.getLineCount());
+    assertTrue(result.getVideos().isEmpty());
+  }
+
+  @Test
+  public void testLibraryReportsLoadTime() {
+    var result = new VideoLibrary().getLoadResult();
+
+    assertEquals(5, result.getVideoCount());
+    assertEquals(5, result.getLineCount());
+    assertTrue(result.getLinesPerSecond() > 0);
+  }
+
+  /** The Scanner and String.split parser the library used before. */
+  private static List<Video> referenceParse(List<String> lines) {
+    List<Video> videos = new ArrayList<>();
+    for (String line : lines) {
+      String[] split = line.split("\\|");
+      List<String> tags;
+      if (split.length > 2) {
+        tags = Arrays.stream(split[2].split(",")).map(String::strip)
+            .collect(Collectors.toList());
+      } else {
+        tags = new ArrayList<>();
+      }
+      videos.add(new Video(split[0].strip(), split[1].strip(), tags));
+    }
+    return videos;
+  }
+}
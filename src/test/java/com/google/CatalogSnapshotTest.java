@@ -0,0 +1,115 @@
+package com.google;
+
+import static com.google.TestVideos.describe;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogSnapshotTest {
+
+  @TempDir
+  Path tempDir;
+
+  private void assertSameCatalog(VideoLibrary expected, VideoLibrary actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(describe(expected.getSortedVideos()), describe(actual.getSortedVideos()));
+    for (Video video : expected) {
+      Video loaded = actual.getVideo(video.getVideoId());
+      assertEquals(video.getTitle(), loaded.getTitle());
+      assertEquals(video.getTags(), loaded.getTags());
+    }
+    for (String term : List.of("cat", "ca", "AMAZING", "video", "\u00e9t\u00e9", "zzz", "")) {
+      assertEquals(describe(expected.searchTitles(term)), describe(actual.searchTitles(term)),
+          term);
+    }
+    for (String tag : List.of("#cat", "#animal", "#tag3", "#missing")) {
+      assertEquals(describe(expected.searchTag(tag)), describe(actual.searchTag(tag)), tag);
+    }
+    assertEquals(describe(expected.searchAllTags(List.of("#cat", "#animal"))),
+        describe(actual.searchAllTags(List.of("#cat", "#animal"))));
+    assertEquals(describe(expected.searchAnyTag(List.of("#tag1", "#dog"))),
+        describe(actual.searchAnyTag(List.of("#tag1", "#dog"))));
+  }
+
+  @Test
+  public void testRoundTripMatchesTextLoader() throws IOException {
+    Path catalog = tempDir.resolve("videos.txt");
+    new CatalogGenerator(3).writeCatalog(catalog, 3000);
+    Files.writeString(catalog, "Caf\u00e9 \u00e9t\u00e9 | unicode_\u00e9_id | #\u00e9t\u00e9\n"
+        + "Amazing Cats | amazing_cats_video_id | #cat , #animal\n",
+        StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    var text = new VideoLibrary(catalog);
+    Path snapshot = tempDir.resolve("videos.snapshot");
+    text.writeSnapshot(snapshot);
+
+    assertTrue(CatalogSnapshot.isSnapshot(snapshot));
+    assertFalse(CatalogSnapshot.isSnapshot(catalog));
+    var loaded = VideoLibrary.open(snapshot);
+    assertSameCatalog(text, loaded);
+    assertNull(loaded.getVideo("missing_id"));
+    assertSame(loaded.getVideo("unicode_\u00e9_id"), loaded.getVideo("unicode_\u00e9_id"));
+  }
+
+  @Test
+  public void testBundledCatalogRoundTrip() throws IOException {
+    var text = new VideoLibrary();
+    Path snapshot = tempDir.resolve("videos.snapshot");
+    text.writeSnapshot(snapshot);
+    var loaded = VideoLibrary.open(snapshot);
+    assertSameCatalog(text, loaded);
+
+    Path again = tempDir.resolve("again.snapshot");
+    loaded.writeSnapshot(again);
+    assertArrayEquals(Files.readAllBytes(snapshot), Files.readAllBytes(again));
+  }
+
+  @Test
+  public void testSnapshotLibraryCanBeChanged() throws IOException {
+    var text = new VideoLibrary();
+    Path snapshot = tempDir.resolve("videos.snapshot");
+    text.writeSnapshot(snapshot);
+    var loaded = VideoLibrary.open(snapshot);
+
+    Video cats = loaded.getVideo("amazing_cats_video_id");
+    assertTrue(loaded.flagVideo(cats, "dont_like_cats"));
+    text.flagVideo(text.getVideo("amazing_cats_video_id"), "dont_like_cats");
+    assertEquals(4, loaded.playableCount());
+    assertTrue(loaded.getVideo("amazing_cats_video_id").isFlagged());
+    assertFalse(cats.isFlagged());
+
+    loaded.addVideo(new Video("A New Cat", "new_cat_id", List.of("#cat")));
+    text.addVideo(new Video("A New Cat", "new_cat_id", List.of("#cat")));
+    loaded.removeVideo("funny_dogs_video_id");
+    text.removeVideo("funny_dogs_video_id");
+    assertSameCatalog(text, loaded);
+    assertTrue(loaded.getVideo("amazing_cats_video_id").isFlagged());
+    assertEquals(4, loaded.playableCount());
+  }
+
+  @Test
+  public void testRejectsOtherVersions() throws IOException {
+    Path snapshot = tempDir.resolve("videos.snapshot");
+    new VideoLibrary().writeSnapshot(snapshot);
+    try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, CatalogSnapshot.VERSION + 1),
+          Integer.BYTES);
+    }
+    var e = assertThrows(IOException.class, () -> CatalogSnapshot.open(snapshot));
+    assertTrue(e.getMessage().contains("Unsupported snapshot version"), e.getMessage());
+  }
+}
@@ -0,0 +1,197 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class CommandServerTest {
+
+  private final ByteArrayOutputStream log = new ByteArrayOutputStream();
+  private CommandServer server;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new CommandServer(new VideoLibrary(), 0, 4, new PrintStream(log, true));
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    server.close();
+  }
+
+  @Test
+  public void testSessionsAreIndependent() throws Exception {
+    try (var first = new Client(); var second = new Client()) {
+      assertEquals(List.of("Playing video: Amazing Cats"), first.send("PLAY amazing_cats_video_id"));
+      assertEquals(List.of("No video is currently playing"), second.send("SHOW_PLAYING"));
+      assertEquals(List.of("Successfully created new playlist: shared"),
+          first.send("CREATE_PLAYLIST shared"));
+      assertEquals(List.of("Cannot create playlist: A playlist with the same name already exists"),
+          second.send("CREATE_PLAYLIST SHARED"));
+    }
+  }
+
+  @Test
+  public void testSearchPromptIsShownBeforeTheAnswerIsRead() throws Exception {
+    try (var client = new Client()) {
+      var lines = client.sendUntilSelectionPrompt("SEARCH_VIDEOS cat");
+      assertEquals("Here are the results for cat:", lines.get(0));
+      assertEquals(List.of("Playing video: Another Cat Video"), client.send("2"));
+    }
+  }
+
+  @Test
+  public void testClientAtSearchPromptDoesNotHoldATurn() throws Exception {
+    server.close();
+    server = new CommandServer(new VideoLibrary(), 0, 1, new PrintStream(log, true));
+    try (var idle = new Client(); var busy = new Client()) {
+      idle.sendUntilSelectionPrompt("SEARCH_VIDEOS cat");
+      assertEquals(List.of("5 videos in the library"), busy.send("NUMBER_OF_VIDEOS"));
+      Thread.sleep(200);
+      assertEquals(List.of(), idle.send("no"));
+    }
+    server.close();
+    Matcher closed = Pattern.compile("closed after 1 commands .* p99 ([0-9.]+) us")
+        .matcher(log.toString());
+    for (int connections = 0; connections < 2; connections++) {
+      assertTrue(closed.find(), log.toString());
+      assertTrue(Double.parseDouble(closed.group(1)) < 100_000, log.toString());
+    }
+  }
+
+  @Test
+  public void testConnectionResetAtSearchPromptIsStillLogged() throws Exception {
+    var client = new Client();
+    client.sendUntilSelectionPrompt("SEARCH_VIDEOS cat");
+    client.reset();
+    server.close();
+    assertTrue(log.toString().contains("closed after 1 commands"), log.toString());
+  }
+
+  @Test
+  public void testClientsCannotReadIdFilesByDefault() throws Exception {
+    try (var client = new Client()) {
+      assertEquals(List.of("Cannot read video ids from file: /etc/passwd is not in an allowed "
+          + "directory"), client.send("FLAG_VIDEOS IDS /etc/passwd spam"));
+    }
+  }
+
+  @Test
+  public void testManyConcurrentClients() throws Exception {
+    ExecutorService clients = Executors.newFixedThreadPool(32);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        Callable<Void> task = () -> {
+          try (var client = new Client()) {
+            for (int j = 0; j < 5; j++) {
+              assertEquals(List.of("5 videos in the library"), client.send("NUMBER_OF_VIDEOS"));
+            }
+          }
+          return null;
+        };
+        futures.add(clients.submit(task));
+      }
+      for (Future<Void> future : futures) {
+        future.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+    server.close();
+    assertTrue(log.toString().contains("closed after 5 commands"), log.toString());
+  }
+
+  /** A client that reads each response up to the next prompt. */
+  private final class Client implements AutoCloseable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    Client() throws IOException {
+      socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+      socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10));
+      in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+          StandardCharsets.UTF_8));
+      out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+      readResponse();
+    }
+
+    List<String> send(String... lines) throws IOException {
+      for (String line : lines) {
+        out.println(line);
+      }
+      return readResponse();
+    }
+
+    /**
+     * Sends a search and reads its results up to the question of which one
+     * to play, without answering it.
+     */
+    List<String> sendUntilSelectionPrompt(String line) throws IOException {
+      out.println(line);
+      List<String> lines = new ArrayList<>();
+      String next;
+      while ((next = in.readLine()) != null) {
+        lines.add(next);
+        if (next.startsWith("If your answer is not a valid number")) {
+          break;
+        }
+      }
+      return lines;
+    }
+
+    private List<String> readResponse() throws IOException {
+      List<String> lines = new ArrayList<>();
+      StringBuilder line = new StringBuilder();
+      while (true) {
+        int c = in.read();
+        if (c < 0) {
+          return lines;
+        }
+        if (c == '\n') {
+          lines.add(line.toString());
+          line.setLength(0);
+        } else if (c != '\r') {
+          line.append((char) c);
+          if (line.toString().equals(CommandServer.PROMPT)) {
+            return lines;
+          }
+        }
+      }
+    }
+
+    /** Drops the connection without saying goodbye, so that the server sees a reset. */
+    void reset() throws IOException {
+      socket.setSoLinger(true, 0);
+      socket.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.println("EXIT");
+      socket.close();
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ConcurrencyStressTest {
+
+  private static final int THREADS = 8;
+  private static final int VIDEOS = 2000;
+
+  private VideoLibrary videoLibrary;
+  private PlaylistManager playlistManager;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() {
+    List<Video> videos = new ArrayList<>();
+    for (int i = 0; i < VIDEOS; i++) {
+      videos.add(new Video("Video " + i, "video_" + i, List.of("#tag" + i % 10)));
+    }
+    videoLibrary = new VideoLibrary(videos);
+    playlistManager = new PlaylistManager(videoLibrary);
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  public void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void testConcurrentFlagsAreNotLost() throws Exception {
+    AtomicInteger flagged = new AtomicInteger();
+    runConcurrently(thread -> {
+      var session = newSession(thread);
+      var random = new Random(thread);
+      for (int i = 0; i < 5000; i++) {
+        String videoId = "video_" + random.nextInt(VIDEOS);
+        switch (random.nextInt(5)) {
+          case 0:
+            if (session.flagVideo(videoId, "reason").getStatus()
+                == CommandResult.Status.FLAGGED) {
+              flagged.incrementAndGet();
+            }
+            break;
+          case 1:
+            if (session.allowVideo(videoId).getStatus() == CommandResult.Status.ALLOWED) {
+              flagged.decrementAndGet();
+            }
+            break;
+          case 2:
+            session.searchVideos("deo 1");
+            break;
+          case 3:
+            session.searchVideosWithTag("#tag3");
+            break;
+          default:
+            session.playRandomVideo();
+            break;
+        }
+      }
+    });
+
+    int flaggedNow = 0;
+    for (Video video : videoLibrary) {
+      if (video.isFlagged()) {
+        flaggedNow++;
+      }
+    }
+    assertEquals(flagged.get(), flaggedNow);
+    assertEquals(VIDEOS - flaggedNow, videoLibrary.playableCount());
+  }
+
+  @Test
+  public void testEachVideoIsFlaggedExactlyOnce() throws Exception {
+    AtomicInteger flagged = new AtomicInteger();
+    runConcurrently(thread -> {
+      var session = newSession(thread);
+      for (int i = 0; i < VIDEOS; i++) {
+        if (session.flagVideo("video_" + i, "thread " + thread).getStatus()
+            == CommandResult.Status.FLAGGED) {
+          flagged.incrementAndGet();
+        }
+      }
+    });
+
+    assertEquals(VIDEOS, flagged.get());
+    assertEquals(0, videoLibrary.playableCount());
+    assertEquals(CommandResult.Status.NO_VIDEOS_AVAILABLE,
+        newSession(0).playRandomVideo().getStatus());
+  }
+
+  @Test
+  public void testConcurrentPlaylistUpdatesAreNotLost() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    runConcurrently(thread -> {
+      var session = newSession(thread);
+      if (session.createPlaylist("Shared").getStatus()
+          == CommandResult.Status.PLAYLIST_CREATED) {
+        created.incrementAndGet();
+      }
+      session.createPlaylist("own_" + thread);
+      for (int i = thread; i < VIDEOS; i += THREADS) {
+        assertEquals(CommandResult.Status.ADDED_TO_PLAYLIST,
+            session.addVideoToPlaylist("SHARED", "video_" + i).getStatus());
+        session.addVideoToPlaylist("own_" + thread, "video_" + i);
+      }
+      for (int i = thread; i < VIDEOS; i += 2 * THREADS) {
+        assertEquals(CommandResult.Status.REMOVED_FROM_PLAYLIST,
+            session.removeFromPlaylist("shared", "video_" + i).getStatus());
+      }
+    });
+
+    assertEquals(1, created.get());
+    assertEquals(VIDEOS / 2, playlistManager.getPlaylist("shared").getVideosIds().size());
+    for (int thread = 0; thread < THREADS; thread++) {
+      assertEquals(VIDEOS / THREADS,
+          playlistManager.getPlaylist("own_" + thread).getVideosIds().size());
+    }
+    assertEquals(THREADS + 1, playlistManager.playListNames().size());
+  }
+
+  private PlayerSession newSession(int seed) {
+    return new PlayerSession(videoLibrary, playlistManager, new Random(seed));
+  }
+
+  private interface Work {
+    void run(int thread) throws Exception;
+  }
+
+  private void runConcurrently(Work work) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int thread = 0; thread < THREADS; thread++) {
+      int id = thread;
+      Callable<Void> task = () -> {
+        start.await();
+        work.run(id);
+        return null;
+      };
+      futures.add(executor.submit(task));
+    }
+    start.countDown();
+    for (Future<Void> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+    assertTrue(futures.stream().allMatch(Future::isDone));
+  }
+}
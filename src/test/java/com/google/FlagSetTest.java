@@ -0,0 +1,147 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+public class FlagSetTest {
+
+  @Test
+  public void testMatchesTreeMapAcrossChanges() {
+    var random = new Random(17);
+    var expected = new TreeMap<Integer, String>();
+    FlagSet flags = FlagSet.EMPTY;
+    int range = 5000;
+    for (int i = 0; i < 50_000; i++) {
+      int ordinal = random.nextInt(range);
+      int action = random.nextInt(3);
+      if (action == 0) {
+        flags = flags.with(ordinal, "reason " + (i % 7));
+        expected.put(ordinal, "reason " + (i % 7));
+      } else if (action == 1) {
+        flags = flags.without(ordinal);
+        expected.remove(ordinal);
+      } else {
+        int to = random.nextInt(range);
+        String reason = expected.remove(ordinal);
+        expected.remove(to);
+        if (reason != null) {
+          expected.put(to, reason);
+        }
+        flags = flags.moved(ordinal, to);
+      }
+    }
+    assertEquals(expected.size(), flags.size());
+    for (int ordinal = 0; ordinal < range; ordinal++) {
+      assertEquals(expected.get(ordinal), flags.reason(ordinal), "ordinal " + ordinal);
+    }
+    int k = 0;
+    for (int ordinal = 0; ordinal < range + 100; ordinal++) {
+      if (!expected.containsKey(ordinal)) {
+        assertEquals(ordinal, flags.unflaggedAt(k++));
+      }
+    }
+  }
+
+  @Test
+  public void testOldVersionsDoNotChange() {
+    FlagSet empty = FlagSet.EMPTY;
+    FlagSet one = empty.with(3, "spam");
+    FlagSet two = one.with(1 << 20, "other");
+    FlagSet back = two.without(3);
+
+    assertEquals(0, empty.size());
+    assertNull(empty.reason(3));
+    assertEquals(1, one.size());
+    assertFalse(one.contains(1 << 20));
+    assertEquals("spam", two.reason(3));
+    assertEquals("other", two.reason(1 << 20));
+    assertFalse(back.contains(3));
+    assertTrue(back.contains(1 << 20));
+    assertSame(two, two.with(3, "spam"));
+    assertSame(back, back.without(3));
+    assertEquals(0, back.without(1 << 20).size());
+  }
+
+  @Test
+  public void testEditorLeavesItsStartUnchanged() {
+    var random = new Random(23);
+    FlagSet start = FlagSet.EMPTY;
+    var expected = new TreeMap<Integer, String>();
+    for (int i = 0; i < 2000; i++) {
+      int ordinal = random.nextInt(100_000);
+      start = start.with(ordinal, "start");
+      expected.put(ordinal, "start");
+    }
+    FlagSet.Editor editor = start.edit();
+    var edited = new TreeMap<>(expected);
+    for (int i = 0; i < 20_000; i++) {
+      int ordinal = random.nextInt(100_000);
+      if (random.nextBoolean()) {
+        assertEquals(!"edit".equals(edited.put(ordinal, "edit")), editor.put(ordinal, "edit"));
+      } else {
+        assertEquals(edited.remove(ordinal) != null, editor.remove(ordinal));
+      }
+    }
+    FlagSet built = editor.build();
+    assertEquals(expected.size(), start.size());
+    assertEquals(edited.size(), built.size());
+    for (int ordinal = 0; ordinal < 100_000; ordinal++) {
+      assertEquals(expected.get(ordinal), start.reason(ordinal));
+      assertEquals(edited.get(ordinal), built.reason(ordinal));
+    }
+  }
+
+  @Test
+  public void testUnflaggedAtSkipsFullLeaves() {
+    FlagSet flags = FlagSet.EMPTY;
+    for (int ordinal = 0; ordinal < 200; ordinal++) {
+      flags = flags.with(ordinal, "spam");
+    }
+    assertEquals(200, flags.unflaggedAt(0));
+    assertEquals(263, flags.unflaggedAt(63));
+  }
+
+  @Test
+  public void testReadersSeeWholeBulkChanges() throws InterruptedException {
+    var generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    List<Video> videos = new ArrayList<>();
+    List<String> half = new ArrayList<>();
+    for (int line = 0; line < 2000; line++) {
+      videos.add(generator.video(line).withFlag(null));
+      if (line % 2 == 0) {
+        half.add(CatalogGenerator.videoId(line));
+      }
+    }
+    var library = new VideoLibrary(videos);
+    var failure = new AtomicReference<String>();
+    var done = new CountDownLatch(1);
+    Thread reader = new Thread(() -> {
+      while (done.getCount() > 0) {
+        long flagged = library.getVideos().stream().filter(Video::isFlagged).count();
+        if (flagged != 0 && flagged != half.size()) {
+          failure.set("saw " + flagged + " flagged videos");
+        }
+      }
+    });
+    reader.start();
+    for (int round = 0; round < 200; round++) {
+      library.moderateAll(half, "spam");
+      library.moderateAll(half, null);
+    }
+    done.countDown();
+    reader.join();
+    assertNull(failure.get());
+    assertEquals(videos.size(), library.playableCount());
+  }
+}
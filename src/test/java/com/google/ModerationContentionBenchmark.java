@@ -0,0 +1,81 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures reads of the library while another thread keeps flagging and
+ * allowing a batch of videos: three threads search a tag or pick a random
+ * playable video, and one moderates.
+ */
+@State(Scope.Group)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ModerationContentionBenchmark {
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"10000"})
+  int videos;
+
+  private VideoLibrary library;
+  private List<String> videoIds;
+  private String tag;
+
+  @Setup
+  public void setUp() throws IOException {
+    library = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    Random random = new Random(42);
+    videoIds = new ArrayList<>(videos);
+    for (int i = 0; i < videos; i++) {
+      videoIds.add(CatalogGenerator.videoId(random.nextInt(size)));
+    }
+    int ordinal = 0;
+    while (library.getVideoAt(ordinal).getTags().isEmpty()) {
+      ordinal++;
+    }
+    tag = library.getVideoAt(ordinal).getTags().get(0);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(2)
+  public int searchTag() {
+    return library.searchTag(tag).size();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public Video playRandom() {
+    return library.getRandomPlayableVideo(new Random());
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public int moderate() {
+    return library.moderateAll(videoIds, "review").changed
+        + library.moderateAll(videoIds, null).changed;
+  }
+}
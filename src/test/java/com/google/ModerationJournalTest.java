@@ -0,0 +1,162 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModerationJournalTest {
+
+  private static final int VIDEOS = 1000;
+
+  @TempDir
+  Path tempDir;
+
+  private static VideoLibrary library() {
+    var generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    List<Video> videos = new ArrayList<>();
+    for (int line = 0; line < VIDEOS; line++) {
+      videos.add(generator.video(line));
+    }
+    return new VideoLibrary(videos);
+  }
+
+  private static String id(int line) {
+    return CatalogGenerator.videoId(line);
+  }
+
+  @Test
+  public void testFlagsSurviveReopen() throws IOException {
+    var library = library();
+    var journal = ModerationJournal.open(tempDir);
+    library.useModerationJournal(journal);
+    library.flagVideo(library.getVideo(id(1)), "dont_like");
+    library.flagVideo(library.getVideo(id(2)), "spam");
+    library.flagVideo(library.getVideo(id(3)), "spam");
+    library.allowVideo(library.getVideo(id(2)));
+    journal.close();
+
+    var reopened = library();
+    var again = ModerationJournal.open(tempDir);
+    reopened.useModerationJournal(again);
+    assertEquals("dont_like", reopened.getVideo(id(1)).getFlagReason());
+    assertNull(reopened.getVideo(id(2)).getFlagReason());
+    assertEquals("spam", reopened.getVideo(id(3)).getFlagReason());
+    assertEquals(VIDEOS - 2, reopened.playableCount());
+
+    reopened.allowVideo(reopened.getVideo(id(1)));
+    again.close();
+    var third = library();
+    var journal3 = ModerationJournal.open(tempDir);
+    third.useModerationJournal(journal3);
+    assertFalse(third.getVideo(id(1)).isFlagged());
+    assertEquals(VIDEOS - 1, third.playableCount());
+    journal3.close();
+  }
+
+  @Test
+  public void testTornRecordIsTruncated() throws IOException {
+    var journal = ModerationJournal.open(tempDir);
+    journal.awaitDurable(journal.append(id(1), "spam"));
+    journal.close();
+    Path file = tempDir.resolve("moderation.journal");
+    long length = Files.size(file);
+    Files.write(file, new byte[] {0, 0, 0, 20, 9, 9}, StandardOpenOption.APPEND);
+
+    var reopened = ModerationJournal.open(tempDir);
+    assertEquals(length, Files.size(file));
+    assertEquals("spam", reopened.flagged().get(id(1)));
+    reopened.awaitDurable(reopened.append(id(2), "other"));
+    reopened.close();
+    var again = ModerationJournal.open(tempDir);
+    assertEquals(2, again.flagged().size());
+    again.close();
+  }
+
+  @Test
+  public void testCompactionKeepsOnlyFlagsInEffect() throws IOException {
+    var library = library();
+    var journal = ModerationJournal.open(tempDir);
+    library.useModerationJournal(journal);
+    Path file = tempDir.resolve("moderation.journal");
+    long largest = 0;
+    for (int round = 0; round < 30; round++) {
+      for (int line = 0; line < VIDEOS; line++) {
+        Video video = library.getVideo(id(line));
+        if (video.isFlagged()) {
+          library.allowVideo(video);
+        } else if (line % 3 == round % 3) {
+          library.flagVideo(video, "round " + round);
+        }
+      }
+      largest = Math.max(largest, Files.size(file));
+    }
+    journal.close();
+    assertTrue(largest < 30L * VIDEOS * 20, "journal grew to " + largest);
+
+    var reopened = library();
+    var again = ModerationJournal.open(tempDir);
+    reopened.useModerationJournal(again);
+    for (int line = 0; line < VIDEOS; line++) {
+      assertEquals(library.getVideo(id(line)).getFlagReason(),
+          reopened.getVideo(id(line)).getFlagReason(), id(line));
+    }
+    assertEquals(library.playableCount(), reopened.playableCount());
+    again.close();
+  }
+
+  @Test
+  public void testImportAppliesDecisionsInOnePass() throws IOException {
+    var library = library();
+    var journal = ModerationJournal.open(tempDir);
+    library.useModerationJournal(journal);
+    library.flagVideo(library.getVideo(id(0)), "old");
+    StringBuilder decisions = new StringBuilder();
+    for (int line = 0; line < VIDEOS; line += 2) {
+      decisions.append("FLAG_VIDEO ").append(id(line)).append(" bulk review ").append(line)
+          .append('\n');
+    }
+    decisions.append('\n')
+        .append("allow_video ").append(id(4)).append('\n')
+        .append("ALLOW_VIDEO ").append(id(5)).append('\n')
+        .append("FLAG_VIDEO unknown_video_id\n")
+        .append("FLAG_VIDEO ").append(id(7)).append('\n');
+
+    int changed = library.importModeration(new BufferedReader(
+        new StringReader(decisions.toString())));
+    assertEquals(VIDEOS / 2 + 2, changed);
+    assertEquals("bulk review 0", library.getVideo(id(0)).getFlagReason());
+    assertFalse(library.getVideo(id(4)).isFlagged());
+    assertEquals(VideoLibrary.DEFAULT_FLAG_REASON, library.getVideo(id(7)).getFlagReason());
+    assertEquals(VIDEOS / 2, library.playableCount());
+    journal.close();
+
+    var reopened = library();
+    var again = ModerationJournal.open(tempDir);
+    reopened.useModerationJournal(again);
+    for (int line = 0; line < VIDEOS; line++) {
+      assertEquals(library.getVideo(id(line)).getFlagReason(),
+          reopened.getVideo(id(line)).getFlagReason(), id(line));
+    }
+    again.close();
+  }
+
+  @Test
+  public void testImportRejectsOtherCommands() {
+    var library = library();
+    assertThrows(IOException.class, () -> library.importModeration(
+        new BufferedReader(new StringReader("PLAY " + id(1) + "\n"))));
+  }
+}
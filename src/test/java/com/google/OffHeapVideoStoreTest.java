@@ -0,0 +1,46 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * The off-heap store's own cases: records spread over many small segments
+ * and compacted as videos are removed. {@link VideoStoreTest} covers what it
+ * shares with the other stores.
+ */
+public class OffHeapVideoStoreTest {
+
+  @Test
+  public void testMatchesHeapStoreAcrossSegmentsAndCompaction() {
+    var random = new Random(13);
+    var offHeap = new OffHeapVideoStore(1 << 12);
+    var heap = new HeapVideoStore();
+    for (int i = 0; i < 100_000; i++) {
+      if (heap.size() > 0 && random.nextInt(5) < 2) {
+        int ordinal = random.nextInt(heap.size());
+        offHeap.remove(ordinal);
+        heap.remove(ordinal);
+      } else {
+        var video = new Video("Title \u00e9 " + "x".repeat(random.nextInt(200)) + i,
+            "id_\u00e9_" + i, List.of("#t" + random.nextInt(50), "#t" + random.nextInt(50)));
+        offHeap.add(video);
+        heap.add(video);
+      }
+    }
+    assertEquals(heap.size(), offHeap.size());
+    for (int ordinal = 0; ordinal < heap.size(); ordinal++) {
+      assertEquals(heap.get(ordinal).toString(), offHeap.get(ordinal).toString());
+    }
+  }
+
+  @Test
+  public void testSegmentSizeMustFitRecords() {
+    assertThrows(IllegalArgumentException.class, () -> new OffHeapVideoStore(1000));
+    assertThrows(IllegalArgumentException.class,
+        () -> new OffHeapVideoStore(16).add(new Video("Too long", "long_id", List.of())));
+  }
+}
@@ -0,0 +1,76 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the read-only player commands on generated catalogs of each
+ * size. Results are consumed in full, as the command line would print them.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlayerSessionBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  int size;
+
+  /** A common word, matching a large share of the catalog. */
+  @Param({"cats"})
+  String searchTerm;
+
+  @Param({"#tag7"})
+  String tag;
+
+  private PlayerSession session;
+
+  @Setup
+  public void setUp() throws IOException {
+    VideoLibrary videoLibrary = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    session = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null);
+  }
+
+  @Benchmark
+  public void showAllVideos(Blackhole blackhole) {
+    consume(session.showAllVideos().getVideos(), blackhole);
+  }
+
+  @Benchmark
+  public void searchVideos(Blackhole blackhole) {
+    consume(session.searchVideos(searchTerm).getVideos(), blackhole);
+  }
+
+  @Benchmark
+  public void searchVideosWithTag(Blackhole blackhole) {
+    consume(session.searchVideosWithTag(tag).getVideos(), blackhole);
+  }
+
+  @Benchmark
+  public CommandResult playRandomVideo() {
+    return session.playRandomVideo();
+  }
+
+  private static void consume(List<Video> videos, Blackhole blackhole) {
+    if (videos != null) {
+      for (Video video : videos) {
+        blackhole.consume(video);
+      }
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package com.google;
+
+import static com.google.TestVideos.ids;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PlayerSessionTest {
+
+  private VideoLibrary videoLibrary;
+  private PlayerSession session;
+
+  @TempDir
+  Path tempDir;
+
+  @BeforeEach
+  public void setUp() {
+    videoLibrary = new VideoLibrary();
+    session = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null);
+  }
+
+  @Test
+  public void testPlayReturnsTypedResults() {
+    var first = session.playVideo("amazing_cats_video_id");
+    assertEquals(CommandResult.Status.PLAYING, first.getStatus());
+    assertSame(videoLibrary.getVideo("amazing_cats_video_id"), first.getVideo());
+    assertNull(first.getStoppedVideo());
+
+    var second = session.playVideo("funny_dogs_video_id");
+    assertEquals(CommandResult.Status.PLAYING, second.getStatus());
+    assertSame(first.getVideo(), second.getStoppedVideo());
+
+    assertEquals(CommandResult.Status.PLAY_NOT_FOUND, session.playVideo("nope").getStatus());
+  }
+
+  @Test
+  public void testFlagStopsCurrentVideoAndBlocksSearch() {
+    session.playVideo("amazing_cats_video_id");
+
+    var flagged = session.flagVideo("amazing_cats_video_id", "dont_like_cats");
+    assertEquals(CommandResult.Status.FLAGGED, flagged.getStatus());
+    assertEquals("dont_like_cats", flagged.getReason());
+    assertSame(flagged.getVideo(), flagged.getStoppedVideo());
+    assertEquals(CommandResult.Status.NOTHING_PLAYING, session.showPlaying().getStatus());
+
+    var search = session.searchVideos("cat");
+    assertEquals(CommandResult.Status.SEARCH_RESULTS, search.getStatus());
+    assertEquals(List.of("another_cat_video_id"), ids(search.getVideos()));
+  }
+
+  @Test
+  public void testPlaylistResults() {
+    assertEquals(CommandResult.Status.PLAYLIST_CREATED,
+        session.createPlaylist("my_playlist").getStatus());
+    assertEquals(CommandResult.Status.PLAYLIST_ALREADY_EXISTS,
+        session.createPlaylist("MY_playlist").getStatus());
+    assertEquals(CommandResult.Status.ADDED_TO_PLAYLIST,
+        session.addVideoToPlaylist("my_PLAYLIST", "funny_dogs_video_id").getStatus());
+
+    var contents = session.showPlaylist("my_playlist");
+    assertEquals(CommandResult.Status.PLAYLIST_CONTENTS, contents.getStatus());
+    assertEquals("my_playlist", contents.getName());
+    assertEquals(List.of(videoLibrary.getVideo("funny_dogs_video_id")), contents.getVideos());
+  }
+
+  @Test
+  public void testBulkFlagByTagStopsCurrentVideo() {
+    session.playVideo("funny_dogs_video_id");
+
+    var flagged = session.flagVideos("tag", "#ANIMAL", "review");
+    assertEquals(CommandResult.Status.VIDEOS_FLAGGED, flagged.getStatus());
+    assertEquals(3, flagged.getMatched());
+    assertEquals(3, flagged.getCount());
+    assertEquals("funny_dogs_video_id", flagged.getStoppedVideo().getVideoId());
+    assertEquals("review", videoLibrary.getVideo("another_cat_video_id").getFlagReason());
+    assertEquals(2, videoLibrary.playableCount());
+    assertEquals(CommandResult.Status.NO_SEARCH_RESULTS,
+        session.searchVideosWithTag("#animal").getStatus());
+
+    assertEquals(0, session.flagVideos("TAG", "#animal", "again").getCount());
+    var allowed = session.allowVideos("TITLE", "cat");
+    assertEquals(CommandResult.Status.VIDEOS_ALLOWED, allowed.getStatus());
+    assertEquals(2, allowed.getCount());
+    assertEquals(4, videoLibrary.playableCount());
+  }
+
+  @Test
+  public void testBulkFlagByIdFile() throws IOException {
+    Path ids = tempDir.resolve("ids.txt");
+    Files.write(ids, List.of("amazing_cats_video_id", "", "  life_at_google_video_id ",
+        "no_such_video_id", "amazing_cats_video_id"));
+    session.flagVideo("life_at_google_video_id", "earlier");
+
+    var flagged = session.flagVideos("IDS", ids.toString(), "spam");
+    assertEquals(2, flagged.getMatched());
+    assertEquals(1, flagged.getCount());
+    assertEquals(List.of("no_such_video_id"), flagged.getNames());
+    assertNull(flagged.getStoppedVideo());
+    assertEquals("earlier", videoLibrary.getVideo("life_at_google_video_id").getFlagReason());
+    assertEquals(3, videoLibrary.playableCount());
+
+    var out = new ByteArrayOutputStream();
+    new ResultRenderer().render(flagged, new PrintStream(out, true, StandardCharsets.UTF_8));
+    assertEquals("Successfully flagged 1 of 2 videos selected by IDS " + ids
+            + " (reason: spam)\n1 video ids do not exist, e.g. no_such_video_id\n",
+        out.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+
+    assertEquals(2, session.allowVideos("ids", ids.toString()).getCount());
+    assertEquals(CommandResult.Status.VIDEO_IDS_UNREADABLE,
+        session.flagVideos("IDS", tempDir.resolve("missing.txt").toString(), "spam")
+            .getStatus());
+  }
+
+  @Test
+  public void testRestrictedSessionReadsIdFilesOnlyFromItsDirectory() throws IOException {
+    Path allowed = Files.createDirectory(tempDir.resolve("allowed"));
+    Files.write(allowed.resolve("ids.txt"), List.of("amazing_cats_video_id"));
+    Path secret = tempDir.resolve("secret.txt");
+    Files.write(secret, List.of("root:x:0:0:root:/root:/bin/bash"));
+    var restricted = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null,
+        allowed);
+
+    assertEquals(1, restricted.flagVideos("IDS", "ids.txt", "spam").getCount());
+    assertEquals(1, restricted.allowVideos("IDS", allowed.resolve("ids.txt").toString())
+        .getCount());
+    for (String name : List.of("../secret.txt", secret.toString())) {
+      assertEquals(CommandResult.Status.VIDEO_IDS_NOT_ALLOWED,
+          restricted.flagVideos("IDS", name, "spam").getStatus(), name);
+    }
+    assertEquals(CommandResult.Status.VIDEO_IDS_UNREADABLE,
+        restricted.flagVideos("IDS", "missing.txt", "spam").getStatus());
+    var disabled = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null,
+        null);
+    assertEquals(CommandResult.Status.VIDEO_IDS_NOT_ALLOWED,
+        disabled.flagVideos("IDS", "ids.txt", "spam").getStatus());
+
+    var out = new ByteArrayOutputStream();
+    new ResultRenderer().render(session.flagVideos("IDS", secret.toString(), "spam"),
+        new PrintStream(out, true, StandardCharsets.UTF_8));
+    assertEquals("Successfully flagged 0 of 0 videos selected by IDS " + secret
+            + " (reason: spam)\n1 video ids do not exist\n",
+        out.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+  }
+
+  @Test
+  public void testBulkModerationCommandsKeepEveryWord() {
+    var out = new ByteArrayOutputStream();
+    var print = new PrintStream(out, true, StandardCharsets.UTF_8);
+    var parser = new CommandParser(new VideoPlayer(session, print, null), print);
+
+    parser.executeCommand(CommandParser.tokenize("FLAG_VIDEOS TAG #cat not for kids"));
+    assertEquals("not for kids", videoLibrary.getVideo("amazing_cats_video_id").getFlagReason());
+    out.reset();
+    parser.executeCommand(CommandParser.tokenize("ALLOW_VIDEOS TAG #cat please"));
+    assertTrue(out.toString(StandardCharsets.UTF_8).startsWith("Please enter ALLOW_VIDEOS"));
+    assertEquals(3, videoLibrary.playableCount());
+  }
+
+  @Test
+  public void testResultsOnlyExposeTheFieldsOfTheirStatus() {
+    var page = session.searchVideos("cat", 1, 5);
+    assertEquals(1, page.getFirstNumber());
+    assertThrows(IllegalStateException.class, page::getCount);
+    assertThrows(IllegalStateException.class, page::getMatched);
+    assertThrows(IllegalStateException.class, () -> session.showPlaying().getVideo());
+    assertThrows(IllegalArgumentException.class,
+        () -> CommandResult.ofCount(CommandResult.Status.VIDEOS_PAGE, 1));
+  }
+
+  private static List<String> titles(CommandResult result) {
+    return TestVideos.titles(result.getVideos());
+  }
+
+  @Test
+  public void testPagesOfAllVideos() {
+    videoLibrary.flagVideo(videoLibrary.getVideo("funny_dogs_video_id"), "dogs");
+
+    var first = session.showAllVideos(1, 2);
+    assertEquals(CommandResult.Status.VIDEOS_PAGE, first.getStatus());
+    assertEquals(List.of("Amazing Cats", "Another Cat Video"), titles(first));
+    assertTrue(first.hasMore());
+    var second = session.nextPage();
+    assertEquals(2, second.getPage());
+    assertEquals(List.of("Funny Dogs", "Life at Google"), titles(second));
+    assertTrue(second.getVideos().get(0).isFlagged());
+    var third = session.nextPage();
+    assertEquals(List.of("Video about nothing"), titles(third));
+    assertFalse(third.hasMore());
+    assertEquals(CommandResult.Status.NO_NEXT_PAGE, session.nextPage().getStatus());
+
+    assertEquals(titles(second), titles(session.showAllVideos(2, 2)));
+    var past = session.showAllVideos(4, 2);
+    assertEquals(CommandResult.Status.PAGE_OUT_OF_RANGE, past.getStatus());
+    assertEquals(4, past.getPage());
+    assertEquals(CommandResult.Status.NO_NEXT_PAGE, session.nextPage().getStatus());
+  }
+
+  @Test
+  public void testSearchPagesSkipFlaggedVideosAndNumberOnFromEarlierPages() {
+    videoLibrary.flagVideo(videoLibrary.getVideo("another_cat_video_id"), "spam");
+
+    var first = session.searchVideosWithTag("#ANIMAL", 1, 1);
+    assertEquals(CommandResult.Status.SEARCH_RESULTS_PAGE, first.getStatus());
+    assertEquals(List.of("Amazing Cats"), titles(first));
+    var second = session.nextPage();
+    assertEquals(List.of("Funny Dogs"), titles(second));
+    assertEquals(2, second.getPage());
+    assertEquals(2, second.getFirstNumber());
+    assertFalse(second.hasMore());
+    assertEquals(CommandResult.Status.NO_SEARCH_RESULTS,
+        session.searchVideos("blah", 1, 5).getStatus());
+    assertEquals(CommandResult.Status.PAGE_OUT_OF_RANGE,
+        session.searchVideos("cat", 2, 5).getStatus());
+
+    var out = new ByteArrayOutputStream();
+    var player = new VideoPlayer(session, new PrintStream(out, true, StandardCharsets.UTF_8),
+        new BufferedReader(new StringReader("no\n2\n")));
+    var parser = new CommandParser(player, new PrintStream(out, true, StandardCharsets.UTF_8));
+    parser.executeCommand(CommandParser.tokenize("SEARCH_VIDEOS_WITH_TAG #animal PAGE 1 1"));
+    out.reset();
+    parser.executeCommand(CommandParser.tokenize("NEXT_PAGE"));
+    assertEquals("Here are the results for #animal (page 2):\n"
+            + " 2) Funny Dogs (funny_dogs_video_id) [#dog #animal]\n"
+            + "Would you like to play any of the above? If yes, specify the number of the video.\n"
+            + "If your answer is not a valid number, we will assume it's a no.\n"
+            + "Playing video: Funny Dogs\n",
+        out.toString(StandardCharsets.UTF_8).replace("\r\n", "\n"));
+  }
+
+  @Test
+  public void testCompletionAndFuzzySearchShowSearchResults() {
+    var completed = session.completeVideos("Amazing C", 20);
+    assertEquals(CommandResult.Status.SEARCH_RESULTS, completed.getStatus());
+    assertEquals("Amazing C", completed.getName());
+    assertEquals(List.of("Amazing Cats"), titles(completed));
+    assertEquals(List.of("Funny Dogs"), titles(session.searchVideosFuzzy("funy dogz", 20)));
+    assertEquals(CommandResult.Status.NO_SEARCH_RESULTS,
+        session.searchVideosFuzzy("hamster", 20).getStatus());
+  }
+}
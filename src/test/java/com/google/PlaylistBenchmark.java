@@ -0,0 +1,84 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the playlist commands on generated catalogs of each size. Each
+ * iteration starts from a playlist of {@code playlistSize} random videos.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaylistBenchmark {
+
+  private static final String PLAYLIST = "benchmark";
+
+  @Param({"10000", "1000000", "10000000"})
+  int size;
+
+  @Param({"100"})
+  int playlistSize;
+
+  private VideoLibrary videoLibrary;
+  private PlayerSession session;
+  private int createdPlaylists;
+
+  @Setup(Level.Trial)
+  public void loadLibrary() throws IOException {
+    videoLibrary = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+  }
+
+  @Setup(Level.Iteration)
+  public void resetPlaylists() {
+    session = new PlayerSession(videoLibrary, new PlaylistManager(videoLibrary), null);
+    session.createPlaylist(PLAYLIST);
+    for (int i = 0; i < playlistSize; i++) {
+      session.addVideoToPlaylist(PLAYLIST, randomVideoId());
+    }
+    createdPlaylists = 0;
+  }
+
+  private String randomVideoId() {
+    return CatalogGenerator.videoId(ThreadLocalRandom.current().nextInt(size));
+  }
+
+  @Benchmark
+  public CommandResult createPlaylist() {
+    return session.createPlaylist("playlist" + createdPlaylists++);
+  }
+
+  /** Adds a random video, then removes it again so the playlist keeps its size. */
+  @Benchmark
+  public CommandResult addAndRemoveVideo() {
+    String videoId = randomVideoId();
+    session.addVideoToPlaylist(PLAYLIST, videoId);
+    return session.removeFromPlaylist(PLAYLIST, videoId);
+  }
+
+  @Benchmark
+  public CommandResult showPlaylist() {
+    return session.showPlaylist(PLAYLIST);
+  }
+
+  @Benchmark
+  public CommandResult showAllPlaylists() {
+    return session.showAllPlaylists();
+  }
+}
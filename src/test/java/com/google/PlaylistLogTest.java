@@ -0,0 +1,209 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PlaylistLogTest {
+
+  @TempDir
+  Path tempDir;
+
+  private final VideoLibrary videoLibrary = new VideoLibrary(new ArrayList<>());
+
+  @Test
+  public void testReopenRecoversEveryChange() throws IOException {
+    var manager = PlaylistManager.open(videoLibrary, tempDir, 1000);
+    assertTrue(manager.createPlaylist("My_List"));
+    assertFalse(manager.createPlaylist("my_list"));
+    manager.createPlaylist("Other");
+    manager.createPlaylist("Gone");
+    manager.addToPlayList("my_list", "b");
+    manager.addToPlayList("my_list", "a");
+    manager.addToPlayList("other", "c");
+    manager.removeVideo(manager.getPlaylist("my_list"), "b");
+    manager.clearPlaylist(manager.getPlaylist("other"));
+    manager.addToPlayList("gone", "d");
+    manager.deletePlaylist("GONE");
+    manager.createPlaylist("gone");
+    manager.close();
+
+    var reopened = PlaylistManager.open(videoLibrary, tempDir, 1000);
+    assertEquals(Map.of("My_List", List.of("a"), "Other", List.of(), "gone", List.of()),
+        state(reopened));
+    reopened.close();
+  }
+
+  @Test
+  public void testSnapshotsReplaceOldSegments() throws IOException {
+    var manager = PlaylistManager.open(videoLibrary, tempDir, 10);
+    var expected = new PlaylistManager(videoLibrary);
+    for (int i = 0; i < 500; i++) {
+      change(i, manager);
+      change(i, expected);
+    }
+    assertTrue(Files.exists(tempDir.resolve("playlists.snapshot")));
+    assertTrue(segments().size() <= 2, segments().toString());
+
+    var reopened = PlaylistManager.open(videoLibrary, tempDir, 10);
+    assertEquals(state(expected), state(reopened));
+    manager.close();
+    reopened.close();
+  }
+
+  @Test
+  public void testTornRecordIsTruncated() throws IOException {
+    var manager = PlaylistManager.open(videoLibrary, tempDir, 1000);
+    manager.createPlaylist("list");
+    manager.addToPlayList("list", "a");
+    manager.close();
+    Path segment = segments().get(segments().size() - 1);
+    long length = Files.size(segment);
+    Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+    var reopened = PlaylistManager.open(videoLibrary, tempDir, 1000);
+    assertEquals(Map.of("list", List.of("a")), state(reopened));
+    assertEquals(length, Files.size(segment));
+    reopened.addToPlayList("list", "b");
+    reopened.close();
+    var again = PlaylistManager.open(videoLibrary, tempDir, 1000);
+    assertEquals(Map.of("list", List.of("a", "b")), state(again));
+    again.close();
+  }
+
+  @Test
+  public void testConcurrentChangesReplayInOrder() throws Exception {
+    var manager = PlaylistManager.open(videoLibrary, tempDir, 200);
+    var threads = new ArrayList<Thread>();
+    for (int t = 0; t < 8; t++) {
+      int offset = t * 10_000;
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 300; i++) {
+          change(offset + i, manager);
+        }
+      }));
+    }
+    threads.forEach(Thread::start);
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    var expected = state(manager);
+    var reopened = PlaylistManager.open(videoLibrary, tempDir, 200);
+    assertEquals(expected, state(reopened));
+    manager.close();
+    reopened.close();
+  }
+
+  @Test
+  public void testRecoversAfterProcessIsKilledMidWrite() throws Exception {
+    Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+    Process process = new ProcessBuilder(java.toString(), "-cp",
+        System.getProperty("java.class.path"), CrashWorker.class.getName(), tempDir.toString())
+        .redirectError(ProcessBuilder.Redirect.INHERIT)
+        .start();
+    int acknowledged = -1;
+    try (var output = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while (acknowledged < 3000 && (line = output.readLine()) != null) {
+        acknowledged = Integer.parseInt(line);
+      }
+      process.destroyForcibly();
+      assertTrue(process.waitFor(30, TimeUnit.SECONDS));
+    }
+    assertEquals(3000, acknowledged);
+
+    Map<String, List<String>> recovered;
+    try (var reopened = PlaylistManager.open(videoLibrary, tempDir, 100)) {
+      recovered = state(reopened);
+    }
+    var expected = new PlaylistManager(videoLibrary);
+    for (int i = 0; i <= acknowledged; i++) {
+      change(i, expected);
+    }
+    // The worker may have made more changes than were read before it was
+    // killed, so the recovered playlists can be any later prefix.
+    for (int i = acknowledged + 1; !recovered.equals(state(expected)); i++) {
+      if (i > acknowledged + 100_000) {
+        fail("Recovered playlists match no prefix of the changes after " + acknowledged);
+      }
+      change(i, expected);
+    }
+  }
+
+  /** Makes change number {@code i} of a fixed sequence that touches a few playlists. */
+  private static void change(int i, PlaylistManager manager) {
+    var random = new Random(i);
+    String name = (random.nextBoolean() ? "List" : "list") + random.nextInt(5);
+    String videoId = "video_" + random.nextInt(20);
+    VideoPlaylist playlist = manager.getPlaylist(name);
+    int op = random.nextInt(20);
+    if (playlist == null || op == 0) {
+      if (playlist != null) {
+        manager.deletePlaylist(name);
+      } else {
+        manager.createPlaylist(name);
+      }
+    } else if (op == 1) {
+      manager.clearPlaylist(playlist);
+    } else if (op < 8) {
+      manager.removeVideo(playlist, videoId);
+    } else {
+      manager.addVideo(playlist, videoId);
+    }
+  }
+
+  private static Map<String, List<String>> state(PlaylistManager manager) {
+    Map<String, List<String>> state = new TreeMap<>();
+    for (String name : manager.playListNames()) {
+      VideoPlaylist playlist = manager.getPlaylist(name);
+      if (playlist != null) {
+        state.put(name, playlist.getVideosIds());
+      }
+    }
+    return state;
+  }
+
+  private List<Path> segments() throws IOException {
+    try (Stream<Path> files = Files.list(tempDir)) {
+      return files.filter(file -> file.toString().endsWith(".wal")).sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Makes the fixed sequence of changes on a durable manager in the given
+   * directory, printing the number of each change once it is durable, until
+   * it is killed.
+   */
+  public static final class CrashWorker {
+    public static void main(String[] args) throws IOException {
+      var manager = PlaylistManager.open(new VideoLibrary(new ArrayList<>()), Path.of(args[0]),
+          100);
+      for (int i = 0; ; i++) {
+        change(i, manager);
+        System.out.println(i);
+        System.out.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,63 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ranked searches of the {@link TextIndex} for the 20 best
+ * matches, and keeping it up to date as a video is added and removed
+ * again. Setup prints how long building the whole index took, which is
+ * what each update would cost without segments.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RankedSearchBenchmark {
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"tumeko", "funny cats", "\"amazing video\"", "tag7 music live"})
+  String query;
+
+  private VideoLibrary library;
+  private Video extra;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    library = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    library.getSortedVideos().get(0);
+    long start = System.nanoTime();
+    library.searchRanked(query, 20);
+    System.out.printf("text index built in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+    extra = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED).video(size);
+  }
+
+  @Benchmark
+  public List<Video> search() {
+    return library.searchRanked(query, 20);
+  }
+
+  @Benchmark
+  public Video update() {
+    String videoId = extra.getVideoId() + "_" + (next++ & 1023);
+    library.addVideo(new Video(extra.getTitle(), videoId, extra.getTags()));
+    return library.removeVideo(videoId);
+  }
+}
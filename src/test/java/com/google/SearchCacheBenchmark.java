@@ -0,0 +1,89 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs a trace of title and tag searches whose terms follow a Zipf
+ * distribution over the catalog's vocabulary and tags, with and without
+ * the search cache. One operation in {@code moderateEvery} flags or allows
+ * a random video instead, so cached results are invalidated as they would
+ * be in use. The cache's counters are printed after each trial.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchCacheBenchmark {
+
+  private static final int TRACE_LENGTH = 1 << 16;
+  private static final int TAGS = 2000;
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"0", "1024"})
+  int cacheEntries;
+
+  @Param({"1.0"})
+  double skew;
+
+  @Param({"100"})
+  int moderateEvery;
+
+  private VideoLibrary library;
+  private String[] terms;
+  private boolean[] tagSearches;
+  private SplittableRandom random;
+  private int next;
+
+  @Setup
+  public void setUp() throws IOException {
+    System.setProperty(SearchCache.ENTRIES_PROPERTY, Integer.toString(cacheEntries));
+    library = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    random = new SplittableRandom(42);
+    var words = new ZipfDistribution(CatalogGenerator.DEFAULT_VOCABULARY.size(), skew);
+    var tags = new ZipfDistribution(TAGS, skew);
+    terms = new String[TRACE_LENGTH];
+    tagSearches = new boolean[TRACE_LENGTH];
+    for (int i = 0; i < TRACE_LENGTH; i++) {
+      tagSearches[i] = random.nextBoolean();
+      terms[i] = tagSearches[i] ? "#tag" + (tags.sample(random) - 1)
+          : CatalogGenerator.DEFAULT_VOCABULARY.get(words.sample(random) - 1);
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (library.searchCacheStats() != null) {
+      System.out.println(library.searchCacheStats());
+    }
+  }
+
+  @Benchmark
+  public int search() {
+    int i = next++ & (TRACE_LENGTH - 1);
+    if (i % moderateEvery == 0) {
+      Video video = library.getVideoAt(random.nextInt(size));
+      return video.isFlagged() ? (library.allowVideo(video) ? 1 : 0)
+          : (library.flagVideo(video, "review") ? 1 : 0);
+    }
+    return tagSearches[i] ? library.searchPlayableTag(terms[i]).size()
+        : library.searchPlayableTitles(terms[i]).size();
+  }
+}
@@ -0,0 +1,112 @@
+package com.google;
+
+import static com.google.TestVideos.titles;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SearchCacheTest {
+
+  @Test
+  public void testRepeatedSearchIsAHit() {
+    var library = new VideoLibrary();
+    List<Video> first = library.searchPlayableTitles("CAT");
+    List<Video> second = library.searchPlayableTitles("cat");
+    library.searchPlayableTag("#cat");
+
+    assertEquals(List.of("Amazing Cats", "Another Cat Video"), titles(first));
+    assertSame(first, second);
+    assertThrows(UnsupportedOperationException.class, () -> second.remove(0));
+    SearchCache.Stats stats = library.searchCacheStats();
+    assertEquals(1, stats.hits);
+    assertEquals(2, stats.misses);
+    assertEquals(2, stats.entries);
+  }
+
+  @Test
+  public void testOnlyModerationOfAResultInvalidatesIt() {
+    var library = new VideoLibrary();
+    List<Video> cats = library.searchPlayableTitles("cat");
+
+    library.flagVideo(library.getVideo("funny_dogs_video_id"), "dogs");
+    assertSame(cats, library.searchPlayableTitles("cat"));
+    assertEquals(0, library.searchCacheStats().invalidations);
+
+    library.flagVideo(library.getVideo("amazing_cats_video_id"), "cats");
+    assertEquals(List.of("Another Cat Video"), titles(library.searchPlayableTitles("cat")));
+    assertEquals(1, library.searchCacheStats().invalidations);
+
+    library.allowVideo(library.getVideo("amazing_cats_video_id"));
+    assertEquals(titles(cats), titles(library.searchPlayableTitles("cat")));
+    assertEquals(2, library.searchCacheStats().invalidations);
+    assertEquals(3, library.searchCacheStats().hits);
+  }
+
+  @Test
+  public void testAddingAVideoClearsTheCache() {
+    var library = new VideoLibrary();
+    library.searchPlayableTag("#cat");
+    library.addVideo(new Video("Cat Nap", "cat_nap_id", List.of("#cat")));
+
+    assertEquals(List.of("Amazing Cats", "Another Cat Video", "Cat Nap"),
+        titles(library.searchPlayableTag("#cat")));
+    assertEquals(0, library.searchCacheStats().hits);
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsedByCountAndBytes() {
+    var cache = new SearchCache(2, 1000);
+    cache.put("a", entry(0));
+    cache.put("b", entry(0));
+    assertNotNull(cache.get("a"));
+    cache.put("c", entry(0));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("a"));
+
+    cache.put("d", entry(1000 - SearchCache.ENTRY_BYTES));
+    assertNull(cache.get("a"));
+    assertNull(cache.get("c"));
+    cache.put("e", entry(2000));
+    assertNull(cache.get("e"));
+    assertNotNull(cache.get("d"));
+
+    SearchCache.Stats stats = cache.stats();
+    assertEquals(3, stats.evictions);
+    assertEquals(1, stats.entries);
+    assertEquals(1000, stats.bytes);
+  }
+
+  @Test
+  public void testReplacingWithALargerEntryStaysWithinBytes() {
+    var cache = new SearchCache(10, 1000);
+    SearchCache.Entry a = entry(0);
+    cache.put("a", a);
+    cache.put("b", entry(0));
+    cache.put("c", entry(0));
+
+    SearchCache.Entry grown = entry(1000 - 2 * SearchCache.ENTRY_BYTES);
+    cache.replace("a", a, grown, true);
+    assertSame(grown, cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+    assertEquals(1000, cache.stats().bytes);
+
+    cache.replace("a", grown, entry(1000), true);
+    assertNull(cache.get("a"));
+    assertNotNull(cache.get("c"));
+    SearchCache.Stats stats = cache.stats();
+    assertEquals(2, stats.evictions);
+    assertEquals(1, stats.entries);
+    assertEquals(SearchCache.ENTRY_BYTES, stats.bytes);
+  }
+
+  private static SearchCache.Entry entry(long extraBytes) {
+    return new SearchCache.Entry(new int[0], new int[0], FlagSet.EMPTY, List.of(),
+        SearchCache.ENTRY_BYTES + extraBytes);
+  }
+}
@@ -0,0 +1,59 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the stores a library can be created with: how long a full,
+ * stop-the-world collection takes with the whole library live, which grows
+ * with the number of objects the collector has to trace, and what reading a
+ * video costs.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g", "-XX:MaxDirectMemorySize=8g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class StoreGcBenchmark {
+
+  @Param({"1000000", "10000000"})
+  int size;
+
+  @Param({"HEAP", "COLUMNAR", "OFF_HEAP"})
+  String store;
+
+  private VideoLibrary videoLibrary;
+
+  @Setup
+  public void setUp() throws IOException {
+    videoLibrary = new VideoLibrary(CatalogGenerator.cachedCatalog(size),
+        VideoStore.Kind.parse(store));
+    videoLibrary.getSortedVideos().get(0);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void fullCollection() {
+    System.gc();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Video getVideo() {
+    int line = ThreadLocalRandom.current().nextInt(size);
+    return videoLibrary.getVideo(CatalogGenerator.videoId(line));
+  }
+}
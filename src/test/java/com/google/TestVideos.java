@@ -0,0 +1,53 @@
+package com.google;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/** Helpers for comparing lists of videos in tests. */
+final class TestVideos {
+
+  private TestVideos() {
+  }
+
+  /**
+   * Describes each video by its title, id, tags and flag, so that lists of
+   * videos from different stores or loaders can be compared with equals.
+   */
+  static List<String> describe(List<Video> videos) {
+    return videos.stream().map(Video::toString).collect(Collectors.toList());
+  }
+
+  /** The titles of the videos, in order. */
+  static List<String> titles(List<Video> videos) {
+    return videos.stream().map(Video::getTitle).collect(Collectors.toList());
+  }
+
+  /** The ids of the videos, in order. */
+  static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+
+  /** The ids of the videos, for results whose order does not matter. */
+  static Set<String> idSet(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toSet());
+  }
+
+  /** The Levenshtein distance between two strings, computed directly. */
+  static int distance(String a, String b) {
+    int[] previous = new int[b.length() + 1];
+    for (int j = 0; j <= b.length(); j++) {
+      previous[j] = j;
+    }
+    for (int i = 1; i <= a.length(); i++) {
+      int[] row = new int[b.length() + 1];
+      row[0] = i;
+      for (int j = 1; j <= b.length(); j++) {
+        int replace = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+        row[j] = Math.min(replace, Math.min(row[j - 1], previous[j]) + 1);
+      }
+      previous = row;
+    }
+    return previous[b.length()];
+  }
+}
@@ -0,0 +1,119 @@
+package com.google;
+
+import static com.google.TestVideos.ids;
+import static com.google.TestVideos.titles;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class TextIndexTest {
+
+  private static List<Video> videos(String... titles) {
+    var videos = new ArrayList<Video>();
+    for (int i = 0; i < titles.length; i++) {
+      videos.add(new Video(titles[i], "video_" + i, List.of()));
+    }
+    return videos;
+  }
+
+  @Test
+  public void testRanksRepeatedWordsAndShortTitlesFirst() {
+    var library = new VideoLibrary(videos(
+        "Cats and dogs at the beach on a sunny afternoon",
+        "Cats cats cats",
+        "Cats and dogs",
+        "Dogs only"));
+    assertEquals(List.of("Cats cats cats", "Cats and dogs",
+            "Cats and dogs at the beach on a sunny afternoon"),
+        titles(library.searchRanked("cats", 10)));
+    assertEquals(List.of("Cats and dogs", "Cats cats cats",
+            "Cats and dogs at the beach on a sunny afternoon", "Dogs only"),
+        titles(library.searchRanked("CATS DOGS", 10)));
+    assertEquals(List.of("Cats cats cats"), titles(library.searchRanked("cats", 1)));
+  }
+
+  @Test
+  public void testPhrasesMustMatchWordForWord() {
+    var library = new VideoLibrary(videos(
+        "Funny dogs compilation",
+        "Dogs being funny",
+        "Funny cats and dogs"));
+    assertEquals(List.of("Funny dogs compilation"),
+        titles(library.searchRanked("\"funny dogs\"", 10)));
+    assertEquals(List.of("Funny dogs compilation"),
+        titles(library.searchRanked("cats \"funny dogs\"", 10)));
+    assertEquals(List.of(), titles(library.searchRanked("\"dogs funny\" cats", 10)));
+    assertEquals(List.of(), titles(library.searchRanked("\"\" ,", 10)));
+  }
+
+  @Test
+  public void testMatchesTagsAndSkipsFlaggedVideos() {
+    var library = new VideoLibrary();
+    assertEquals(Set.of("Amazing Cats", "Another Cat Video", "Funny Dogs"),
+        Set.copyOf(titles(library.searchRanked("animal", 10))));
+
+    library.flagVideo(library.getVideo("amazing_cats_video_id"), "spam");
+    assertEquals(List.of("Another Cat Video"), titles(library.searchRanked("cat", 1)));
+    assertEquals(List.of(), titles(library.searchRanked("\"amazing cats\"", 10)));
+    library.allowVideo(library.getVideo("amazing_cats_video_id"));
+    assertEquals(List.of("Amazing Cats"), titles(library.searchRanked("\"amazing cats\"", 10)));
+  }
+
+  @Test
+  public void testFollowsChangesWithFewSegments() {
+    var generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    var videos = new ArrayList<Video>();
+    for (int line = 0; line < 3000; line++) {
+      videos.add(generator.video(line).withFlag(null));
+    }
+    var library = new VideoLibrary(videos.subList(0, 1000));
+    String query = library.getVideoAt(0).getTitle().split(" ")[0] + " "
+        + library.getVideoAt(1).getTitle().split(" ")[0];
+    library.searchRanked(query, 1);
+
+    Random random = new Random(3);
+    var expected = new ArrayList<>(videos.subList(0, 1000));
+    for (int i = 1000; i < 3000; i++) {
+      library.addVideo(videos.get(i));
+      expected.add(videos.get(i));
+      if (random.nextInt(3) == 0) {
+        Video removed = expected.remove(random.nextInt(expected.size()));
+        library.removeVideo(removed.getVideoId());
+      }
+    }
+    var fresh = new VideoLibrary(expected);
+    assertEquals(new HashSet<>(ids(fresh.searchRanked(query, 5000))),
+        new HashSet<>(ids(library.searchRanked(query, 5000))));
+    assertTrue(library.textIndexSegments() <= 16, library.textIndexSegments() + " segments");
+  }
+
+  @Test
+  public void testTopResultsAreTheStartOfAllResults() {
+    var generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    var videos = new ArrayList<Video>();
+    for (int line = 0; line < 20_000; line++) {
+      videos.add(generator.video(line).withFlag(null));
+    }
+    var library = new VideoLibrary(videos);
+    for (int line = 0; line < 20_000; line += 7) {
+      library.flagVideo(library.getVideo(CatalogGenerator.videoId(line)), "spam");
+    }
+    List<String> vocabulary = CatalogGenerator.DEFAULT_VOCABULARY;
+    for (String query : List.of(vocabulary.get(0), vocabulary.get(0) + " " + vocabulary.get(40),
+        vocabulary.get(1) + " " + vocabulary.get(2) + " " + vocabulary.get(300),
+        "#tag0 " + vocabulary.get(5), "\"" + vocabulary.get(0) + " " + vocabulary.get(1) + "\"")) {
+      List<String> all = ids(library.searchRanked(query, Integer.MAX_VALUE));
+      assertTrue(all.size() > 100, query + ": " + all.size());
+      for (int limit : List.of(1, 10, 100)) {
+        assertEquals(all.subList(0, limit), ids(library.searchRanked(query, limit)),
+            query + " limit " + limit);
+      }
+    }
+  }
+}
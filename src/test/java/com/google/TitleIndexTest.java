@@ -0,0 +1,71 @@
+package com.google;
+
+import static com.google.TestVideos.idSet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TitleIndexTest {
+
+  private static final String[] WORDS = {
+      "Funny", "dogs", "Amazing", "CATS", "cat", "video", "Life", "at", "Google",
+      "nothing", "a", "ab", "Stra\u00dfe", "\u0130stanbul", "\u01c5emal", "x"
+  };
+
+  private List<Video> videos;
+  private VideoLibrary videoLibrary;
+
+  @BeforeEach
+  public void setUp() {
+    Random random = new Random(42);
+    videos = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder title = new StringBuilder();
+      int words = 1 + random.nextInt(4);
+      for (int w = 0; w < words; w++) {
+        if (w > 0) {
+          title.append(' ');
+        }
+        title.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      videos.add(new Video(title.toString(), "video_" + i, new ArrayList<>()));
+    }
+    videoLibrary = new VideoLibrary(videos);
+  }
+
+  @Test
+  public void testIndexMatchesBruteForceScan() {
+    List<String> terms = new ArrayList<>(List.of(
+        "", " ", "a", "ca", "cat", "CAT", "cats video", "ss", "stra\u00dfe", "STRASSE",
+        "i\u0307st", "\u01c6em", "oogle l", "nothing at all", "zzz"));
+    for (Video video : videos.subList(0, 50)) {
+      String title = video.getTitle();
+      int from = title.length() / 3;
+      terms.add(title.substring(from, Math.min(title.length(), from + 5)));
+    }
+    for (String term : terms) {
+      assertEquals(bruteForce(term), idSet(videoLibrary.searchTitles(term)), term);
+    }
+  }
+
+  @Test
+  public void testSearchTitlesOnBundledVideos() {
+    var library = new VideoLibrary();
+    assertEquals(Set.of("amazing_cats_video_id", "another_cat_video_id"),
+        idSet(library.searchTitles("CAT")));
+    assertEquals(Set.of(), idSet(library.searchTitles("blah")));
+  }
+
+  private Set<String> bruteForce(String term) {
+    return videos.stream()
+        .filter(video -> video.getTitle().toLowerCase().contains(term.toLowerCase()))
+        .map(Video::getVideoId)
+        .collect(Collectors.toSet());
+  }
+}
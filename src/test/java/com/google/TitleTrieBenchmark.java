@@ -0,0 +1,93 @@
+package com.google;
+
+import static com.google.TestVideos.distance;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares typeahead and fuzzy title searches through the {@link TitleTrie}
+ * with a linear scan of the titles in title order that stops once it has
+ * {@code limit} results, for a narrow and a broad query of each kind. Setup
+ * prints the heap the trie retains beside the size of the titles.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TitleTrieBenchmark {
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"prefix tumek", "prefix th", "fuzzy tumeco", "fuzzy amazng"})
+  String query;
+
+  @Param({"true", "false"})
+  boolean trie;
+
+  @Param({"20"})
+  int limit;
+
+  private VideoLibrary library;
+  private boolean fuzzy;
+  private String term;
+
+  @Setup
+  public void setUp() throws IOException {
+    library = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    fuzzy = query.startsWith("fuzzy ");
+    term = query.substring(query.indexOf(' ') + 1);
+    if (trie) {
+      long titleBytes = 0;
+      for (Video video : library) {
+        titleBytes += video.getTitle().length();
+      }
+      library.getSortedVideos().get(0);
+      long before = StoreMemoryReport.usedHeap();
+      library.completeTitles("a", 1);
+      long retained = StoreMemoryReport.usedHeap() - before;
+      System.out.printf("title trie: %.1f MB retained for %.1f MB of titles%n", retained / 1e6,
+          titleBytes / 1e6);
+    }
+  }
+
+  @Benchmark
+  public List<Video> search() {
+    if (trie) {
+      return fuzzy ? library.searchTitlesFuzzy(term, limit) : library.completeTitles(term, limit);
+    }
+    List<Video> result = new ArrayList<>(limit);
+    int allowed = TitleTrie.allowedEdits(term);
+    for (Video video : library.getSortedVideos()) {
+      if (video.isFlagged()) {
+        continue;
+      }
+      for (String word : TitleTrie.wordsOf(video.getTitle().toLowerCase())) {
+        if (fuzzy ? distance(term, word) <= allowed : word.startsWith(term)) {
+          result.add(video);
+          break;
+        }
+      }
+      if (result.size() == limit) {
+        break;
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,118 @@
+package com.google;
+
+import static com.google.TestVideos.distance;
+import static com.google.TestVideos.ids;
+import static com.google.TestVideos.titles;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TitleTrieTest {
+
+  private static final String[] WORDS = {
+      "Funny", "funnel", "dogs", "dog", "Amazing", "amazon", "CATS", "cat", "coat", "video",
+      "Life", "at", "Google", "goggles", "nothing", "a", "Stra\u00dfe", "\u0130stanbul", "x1"
+  };
+
+  private List<Video> videos;
+  private VideoLibrary videoLibrary;
+
+  @BeforeEach
+  public void setUp() {
+    Random random = new Random(7);
+    videos = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder title = new StringBuilder();
+      int words = 1 + random.nextInt(4);
+      for (int w = 0; w < words; w++) {
+        title.append(w > 0 ? (random.nextBoolean() ? " " : " - ") : "");
+        title.append(WORDS[random.nextInt(WORDS.length)]);
+      }
+      videos.add(new Video(title.toString(), "video_" + i, new ArrayList<>()));
+    }
+    videoLibrary = new VideoLibrary(videos);
+  }
+
+  @Test
+  public void testCompletionsMatchBruteForceScan() {
+    for (String query : List.of("", "-", "f", "fun", "FUNNY", "funny d", "dog cat", "go",
+        "stra\u00df", "\u0130st", "x", "zzz", "amazing ca")) {
+      assertEquals(bruteForce(query, false), ids(videoLibrary.completeTitles(query, 5000)),
+          query);
+    }
+  }
+
+  @Test
+  public void testFuzzyMatchesBruteForceScan() {
+    for (String query : List.of("", "funy", "funnny dgs", "amazin", "amazign", "cta", "at",
+        "goggle", "nothign", "x2", "vidoe coat", "zzzzzz")) {
+      assertEquals(bruteForce(query, true), ids(videoLibrary.searchTitlesFuzzy(query, 5000)),
+          query);
+    }
+  }
+
+  @Test
+  public void testFollowsChangesAfterTheFirstQuery() {
+    var library = new VideoLibrary();
+    assertEquals(List.of("Amazing Cats"), titles(library.completeTitles("amaz", 10)));
+
+    library.addVideo(new Video("Amazon Rainforest", "rainforest_id", List.of()));
+    library.removeVideo("amazing_cats_video_id");
+    library.flagVideo(library.getVideo("funny_dogs_video_id"), "dogs");
+
+    assertEquals(List.of("Amazon Rainforest"), titles(library.completeTitles("amaz", 10)));
+    assertEquals(List.of("Amazon Rainforest"),
+        titles(library.searchTitlesFuzzy("rainfrost", 10)));
+    assertEquals(List.of("Amazon Rainforest"), titles(library.searchTitlesFuzzy("amazng", 10)));
+    assertEquals(List.of(), titles(library.completeTitles("funny", 10)));
+    assertEquals(List.of("Another Cat Video", "Video about nothing"),
+        titles(library.completeTitles("vid", 10)));
+
+    for (int i = 0; i < 3000; i++) {
+      library.addVideo(new Video("Cat Nap " + i, "cat_nap_" + i, List.of()));
+      if (i % 1000 == 0) {
+        assertEquals(i + 1, library.completeTitles("nap", 5000).size());
+      }
+    }
+    library.removeVideo("cat_nap_0");
+    assertEquals(List.of("Cat Nap 10"), titles(library.searchTitlesFuzzy("kat nap 10", 3)));
+    assertEquals(2999, library.completeTitles("nap", 5000).size());
+  }
+
+  @Test
+  public void testAllowedEditsGrowWithWordLength() {
+    assertEquals(0, TitleTrie.allowedEdits("at"));
+    assertEquals(1, TitleTrie.allowedEdits("cats"));
+    assertEquals(2, TitleTrie.allowedEdits("amazing"));
+  }
+
+  private List<String> bruteForce(String query, boolean fuzzy) {
+    List<String> queryWords = TitleTrie.wordsOf(query.toLowerCase());
+    List<String> result = new ArrayList<>();
+    if (queryWords.isEmpty()) {
+      return result;
+    }
+    List<Video> sorted = new ArrayList<>(videos);
+    sorted.sort(Comparator.comparing(Video::getTitle).thenComparing(Video::getVideoId));
+    for (Video video : sorted) {
+      List<String> titleWords = TitleTrie.wordsOf(video.getTitle().toLowerCase());
+      boolean all = true;
+      for (int i = 0; i < queryWords.size() && all; i++) {
+        String queryWord = queryWords.get(i);
+        boolean last = i == queryWords.size() - 1;
+        all = titleWords.stream().anyMatch(word -> fuzzy
+            ? distance(queryWord, word) <= TitleTrie.allowedEdits(queryWord)
+            : last ? word.startsWith(queryWord) : word.equals(queryWord));
+      }
+      if (all) {
+        result.add(video.getVideoId());
+      }
+    }
+    return result;
+  }
+}
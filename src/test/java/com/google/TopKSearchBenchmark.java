@@ -0,0 +1,61 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares finding every match of a search and keeping the first screen
+ * of them ({@code limit} 0) with asking the library for only that screen,
+ * for a broad and a narrow tag and title word. The search cache is off, so
+ * every operation searches.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TopKSearchBenchmark {
+
+  @Param({"1000000"})
+  int size;
+
+  @Param({"tag #tag0", "tag #tag50", "title the", "title tumeko"})
+  String query;
+
+  @Param({"0", "20"})
+  int limit;
+
+  private VideoLibrary library;
+  private boolean tag;
+  private String term;
+
+  @Setup
+  public void setUp() throws IOException {
+    System.setProperty(SearchCache.ENTRIES_PROPERTY, "0");
+    library = new VideoLibrary(CatalogGenerator.cachedCatalog(size));
+    tag = query.startsWith("tag ");
+    term = query.substring(query.indexOf(' ') + 1);
+  }
+
+  @Benchmark
+  public int search() {
+    if (limit == 0) {
+      var all = tag ? library.searchPlayableTag(term) : library.searchPlayableTitles(term);
+      return all.subList(0, Math.min(20, all.size())).size();
+    }
+    return tag ? library.pageOfTag(term, 0, 0, limit).videos.size()
+        : library.pageOfTitles(term, 0, 0, limit).videos.size();
+  }
+}
@@ -0,0 +1,68 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks loading a catalog, as text and as a snapshot, and looking
+ * videos up by id, on generated catalogs of each size.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class VideoLibraryBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  int size;
+
+  private Path catalog;
+  private Path snapshot;
+  private VideoLibrary videoLibrary;
+
+  @Setup
+  public void setUp() throws IOException {
+    catalog = CatalogGenerator.cachedCatalog(size);
+    videoLibrary = new VideoLibrary(catalog);
+    snapshot = catalog.resolveSibling(catalog.getFileName() + ".snapshot");
+    if (!Files.exists(snapshot)) {
+      videoLibrary.writeSnapshot(snapshot);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public VideoLibrary load() throws IOException {
+    return new VideoLibrary(catalog);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public VideoLibrary openSnapshot() throws IOException {
+    return VideoLibrary.open(snapshot);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public Video getVideo() {
+    int line = ThreadLocalRandom.current().nextInt(size);
+    return videoLibrary.getVideo(CatalogGenerator.videoId(line));
+  }
+}
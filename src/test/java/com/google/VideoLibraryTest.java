@@ -1,11 +1,20 @@
 package com.google;
 
+import static com.google.TestVideos.idSet;
+import static com.google.TestVideos.titles;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -42,4 +51,174 @@ public class VideoLibraryTest {
     assertEquals("nothing_video_id", video.getVideoId());
     assertTrue(video.getTags().isEmpty());
   }
+
+  @Test
+  public void testTagsAreSharedAndReadOnly() {
+    var cats = videoLibrary.getVideo("amazing_cats_video_id");
+    var otherCats = videoLibrary.getVideo("another_cat_video_id");
+
+    assertSame(cats.getTags().get(1), otherCats.getTags().get(1));
+    assertEquals(cats.getTags(), otherCats.getTags());
+    assertThrows(UnsupportedOperationException.class, () -> cats.getTags().add("#new"));
+    var video = new Video("Repeated", "repeated_id", List.of("#b", "#a", "#b"));
+    assertEquals(List.of("#b", "#a", "#b"), video.getTags());
+  }
+
+  @Test
+  public void testReadOnlyViews() {
+    assertEquals(5, videoLibrary.size());
+    var seen = new ArrayList<String>();
+    for (Video video : videoLibrary) {
+      seen.add(video.getVideoId());
+    }
+    for (int i = 0; i < videoLibrary.size(); i++) {
+      assertEquals(seen.get(i), videoLibrary.getVideoAt(i).getVideoId());
+    }
+    assertThrows(UnsupportedOperationException.class, () -> {
+      var iterator = videoLibrary.iterator();
+      iterator.next();
+      iterator.remove();
+    });
+
+    var sorted = videoLibrary.getSortedVideos();
+    assertEquals(List.of("Amazing Cats", "Another Cat Video", "Funny Dogs", "Life at Google",
+        "Video about nothing"),
+        sorted.stream().map(Video::getTitle).collect(Collectors.toList()));
+    assertSame(sorted, videoLibrary.getSortedVideos());
+    assertThrows(UnsupportedOperationException.class, () -> sorted.remove(0));
+
+    videoLibrary.removeVideo("amazing_cats_video_id");
+    assertEquals(4, videoLibrary.getSortedVideos().size());
+  }
+
+  @Test
+  public void testRandomPlayableVideoSkipsFlaggedVideos() {
+    for (var video : videoLibrary) {
+      if (!video.getVideoId().equals("life_at_google_video_id")) {
+        videoLibrary.flagVideo(video, "reason");
+      }
+    }
+    assertEquals(1, videoLibrary.playableCount());
+    for (int i = 0; i < 20; i++) {
+      assertEquals("life_at_google_video_id",
+          videoLibrary.getRandomPlayableVideo(new Random(i)).getVideoId());
+    }
+
+    videoLibrary.flagVideo(videoLibrary.getVideo("life_at_google_video_id"), "reason");
+    assertNull(videoLibrary.getRandomPlayableVideo(new Random()));
+
+    videoLibrary.allowVideo(videoLibrary.getVideo("funny_dogs_video_id"));
+    assertEquals("funny_dogs_video_id",
+        videoLibrary.getRandomPlayableVideo(new Random()).getVideoId());
+  }
+
+  @Test
+  public void testRandomPlayableVideoIsReproducibleWithSeed() {
+    var first = new ArrayList<String>();
+    var second = new ArrayList<String>();
+    var firstRandom = new Random(123);
+    var secondRandom = new Random(123);
+    for (int i = 0; i < 20; i++) {
+      first.add(videoLibrary.getRandomPlayableVideo(firstRandom).getVideoId());
+      second.add(videoLibrary.getRandomPlayableVideo(secondRandom).getVideoId());
+    }
+    assertEquals(first, second);
+  }
+
+  @Test
+  public void testSearchTagUsesExactTag() {
+    assertEquals(Set.of("amazing_cats_video_id", "another_cat_video_id"),
+        idSet(videoLibrary.searchTag("#cat")));
+    assertTrue(videoLibrary.searchTag("#CAT").isEmpty());
+    assertTrue(videoLibrary.searchTag("#blah").isEmpty());
+  }
+
+  @Test
+  public void testSearchMultipleTags() {
+    assertEquals(Set.of("amazing_cats_video_id", "another_cat_video_id"),
+        idSet(videoLibrary.searchAllTags(List.of("#cat", "#animal"))));
+    assertTrue(videoLibrary.searchAllTags(List.of("#cat", "#dog")).isEmpty());
+    assertEquals(Set.of("funny_dogs_video_id", "life_at_google_video_id"),
+        idSet(videoLibrary.searchAnyTag(List.of("#dog", "#google", "#blah"))));
+  }
+
+  @Test
+  public void testRemoveVideoUpdatesIndexes() {
+    var removed = videoLibrary.removeVideo("funny_dogs_video_id");
+
+    assertNotNull(removed);
+    assertNull(videoLibrary.getVideo("funny_dogs_video_id"));
+    assertEquals(4, videoLibrary.getVideos().size());
+    assertEquals(Set.of("amazing_cats_video_id", "another_cat_video_id"),
+        idSet(videoLibrary.searchTag("#animal")));
+    assertTrue(videoLibrary.searchTitles("dogs").isEmpty());
+    assertEquals(Set.of("life_at_google_video_id"), idSet(videoLibrary.searchTitles("google")));
+
+    videoLibrary.addVideo(new Video("Funny Dogs 2", "funny_dogs_video_id", List.of("#dog")));
+    assertEquals("Funny Dogs 2", videoLibrary.getVideo("funny_dogs_video_id").getTitle());
+    assertEquals(Set.of("funny_dogs_video_id"), idSet(videoLibrary.searchTag("#dog")));
+    assertEquals(Set.of("funny_dogs_video_id"), idSet(videoLibrary.searchTitles("dogs 2")));
+  }
+
+  @Test
+  public void testTitleOrderIsMaintainedAcrossChanges() {
+    var random = new Random(7);
+    var library = new VideoLibrary(new ArrayList<>());
+    var expected = new ArrayList<Video>();
+    for (int i = 0; i < 400; i++) {
+      if (!expected.isEmpty() && random.nextInt(3) == 0) {
+        var removed = expected.remove(random.nextInt(expected.size()));
+        library.removeVideo(removed.getVideoId());
+      } else {
+        var video = new Video("Title " + random.nextInt(100), "id_" + i, List.of("#t" + i % 3));
+        expected.add(video);
+        library.addVideo(video);
+      }
+      if (i % 50 == 0) {
+        assertEquals(titles(sorted(expected)), titles(library.getSortedVideos()));
+      }
+    }
+    assertEquals(titles(sorted(expected)), titles(library.getSortedVideos()));
+    assertEquals(titles(sorted(expected.stream()
+            .filter(video -> video.getTitle().contains("1"))
+            .collect(Collectors.toList()))),
+        titles(library.searchTitles("1")));
+    assertEquals(titles(sorted(expected.stream()
+            .filter(video -> video.getTags().contains("#t1"))
+            .collect(Collectors.toList()))),
+        titles(library.searchTag("#t1")));
+  }
+
+  @Test
+  public void testLimitedSearchesReturnTheStartOfFullSearches() {
+    var generator = new CatalogGenerator(CatalogGenerator.DEFAULT_SEED);
+    var videos = new ArrayList<Video>();
+    for (int line = 0; line < 20_000; line++) {
+      videos.add(generator.video(line).withFlag(null));
+    }
+    var library = new VideoLibrary(videos);
+    for (int line = 0; line < videos.size(); line += 3) {
+      library.flagVideo(library.getVideoAt(line), "spam");
+    }
+    for (String tag : List.of("#tag0", "#tag7", "#tag500", "#tag1999", "#missing")) {
+      List<Video> all = library.searchPlayableTag(tag);
+      for (int limit : new int[] {1, 5, 100, 100_000}) {
+        assertEquals(titles(all.subList(0, Math.min(limit, all.size()))),
+            titles(library.pageOfTag(tag, 0, 0, limit).videos), tag + " limit " + limit);
+      }
+    }
+    for (String term : List.of("the", "cats", "baba", "zzz")) {
+      List<Video> all = library.searchPlayableTitles(term);
+      for (int limit : new int[] {1, 5, 100, 100_000}) {
+        assertEquals(titles(all.subList(0, Math.min(limit, all.size()))),
+            titles(library.pageOfTitles(term, 0, 0, limit).videos), term + " limit " + limit);
+      }
+    }
+  }
+
+  private static List<Video> sorted(List<Video> videos) {
+    var copy = new ArrayList<>(videos);
+    Collections.sort(copy);
+    return copy;
+  }
 }
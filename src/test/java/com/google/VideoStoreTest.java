@@ -0,0 +1,102 @@
+package com.google;
+
+import static com.google.TestVideos.describe;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import org.junit.jupiter.api.function.ThrowingConsumer;
+import org.junit.jupiter.api.io.TempDir;
+
+/** What every kind of {@link VideoStore} must do, checked against the heap store. */
+public class VideoStoreTest {
+
+  @TempDir
+  Path tempDir;
+
+  private static Stream<DynamicTest> forEachKind(ThrowingConsumer<VideoStore.Kind> test) {
+    return Arrays.stream(VideoStore.Kind.values())
+        .map(kind -> DynamicTest.dynamicTest(kind.name(), () -> test.accept(kind)));
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> testMatchesHeapStoreAcrossChanges() {
+    return forEachKind(kind -> {
+      var random = new Random(11);
+      var store = kind.create();
+      var heap = new HeapVideoStore();
+      for (int i = 0; i < 100_000; i++) {
+        if (heap.size() > 0 && random.nextInt(5) < 2) {
+          int ordinal = random.nextInt(heap.size());
+          store.remove(ordinal);
+          heap.remove(ordinal);
+        } else {
+          var video = new Video("Title \u00e9 " + "x".repeat(random.nextInt(200)) + i,
+              "id_\u00e9_" + i, List.of("#t" + random.nextInt(50), "#t" + random.nextInt(50)));
+          store.add(video);
+          heap.add(video);
+        }
+      }
+      assertEquals(heap.size(), store.size());
+      for (int ordinal = 0; ordinal < heap.size(); ordinal++) {
+        Video expected = heap.get(ordinal);
+        assertEquals(expected.toString(), store.get(ordinal).toString());
+        assertEquals(expected.getTitle(), store.titleOf(ordinal));
+        assertEquals(ordinal, store.ordinalOf(expected.getVideoId()));
+      }
+      assertEquals(-1, store.ordinalOf("id_missing"));
+      assertThrows(IndexOutOfBoundsException.class, () -> store.get(store.size()));
+    });
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> testVideosFollowTheirRowWhenItMoves() {
+    return forEachKind(kind -> {
+      var store = kind.create();
+      store.add(new Video("First", "first_id", List.of("#a")));
+      store.add(new Video("Second", "second_id", List.of()));
+      store.add(new Video("Third \u00e9t\u00e9", "third_\u00e9_id", List.of("#b", "#a")));
+
+      store.remove(0);
+      assertEquals(0, store.ordinalOf("third_\u00e9_id"));
+      Video third = store.get(0);
+      assertEquals("Third \u00e9t\u00e9", third.getTitle());
+      assertEquals(List.of("#b", "#a"), third.getTags());
+      assertFalse(third.isFlagged());
+
+      store.remove(1);
+      assertEquals(-1, store.ordinalOf("second_id"));
+      assertEquals(1, store.size());
+    });
+  }
+
+  @TestFactory
+  public Stream<DynamicTest> testLibraryMatchesHeapLibrary() throws IOException {
+    Path catalog = tempDir.resolve("videos.txt");
+    new CatalogGenerator(5).writeCatalog(catalog, 5000);
+    return forEachKind(kind -> {
+      var heap = new VideoLibrary(catalog, VideoStore.Kind.HEAP);
+      var library = new VideoLibrary(catalog, kind);
+      for (var each : List.of(heap, library)) {
+        each.flagVideo(each.getVideo(CatalogGenerator.videoId(10)), "spam");
+        each.removeVideo(CatalogGenerator.videoId(20));
+      }
+      assertEquals(describe(heap.getSortedVideos()), describe(library.getSortedVideos()));
+      assertEquals(describe(heap.searchTitles("ca")), describe(library.searchTitles("ca")));
+      assertEquals(describe(heap.searchTag("#tag3")), describe(library.searchTag("#tag3")));
+      assertEquals(describe(heap.searchAnyTag(List.of("#tag3", "#tag5"))),
+          describe(library.searchAnyTag(List.of("#tag3", "#tag5"))));
+      assertEquals(heap.playableCount(), library.playableCount());
+      assertTrue(library.getVideo(CatalogGenerator.videoId(10)).isFlagged());
+    });
+  }
+}